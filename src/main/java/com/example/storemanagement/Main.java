@@ -55,6 +55,8 @@ import javafx.stage.Stage; // Cảnh (scene) chứa các node UI
 
 public class Main extends Application { // Khai báo lớp Main kế thừa Application để chạy JavaFX
     private MediaPlayer mediaPlayer;
+    private com.example.storemanagement.service.OutboxWorker outboxWorker; // Worker áp dụng checkout_outbox (nếu bật)
+    private com.example.storemanagement.service.InventorySnapshotJob snapshotJob; // Ảnh chụp tồn kho hằng ngày (nếu bật)
     // Tên app hiển thị trên cửa sổ
     public static final String APP_NAME = "Quản lý cửa hàng"; // Hằng số tiêu đề cửa sổ
 
@@ -101,9 +103,8 @@ public class Main extends Application { // Khai báo lớp Main kế thừa Appl
 
         // 4) (TÙY CHỌN) Kiểm tra kết nối DB khi bạn đã có DBConnection
         // → BỎ COMMENT sau khi tạo lớp dao.DBConnection và MySQL Connector
-        try {
-            var conn = com.example.storemanagement.dao.DBConnection.getInstance().getConnection(); // Lấy kết nối DB từ
-                                                                                                   // singleton
+        try (var conn = com.example.storemanagement.dao.DBConnection.getInstance().getConnection()) { // Mượn kết nối từ
+                                                                                                          // pool (tự trả lại)
             if (conn != null && !conn.isClosed()) { // Kiểm tra kết nối hợp lệ
                 info("Kết nối MySQL thành công: " + dbProps.getProperty("url", "(chưa thiết lập)")); // Báo thông tin
                                                                                                      // thành công
@@ -112,6 +113,21 @@ public class Main extends Application { // Khai báo lớp Main kế thừa Appl
             warn("Không thể kết nối MySQL. Kiểm tra db.properties & MySQL service.\n" + e.getMessage()); // Cảnh báo khi
                                                                                                          // kết nối lỗi
         }
+
+        // 5) Khởi động worker outbox khi cấu hình orders.sideEffects=outbox
+        if (com.example.storemanagement.service.OutboxWorker.isEnabled()) {
+            outboxWorker = new com.example.storemanagement.service.OutboxWorker();
+            outboxWorker.start();
+        }
+
+        // 6) Job ảnh chụp tồn kho hằng ngày (inventory.snapshots=true)
+        if (com.example.storemanagement.service.InventorySnapshotJob.isEnabled()) {
+            snapshotJob = new com.example.storemanagement.service.InventorySnapshotJob();
+            snapshotJob.start();
+        }
+
+        // 7) Cảnh báo sắp hết hàng theo reorder_thresholds (inventory.lowStock=true)
+        com.example.storemanagement.dao.LowStockMonitor.getInstance().start();
     }
 
     private void playBackgroundMusic(String resourcePath) {
@@ -137,6 +153,17 @@ public class Main extends Application { // Khai báo lớp Main kế thừa Appl
         if (mediaPlayer != null) {
             mediaPlayer.stop();
         }
+        com.example.storemanagement.service.CheckoutScheduler.shutdownShared(); // Chốt nốt lô đang ghi
+        if (outboxWorker != null) {
+            outboxWorker.stop(); // Dừng worker trước khi đóng pool
+        }
+        if (snapshotJob != null) {
+            snapshotJob.stop(); // Dừng job ảnh chụp tồn kho
+        }
+        com.example.storemanagement.dao.InventoryMatrix.getInstance().stop(); // Dừng luồng bám đuôi stock_moves
+        com.example.storemanagement.dao.LowStockMonitor.getInstance().stop(); // Dừng đánh giá tồn thấp
+        com.example.storemanagement.dao.CatalogCache.getInstance().close(); // Ghi ảnh chụp danh mục cho lần mở sau
+        com.example.storemanagement.dao.DBConnection.getInstance().shutdown(); // Đóng pool kết nối khi thoát app
     }
 
     /**
@@ -17,12 +17,14 @@ import java.util.ArrayList;
 import java.util.List;
 
 import com.example.storemanagement.dao.DBConnection;
+import com.example.storemanagement.dao.LowStockMonitor;
 import com.example.storemanagement.dao.ProductDAO;
 import com.example.storemanagement.model.Product;
 import com.example.storemanagement.service.InventoryService;
 import com.example.storemanagement.util.AlertUtils;
 import com.example.storemanagement.util.DateUtils;
 
+import javafx.application.Platform;
 import javafx.beans.property.ReadOnlyObjectWrapper;
 import javafx.beans.property.ReadOnlyStringWrapper;
 import javafx.collections.FXCollections;
@@ -38,6 +40,7 @@ import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableView;
 import javafx.scene.control.TextField;
 import javafx.scene.control.TextInputDialog;
+import javafx.scene.control.Tooltip;
 import javafx.scene.layout.GridPane;
 
 public class InventoryController {
@@ -74,6 +77,7 @@ public class InventoryController {
     private String currentKeyword = "";
     private Long currentStoreId = null;
     private Long currentSupplierId = null;
+    private LowStockMonitor.LowStockEvent lastLowStock = null; // Sự kiện tồn thấp gần nhất (hiện ở tooltip)
 
     // ====== Initialize ======
     @FXML
@@ -118,6 +122,18 @@ public class InventoryController {
             doSearch(currentPage);
         });
 
+        // Cảnh báo sắp hết hàng: sự kiện đến từ luồng nền → cập nhật nhãn trạng thái trên FX thread
+        // (mỗi lần mở màn hình nạp lại FXML → gỡ listener khi view bị thay ra khỏi scene)
+        java.util.function.Consumer<LowStockMonitor.LowStockEvent> onLowStock = e -> Platform.runLater(() -> {
+            lastLowStock = e;
+            updateStatus();
+        });
+        LowStockMonitor.getInstance().addListener(onLowStock);
+        inventoryStatusLabel.sceneProperty().addListener((obs, oldScene, newScene) -> {
+            if (oldScene != null && newScene == null)
+                LowStockMonitor.getInstance().removeListener(onLowStock);
+        });
+
         doSearch(1);
     }
 
@@ -287,7 +303,10 @@ public class InventoryController {
     private void updateStatus() {
         int selected = inventoryTable.getSelectionModel().getSelectedIndices().size();
         int total = inventoryTable.getItems().size();
-        inventoryStatusLabel.setText(total + " item(s) • " + selected + " selected");
+        int low = LowStockMonitor.getInstance().getLowCount();
+        inventoryStatusLabel.setText(total + " item(s) • " + selected + " selected"
+                + (low > 0 ? " • ⚠ " + low + " low stock" : ""));
+        inventoryStatusLabel.setTooltip(lastLowStock == null ? null : new Tooltip(lastLowStock.toString()));
     }
 
     private List<IdName> loadStores() {
@@ -1,9 +1,6 @@
 package com.example.storemanagement.controller;
 
 import java.math.BigDecimal;
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Comparator;
@@ -11,11 +8,17 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletionException;
 
-import com.example.storemanagement.dao.DBConnection;
+import com.example.storemanagement.dao.CatalogCache;
+import com.example.storemanagement.dao.CatalogSnapshotFile;
+import com.example.storemanagement.dao.SkuLookup;
+import com.example.storemanagement.service.CheckoutScheduler;
 import com.example.storemanagement.service.OrderService;
 import com.example.storemanagement.util.AlertUtils;
 
+import javafx.application.Platform;
 import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.SimpleIntegerProperty;
@@ -38,7 +41,7 @@ import javafx.scene.control.cell.PropertyValueFactory;
 /**
  * OrderController – Màn hình tạo/chốt đơn đơn giản:
  * - Chọn Store, Customer, nhập Discount
- * - Thêm các dòng hàng (Product + Qty)
+ * - Thêm các dòng hàng (Product + Qty), hoặc quét mã SKU (tra trong bộ nhớ qua SkuLookup, không truy vấn DB)
  * - Tính Subtotal/Grand total
  * - Confirm ➜ gọi OrderService.finalizeOrder(...)
  */
@@ -52,6 +55,8 @@ public class OrderController {
     @FXML
     private TextField discountField;
     @FXML
+    private TextField scanField; // ô nhận mã từ máy quét (máy quét gõ SKU + Enter)
+    @FXML
     private Button addItemBtn, removeItemBtn, confirmBtn, refreshBtn;
 
     @FXML
@@ -71,20 +76,17 @@ public class OrderController {
     private Label subtotalLbl, grandTotalLbl, statusLbl;
 
     // ==== Business ====
-    private final OrderService orderService = new OrderService();
     private final ObservableList<OrderLine> lines = FXCollections.observableArrayList();
+    // Khoá idempotency của giỏ hiện tại: bấm Confirm lại sau timeout không tạo đơn trùng; đổi khi chốt xong
+    private String requestKey = UUID.randomUUID().toString();
 
     // cache products: id -> (sku, name, price)
     private final Map<Long, ProductLite> products = new HashMap<>();
 
     @FXML
     public void initialize() {
-        // load stores & customers & products
-        storeBox.setItems(FXCollections.observableArrayList(loadStores()));
-        customerBox.setItems(FXCollections.observableArrayList(loadCustomers()));
-        loadProductsIntoCache();
-        if (!storeBox.getItems().isEmpty())
-            storeBox.getSelectionModel().selectFirst();
+        // load stores & customers & products (từ ảnh chụp danh mục nếu có)
+        loadCatalog();
 
         // table
         itemsTable.setItems(lines);
@@ -94,6 +96,7 @@ public class OrderController {
         colPrice.setCellValueFactory(new PropertyValueFactory<>("unitPrice"));
         colTotal.setCellValueFactory(new PropertyValueFactory<>("lineTotal"));
 
+        scanField.setOnAction(e -> onScan());
         addItemBtn.setOnAction(e -> onAddItem());
         removeItemBtn.setOnAction(e -> onRemoveItem());
         refreshBtn.setOnAction(e -> recalcTotals());
@@ -138,6 +141,27 @@ public class OrderController {
         }
     }
 
+    /** Quét SKU: tra snapshot trong bộ nhớ, cộng 1 vào dòng sẵn có hoặc thêm dòng mới – không truy vấn DB. */
+    private void onScan() {
+        String code = scanField.getText();
+        SkuLookup.Entry e = SkuLookup.getInstance().find(code);
+        scanField.clear();
+        if (e == null) {
+            if (code != null && !code.isBlank())
+                statusLbl.setText("Không tìm thấy SKU: " + code.trim());
+            return;
+        }
+        for (OrderLine l : lines) {
+            if (l.productId == e.id) {
+                l.quantity.set(l.quantity.get() + 1);
+                recalcTotals();
+                return;
+            }
+        }
+        lines.add(new OrderLine(e.id, e.sku, e.name, 1, e.unitPrice));
+        recalcTotals();
+    }
+
     private void onRemoveItem() {
         OrderLine sel = itemsTable.getSelectionModel().getSelectedItem();
         if (sel == null) {
@@ -169,15 +193,23 @@ public class OrderController {
         for (OrderLine l : lines)
             items.add(new OrderService.OrderItemInput(l.productId, l.quantity.get()));
 
-        try {
-            long orderId = orderService.finalizeOrder(storeId, customerId, items, discount, null, "CASH");
-            AlertUtils.info("Thành công", "Đã tạo đơn hàng #" + orderId);
-            lines.clear();
-            discountField.setText("0");
-            recalcTotals();
-        } catch (Exception ex) {
-            AlertUtils.error("Finalize failed", ex.getMessage());
-        }
+        // Chốt qua hàng đợi của cửa hàng (CheckoutScheduler); kết quả trả về luồng UI qua Platform.runLater
+        confirmBtn.setDisable(true);
+        CheckoutScheduler.getShared()
+                .submit(storeId, customerId, items, discount, null, "CASH", requestKey)
+                .whenComplete((orderId, err) -> Platform.runLater(() -> {
+                    confirmBtn.setDisable(false);
+                    if (err != null) {
+                        Throwable cause = err instanceof CompletionException && err.getCause() != null ? err.getCause() : err;
+                        AlertUtils.error("Finalize failed", cause.getMessage());
+                        return;
+                    }
+                    AlertUtils.info("Thành công", "Đã tạo đơn hàng #" + orderId);
+                    requestKey = UUID.randomUUID().toString();
+                    lines.clear();
+                    discountField.setText("0");
+                    recalcTotals();
+                }));
     }
 
     private void recalcTotals() {
@@ -193,44 +225,50 @@ public class OrderController {
         statusLbl.setText(lines.size() + " item(s)");
     }
 
-    // ================= DB loads =================
-    private List<IdName> loadStores() {
-        List<IdName> list = new ArrayList<>();
-        String sql = "SELECT id, name FROM stores ORDER BY name";
-        try (Connection cn = DBConnection.getInstance().getConnection();
-                PreparedStatement ps = cn.prepareStatement(sql);
-                ResultSet rs = ps.executeQuery()) {
-            while (rs.next())
-                list.add(new IdName(rs.getLong(1), rs.getString(2)));
+    // ================= Catalog loads =================
+    /** Danh mục từ CatalogCache: ảnh chụp trên đĩa nếu có (không truy vấn DB), làm mới nền rồi cập nhật lại. */
+    private void loadCatalog() {
+        boolean fromSnapshot = false;
+        try {
+            fromSnapshot = CatalogCache.getInstance().open();
         } catch (SQLException ignored) {
         }
-        return list;
+        applyCatalog();
+        if (fromSnapshot)
+            CatalogCache.getInstance().refreshAsync().thenRun(() -> Platform.runLater(this::applyCatalog));
     }
 
-    private List<IdName> loadCustomers() {
-        List<IdName> list = new ArrayList<>();
-        String sql = "SELECT id, name FROM customers ORDER BY name";
-        try (Connection cn = DBConnection.getInstance().getConnection();
-                PreparedStatement ps = cn.prepareStatement(sql);
-                ResultSet rs = ps.executeQuery()) {
-            while (rs.next())
-                list.add(new IdName(rs.getLong(1), rs.getString(2)));
-        } catch (SQLException ignored) {
-        }
+    /** Đổ danh mục hiện tại vào combo + cache sản phẩm, giữ nguyên lựa chọn đang có. */
+    private void applyCatalog() {
+        Long storeSel = storeBox.getValue() == null ? null : storeBox.getValue().id;
+        Long customerSel = customerBox.getValue() == null ? null : customerBox.getValue().id;
+        storeBox.setItems(FXCollections.observableArrayList(toIdNames(CatalogCache.getInstance().stores())));
+        customerBox.setItems(FXCollections.observableArrayList(toIdNames(CatalogCache.getInstance().customers())));
+        reselect(storeBox, storeSel);
+        reselect(customerBox, customerSel);
+        if (storeBox.getValue() == null && !storeBox.getItems().isEmpty())
+            storeBox.getSelectionModel().selectFirst();
+
+        products.clear();
+        for (SkuLookup.Entry e : SkuLookup.getInstance().entries())
+            products.put(e.id, new ProductLite(e.id, e.sku, e.name, e.unitPrice));
+    }
+
+    private static List<IdName> toIdNames(List<CatalogSnapshotFile.Ref> refs) {
+        List<IdName> list = new ArrayList<>(refs.size());
+        for (CatalogSnapshotFile.Ref r : refs)
+            list.add(new IdName(r.id, r.name));
         return list;
     }
 
-    private void loadProductsIntoCache() {
-        String sql = "SELECT id, sku, name, unit_price FROM products WHERE active=1 ORDER BY name";
-        try (Connection cn = DBConnection.getInstance().getConnection();
-                PreparedStatement ps = cn.prepareStatement(sql);
-                ResultSet rs = ps.executeQuery()) {
-            while (rs.next()) {
-                long id = rs.getLong("id");
-                products.put(id,
-                        new ProductLite(id, rs.getString("sku"), rs.getString("name"), rs.getBigDecimal("unit_price")));
+    private static void reselect(ComboBox<IdName> box, Long id) {
+        if (id == null)
+            return;
+        for (IdName o : box.getItems()) {
+            if (o.id == id) {
+                box.getSelectionModel().select(o);
+                return;
             }
-        } catch (SQLException ignored) {
         }
     }
 
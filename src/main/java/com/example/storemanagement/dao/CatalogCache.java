@@ -0,0 +1,130 @@
+package com.example.storemanagement.dao;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * CatalogCache – danh mục cho màn hình bán hàng (sản phẩm active qua SkuLookup, cửa hàng, khách hàng),
+ * khởi động từ ảnh chụp nhị phân trên đĩa (CatalogSnapshotFile) thay vì ba truy vấn toàn bảng.
+ *
+ * - open(): có ảnh chụp hợp lệ → nạp vào bộ nhớ ngay (không chạm DB) rồi làm mới nền;
+ *   chưa có (lần chạy đầu / catalog.snapshot=false) → đọc DB đồng bộ như trước.
+ * - refreshAsync(): trên một luồng nền: đọc lại cửa hàng + khách hàng, SkuLookup.refreshNow() (tăng dần theo
+ *   watermark products.updated_at), rồi ghi lại ảnh chụp nếu có gì đổi. Future hoàn tất khi xong để UI cập nhật danh sách.
+ * - close(): ghi ảnh chụp lần cuối khi thoát ứng dụng (Main.stop).
+ */
+public final class CatalogCache {
+
+    private static final CatalogCache INSTANCE = new CatalogCache(
+            Boolean.parseBoolean(DBConnection.getInstance().getProperty("catalog.snapshot", "true")),
+            Paths.get(DBConnection.getInstance().getProperty("catalog.snapshotFile",
+                    Paths.get(System.getProperty("user.home"), ".store-management", "catalog.bin").toString())));
+
+    public static CatalogCache getInstance() { return INSTANCE; }
+
+    private final boolean enabled;
+    private final CatalogSnapshotFile file;
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "catalog-snapshot");
+        t.setDaemon(true);
+        return t;
+    });
+    private volatile List<CatalogSnapshotFile.Ref> stores = List.of();
+    private volatile List<CatalogSnapshotFile.Ref> customers = List.of();
+    private volatile boolean opened;
+
+    CatalogCache(boolean enabled, Path path) {
+        this.enabled = enabled;
+        this.file = new CatalogSnapshotFile(path, DBConnection.getInstance().getProperty("url", ""));
+    }
+
+    /**
+     * Chuẩn bị danh mục cho màn hình bán hàng; trả về true nếu phục vụ từ bộ nhớ / ảnh chụp trên đĩa mà không
+     * đọc DB (khi đó nên gọi refreshAsync() để bắt kịp DB), false nếu vừa nạp đồng bộ từ DB.
+     */
+    public synchronized boolean open() throws SQLException {
+        if (opened) return true;
+        Optional<CatalogSnapshotFile.Data> data = enabled ? file.read() : Optional.empty();
+        if (data.isPresent()) {
+            CatalogSnapshotFile.Data d = data.get();
+            SkuLookup.getInstance().seed(d.products, d.watermark);
+            stores = d.stores;
+            customers = d.customers;
+            opened = true;
+            return true;
+        }
+        reloadRefs();
+        SkuLookup.getInstance().ensureLoaded();
+        opened = true;
+        if (enabled) worker.execute(this::saveQuietly); // lần mở sau khởi động từ file
+        return false;
+    }
+
+    /** Làm mới nền (cửa hàng, khách hàng, sản phẩm tăng dần) rồi ghi lại ảnh chụp nếu có gì đổi. */
+    public CompletableFuture<Void> refreshAsync() {
+        return CompletableFuture.runAsync(() -> {
+            boolean changed;
+            try {
+                changed = reloadRefs();
+                changed |= SkuLookup.getInstance().refreshNow();
+            } catch (SQLException ex) {
+                throw new IllegalStateException("Không làm mới được danh mục: " + ex.getMessage(), ex);
+            }
+            if (changed) saveQuietly();
+        }, worker);
+    }
+
+    public List<CatalogSnapshotFile.Ref> stores() { return stores; }
+
+    public List<CatalogSnapshotFile.Ref> customers() { return customers; }
+
+    /** Ghi ảnh chụp lần cuối (nếu đã mở) và dừng luồng nền. */
+    public void close() {
+        worker.shutdown();
+        if (opened) saveQuietly();
+    }
+
+    private synchronized void saveQuietly() {
+        if (!enabled) return;
+        SkuLookup lookup = SkuLookup.getInstance();
+        try {
+            file.write(new CatalogSnapshotFile.Data(lookup.watermark(), lookup.entries(), stores, customers));
+        } catch (IOException ex) {
+            System.err.println("[CatalogCache] Không ghi được ảnh chụp " + file.getPath() + ": " + ex.getMessage());
+        }
+    }
+
+    /** Đọc lại cửa hàng + khách hàng; true nếu khác danh sách đang giữ. */
+    private boolean reloadRefs() throws SQLException {
+        List<CatalogSnapshotFile.Ref> s, c;
+        try (Connection cn = DBConnection.getInstance().getConnection()) {
+            s = loadRefs(cn, "SELECT id, name FROM stores ORDER BY name");
+            c = loadRefs(cn, "SELECT id, name FROM customers ORDER BY name");
+        }
+        boolean changed = !s.equals(stores) || !c.equals(customers);
+        stores = s;
+        customers = c;
+        return changed;
+    }
+
+    private static List<CatalogSnapshotFile.Ref> loadRefs(Connection cn, String sql) throws SQLException {
+        List<CatalogSnapshotFile.Ref> list = new ArrayList<>();
+        try (PreparedStatement ps = cn.prepareStatement(sql);
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next())
+                list.add(new CatalogSnapshotFile.Ref(rs.getLong(1), rs.getString(2)));
+        }
+        return List.copyOf(list);
+    }
+}
@@ -0,0 +1,176 @@
+package com.example.storemanagement.dao;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * CatalogSnapshotFile – ảnh chụp nhị phân của danh mục (sản phẩm active, cửa hàng, khách hàng) trên đĩa cục bộ.
+ *
+ * Định dạng (big-endian):
+ *   int magic "SMCS" | short version | UTF nguồn (url JDBC) | long watermark (epoch ms, products.updated_at)
+ *   | int nProducts × (long id, UTF sku, UTF name, long unscaled, byte scale)
+ *   | int nStores × (long id, UTF name) | int nCustomers × (long id, UTF name)
+ * UTF = short độ dài byte + UTF-8.
+ *
+ * read() map file bằng FileChannel.map (READ_ONLY) và giải mã thẳng từ vùng nhớ đã map; file sai magic/phiên bản,
+ * khác nguồn DB hoặc hỏng → bỏ qua (Optional.empty), người gọi nạp từ DB như cũ.
+ * write() ghi ra file tạm rồi ATOMIC_MOVE → không bao giờ để lại file ghi dở.
+ */
+public final class CatalogSnapshotFile {
+
+    private static final int MAGIC = 0x534D4353; // "SMCS"
+    private static final short VERSION = 1;
+
+    /** Cặp (id, tên) cho danh sách chọn cửa hàng / khách hàng. */
+    public static final class Ref {
+        public final long id;
+        public final String name;
+
+        public Ref(long id, String name) {
+            this.id = id; this.name = name;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Ref r && r.id == id && Objects.equals(r.name, name);
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(id) * 31 + Objects.hashCode(name);
+        }
+    }
+
+    /** Nội dung một ảnh chụp. */
+    public static final class Data {
+        public final long watermark;
+        public final List<SkuLookup.Entry> products;
+        public final List<Ref> stores;
+        public final List<Ref> customers;
+
+        public Data(long watermark, List<SkuLookup.Entry> products, List<Ref> stores, List<Ref> customers) {
+            this.watermark = watermark; this.products = products; this.stores = stores; this.customers = customers;
+        }
+    }
+
+    private final Path path;
+    private final String source;
+
+    public CatalogSnapshotFile(Path path, String source) {
+        this.path = path;
+        this.source = source == null ? "" : source;
+    }
+
+    public Path getPath() { return path; }
+
+    public Optional<Data> read() {
+        if (!Files.isRegularFile(path)) return Optional.empty();
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            if (buf.remaining() < 6 || buf.getInt() != MAGIC || buf.getShort() != VERSION) return Optional.empty();
+            if (!source.equals(readUtf(buf))) return Optional.empty(); // ảnh chụp của DB khác
+            long watermark = buf.getLong();
+
+            int n = count(buf);
+            List<SkuLookup.Entry> products = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                long id = buf.getLong();
+                String sku = readUtf(buf);
+                String name = readUtf(buf);
+                long unscaled = buf.getLong();
+                int scale = buf.get();
+                products.add(new SkuLookup.Entry(id, sku, name, BigDecimal.valueOf(unscaled, scale)));
+            }
+            List<Ref> stores = readRefs(buf);
+            List<Ref> customers = readRefs(buf);
+            return Optional.of(new Data(watermark, products, stores, customers));
+        } catch (IOException | RuntimeException ex) {
+            System.err.println("[CatalogSnapshotFile] Bỏ qua ảnh chụp hỏng " + path + ": " + ex);
+            return Optional.empty();
+        }
+    }
+
+    public void write(Data data) throws IOException {
+        Path dir = path.toAbsolutePath().getParent();
+        if (dir != null) Files.createDirectories(dir);
+        Path tmp = Files.createTempFile(dir, path.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeShort(VERSION);
+                writeUtf(out, source);
+                out.writeLong(data.watermark);
+                out.writeInt(data.products.size());
+                for (SkuLookup.Entry e : data.products) {
+                    out.writeLong(e.id);
+                    writeUtf(out, e.sku);
+                    writeUtf(out, e.name);
+                    BigDecimal price = e.unitPrice.setScale(2, RoundingMode.HALF_UP); // unit_price là DECIMAL(12,2)
+                    out.writeLong(price.unscaledValue().longValueExact());
+                    out.writeByte(price.scale());
+                }
+                writeRefs(out, data.stores);
+                writeRefs(out, data.customers);
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static List<Ref> readRefs(ByteBuffer buf) {
+        int n = count(buf);
+        List<Ref> refs = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            long id = buf.getLong();
+            refs.add(new Ref(id, readUtf(buf)));
+        }
+        return refs;
+    }
+
+    private static void writeRefs(DataOutputStream out, List<Ref> refs) throws IOException {
+        out.writeInt(refs.size());
+        for (Ref r : refs) {
+            out.writeLong(r.id);
+            writeUtf(out, r.name);
+        }
+    }
+
+    /** Số phần tử tiếp theo; mỗi phần tử ≥ 8 byte (id) nên số lớn hơn phần còn lại là file hỏng. */
+    private static int count(ByteBuffer buf) {
+        int n = buf.getInt();
+        if (n < 0 || n > buf.remaining() / 8) throw new BufferUnderflowException();
+        return n;
+    }
+
+    private static String readUtf(ByteBuffer buf) {
+        int len = Short.toUnsignedInt(buf.getShort());
+        if (len > buf.remaining()) throw new BufferUnderflowException();
+        byte[] bytes = new byte[len];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeUtf(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = (s == null ? "" : s).getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) throw new IOException("Chuỗi quá dài cho ảnh chụp danh mục (" + bytes.length + " byte)");
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+}
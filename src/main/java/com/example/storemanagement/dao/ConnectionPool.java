@@ -0,0 +1,302 @@
+package com.example.storemanagement.dao;
+
+/*
+ * ConnectionPool – Pool kết nối JDBC có giới hạn, dùng nội bộ bởi DBConnection.
+ *
+ * - Giữ sẵn tối thiểu minSize kết nối, tối đa maxSize kết nối cùng lúc.
+ * - borrow() chờ tối đa borrowTimeoutMs nếu pool đã cạn; quá hạn → SQLTransientConnectionException.
+ * - validateOnBorrow: kiểm tra Connection.isValid() trước khi giao cho DAO.
+ * - Luồng nền (housekeeper) đóng kết nối rảnh quá idleTimeoutMs / sống quá maxLifetimeMs
+ *   và bù lại cho đủ minSize.
+ * - Connection trả về cho DAO là proxy: gọi close() = trả kết nối về pool (không đóng socket),
+ *   nên mọi try-with-resources hiện có vẫn dùng được y nguyên.
+ * - Leak detection: mỗi lượt mượn ghi lại stack trace nơi mượn; nếu giữ quá leakDetectionThresholdMs
+ *   thì cảnh báo ra STDERR kèm stack đó (một lần / lượt mượn).
+ * - Số liệu runtime (active/idle/waiting + histogram thời gian chờ mượn, kể cả lượt hết hạn chờ) qua stats().
+ */
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.example.storemanagement.util.LatencyHistogram;
+
+class ConnectionPool {
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int minSize;
+    private final int maxSize;
+    private final long borrowTimeoutMs;
+    private final boolean validateOnBorrow;
+    private final int validationTimeoutSec;
+    private final long idleTimeoutMs;
+    private final long maxLifetimeMs;
+    private final long leakDetectionThresholdMs;
+
+    private final LinkedBlockingDeque<Entry> idle = new LinkedBlockingDeque<>(); // kết nối đang rảnh (LIFO: dùng lại kết nối "nóng")
+    private final Semaphore permits;                                            // số kết nối còn được phép cho mượn
+    private final AtomicInteger total = new AtomicInteger();                    // tổng kết nối vật lý đang mở (rảnh + đang mượn)
+    private final Set<Handle> outstanding = ConcurrentHashMap.newKeySet();      // các lượt mượn chưa trả (phục vụ leak detection)
+    private final LatencyHistogram borrowLatency = new LatencyHistogram();
+    private final LongAdder leaksDetected = new LongAdder();
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean closed;
+
+    ConnectionPool(String url, String user, String password, int minSize, int maxSize,
+                   long borrowTimeoutMs, boolean validateOnBorrow, int validationTimeoutSec,
+                   long idleTimeoutMs, long maxLifetimeMs, long housekeepingIntervalMs,
+                   long leakDetectionThresholdMs) {
+        if (maxSize <= 0) throw new IllegalArgumentException("pool.maxSize phải > 0");
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.maxSize = maxSize;
+        this.minSize = Math.max(0, Math.min(minSize, maxSize));
+        this.borrowTimeoutMs = Math.max(0, borrowTimeoutMs);
+        this.validateOnBorrow = validateOnBorrow;
+        this.validationTimeoutSec = Math.max(1, validationTimeoutSec);
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.maxLifetimeMs = maxLifetimeMs;
+        this.leakDetectionThresholdMs = leakDetectionThresholdMs;
+        this.permits = new Semaphore(maxSize, true); // fair: ai chờ trước được phục vụ trước
+
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "db-pool-housekeeper");
+            t.setDaemon(true); // không giữ JVM sống khi đóng app
+            return t;
+        });
+        long interval = Math.max(1000L, housekeepingIntervalMs);
+        housekeeper.scheduleWithFixedDelay(this::housekeep, 0, interval, TimeUnit.MILLISECONDS);
+        if (leakDetectionThresholdMs > 0) {
+            long leakInterval = Math.max(500L, leakDetectionThresholdMs / 2);
+            housekeeper.scheduleWithFixedDelay(this::detectLeaks, leakInterval, leakInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // ===================== Mượn / trả =====================
+
+    /** Mượn một kết nối; close() trên kết nối trả về sẽ trả nó lại pool. */
+    Connection borrow() throws SQLException {
+        if (closed) throw new SQLException("Connection pool đã đóng");
+        long start = System.nanoTime();
+        try {
+            return acquire();
+        } finally {
+            borrowLatency.record(System.nanoTime() - start); // cả lượt hết hạn chờ: pool cạn phải hiện trên histogram
+        }
+    }
+
+    private Connection acquire() throws SQLException {
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMs, TimeUnit.MILLISECONDS))
+                throw new SQLTransientConnectionException(
+                        "Hết kết nối trong pool (maxSize=" + maxSize + ") sau " + borrowTimeoutMs + " ms");
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("Bị ngắt khi chờ kết nối từ pool", ie);
+        }
+        try {
+            Entry e;
+            while ((e = idle.pollFirst()) != null) {
+                if (isExpired(e, System.nanoTime()) || (validateOnBorrow && !isAlive(e))) {
+                    discard(e);
+                    continue;
+                }
+                return wrap(e);
+            }
+            return wrap(open());
+        } catch (SQLException | RuntimeException ex) {
+            permits.release(); // mượn thất bại → trả lại suất
+            throw ex;
+        }
+    }
+
+    /** Được proxy gọi khi DAO close(): dọn trạng thái rồi đưa về hàng rảnh. */
+    private void giveBack(Handle h) {
+        Entry e = h.entry;
+        outstanding.remove(h);
+        if (h.reportedLeak)
+            System.err.println("[DB] Kết nối nghi rò rỉ đã được trả sau " + h.heldMillis() + " ms (" + h.threadName + ")");
+        try {
+            boolean reusable = !closed && !e.raw.isClosed() && !isExpired(e, System.nanoTime());
+            if (reusable) {
+                if (!e.raw.getAutoCommit()) {        // transaction dở dang → huỷ, khôi phục mặc định
+                    e.raw.rollback();
+                    e.raw.setAutoCommit(true);
+                }
+                if (e.raw.isReadOnly()) e.raw.setReadOnly(false);
+                e.raw.clearWarnings();
+                e.lastUsedNanos = System.nanoTime();
+                idle.offerFirst(e);
+            } else {
+                discard(e);
+            }
+        } catch (SQLException ex) {
+            discard(e); // không reset được → bỏ kết nối
+        } finally {
+            permits.release();
+        }
+    }
+
+    /** Đóng pool: đóng mọi kết nối rảnh; kết nối đang mượn sẽ bị đóng khi được trả. */
+    void shutdown() {
+        closed = true;
+        housekeeper.shutdownNow();
+        Entry e;
+        while ((e = idle.pollFirst()) != null) discard(e);
+    }
+
+    int getMaxSize() { return maxSize; }
+    int getTotalCount() { return total.get(); }
+    int getIdleCount() { return idle.size(); }
+
+    /** Snapshot gauge + histogram tại thời điểm gọi. */
+    PoolStats stats() {
+        return new PoolStats(maxSize - permits.availablePermits(), idle.size(), permits.getQueueLength(),
+                maxSize, leaksDetected.sum(), borrowLatency.snapshot());
+    }
+
+    // ===================== Bảo trì nền =====================
+
+    private void housekeep() {
+        if (closed) return;
+        long now = System.nanoTime();
+        // 1) Loại kết nối quá tuổi, hoặc rảnh quá lâu khi đang có nhiều hơn minSize
+        for (Iterator<Entry> it = idle.descendingIterator(); it.hasNext(); ) {
+            Entry e = it.next();
+            boolean idleTooLong = idleTimeoutMs > 0
+                    && now - e.lastUsedNanos > TimeUnit.MILLISECONDS.toNanos(idleTimeoutMs)
+                    && total.get() > minSize;
+            if ((idleTooLong || isExpired(e, now)) && idle.removeFirstOccurrence(e)) discard(e);
+        }
+        // 2) Bù cho đủ minSize (không vượt maxSize)
+        while (!closed && total.get() < minSize) {
+            try {
+                idle.offerLast(open());
+            } catch (SQLException ex) {
+                System.err.println("[DB] Pool không tạo được kết nối: " + ex.getMessage());
+                break; // DB đang down → thử lại ở lượt sau
+            }
+        }
+    }
+
+    /** Cảnh báo các lượt mượn giữ kết nối quá ngưỡng, kèm stack trace nơi đã mượn. */
+    private void detectLeaks() {
+        for (Handle h : outstanding) {
+            if (h.reportedLeak || h.heldMillis() < leakDetectionThresholdMs) continue;
+            h.reportedLeak = true;
+            leaksDetected.increment();
+            SQLException site = new SQLException("Kết nối bị giữ " + h.heldMillis() + " ms (ngưỡng "
+                    + leakDetectionThresholdMs + " ms) bởi luồng " + h.threadName + " – nơi mượn:");
+            site.setStackTrace(h.borrowSite);
+            System.err.println("[DB] Phát hiện nghi rò rỉ kết nối");
+            site.printStackTrace();
+        }
+    }
+
+    // ===================== Helpers =====================
+
+    private Entry open() throws SQLException {
+        Connection raw = DriverManager.getConnection(url, user, password);
+        total.incrementAndGet();
+        return new Entry(raw);
+    }
+
+    private void discard(Entry e) {
+        total.decrementAndGet();
+        try { e.raw.close(); } catch (SQLException ignored) {}
+    }
+
+    private boolean isExpired(Entry e, long now) {
+        return maxLifetimeMs > 0 && now - e.createdNanos > TimeUnit.MILLISECONDS.toNanos(maxLifetimeMs);
+    }
+
+    private boolean isAlive(Entry e) {
+        try { return e.raw.isValid(validationTimeoutSec); } catch (SQLException ex) { return false; }
+    }
+
+    private Connection wrap(Entry e) {
+        Handle h = new Handle(e);
+        if (leakDetectionThresholdMs > 0) outstanding.add(h);
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(), new Class<?>[] { Connection.class }, h);
+    }
+
+    /** Stack trace hiện tại, bỏ các frame nội bộ của pool/DBConnection để dòng đầu là nơi gọi thật. */
+    private static StackTraceElement[] callerStack() {
+        StackTraceElement[] st = new Throwable().getStackTrace();
+        int i = 0;
+        while (i < st.length && (st[i].getClassName().startsWith(ConnectionPool.class.getName())
+                || st[i].getClassName().equals(DBConnection.class.getName()))) i++;
+        return Arrays.copyOfRange(st, i, st.length);
+    }
+
+    /** Kết nối vật lý + mốc thời gian phục vụ eviction. */
+    private static final class Entry {
+        final Connection raw;
+        final long createdNanos = System.nanoTime();
+        volatile long lastUsedNanos = createdNanos;
+        Entry(Connection raw) { this.raw = raw; }
+    }
+
+    /** Proxy cho một lượt mượn: chặn close()/isClosed(), chuyển mọi lời gọi khác xuống kết nối thật. */
+    private final class Handle implements InvocationHandler {
+        private final Entry entry;
+        private final AtomicBoolean returned = new AtomicBoolean();
+        private final long borrowedNanos = System.nanoTime();
+        private final String threadName = Thread.currentThread().getName();
+        private final StackTraceElement[] borrowSite;
+        private volatile boolean reportedLeak;
+
+        Handle(Entry entry) {
+            this.entry = entry;
+            // Chỉ chụp stack khi bật leak detection (tốn vài µs mỗi lượt mượn)
+            this.borrowSite = leakDetectionThresholdMs > 0 ? callerStack() : null;
+        }
+
+        long heldMillis() { return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - borrowedNanos); }
+
+        @Override
+        public Object invoke(Object proxy, Method m, Object[] args) throws Throwable {
+            switch (m.getName()) {
+                case "close":
+                    if (returned.compareAndSet(false, true)) giveBack(this);
+                    return null;
+                case "isClosed":
+                    return returned.get() || entry.raw.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + entry.raw + "]";
+                default:
+                    if (returned.get()) throw new SQLException("Connection đã được trả về pool");
+                    try {
+                        return m.invoke(entry.raw, args);
+                    } catch (InvocationTargetException ite) {
+                        throw ite.getCause();
+                    }
+            }
+        }
+    }
+}
@@ -16,6 +16,7 @@ import java.sql.Statement;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import com.example.storemanagement.model.Customer;
@@ -143,6 +144,35 @@ public class CustomerDAO {
         return list;
     }
 
+    /**
+     * Cộng/trừ điểm cho nhiều khách hàng trong một batch (không để điểm âm).
+     * Dùng Connection của caller để tham gia cùng transaction với việc chốt đơn.
+     * @param deltaByCustomer customerId → số điểm thay đổi
+     */
+    public void addPoints(Connection cn, Map<Long, Integer> deltaByCustomer) throws SQLException {
+        if (deltaByCustomer.isEmpty()) return;
+        // created_at = created_at: giữ nguyên cột TIMESTAMP khi UPDATE
+        String sql = "UPDATE customers SET points = GREATEST(0, points + ?), created_at = created_at WHERE id=?";
+        try (PreparedStatement ps = cn.prepareStatement(sql)) {
+            for (Map.Entry<Long, Integer> e : deltaByCustomer.entrySet()) {
+                ps.setInt(1, e.getValue());
+                ps.setLong(2, e.getKey());
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    /** Cộng/trừ điểm một khách (không cho âm) bằng một câu UPDATE nguyên tử; false nếu không có khách này. */
+    public boolean addPoints(Connection cn, long customerId, int delta) throws SQLException {
+        String sql = "UPDATE customers SET points = GREATEST(0, points + ?), created_at = created_at WHERE id=?";
+        try (PreparedStatement ps = cn.prepareStatement(sql)) {
+            ps.setInt(1, delta);
+            ps.setLong(2, customerId);
+            return ps.executeUpdate() > 0;
+        }
+    }
+
     /**
      * Đếm tổng số khách hàng (có thể theo keyword để phục vụ phân trang).
      */
@@ -7,6 +7,8 @@ package com.example.storemanagement.dao; // Khai báo package: nhóm lớp theo
  * - Giải thích TỪNG DÒNG, dễ hiểu, không đổi logic/mã thực thi (chỉ thay đổi/ghi chú thích).
  * - Nguồn cấu hình: /database/db.properties; có thể ghi đè bằng biến môi trường.
  * - Cách dùng: DBConnection.getInstance().getConnection() trong DAO/Service.
+ * - Kết nối được cấp từ ConnectionPool (cấu hình pool.* trong db.properties); close() = trả về pool.
+ *   Đặt pool.enabled=false để quay lại kiểu cũ (mỗi lần gọi mở một kết nối mới qua DriverManager).
  * - Gợi ý: Đặt mysql-connector-j trong pom.xml để DriverManager tìm thấy driver.
  */
 
@@ -14,12 +16,14 @@ import java.io.InputStream;             // Đọc file cấu hình từ classpat
 import java.sql.Connection;              // Kiểu đối tượng kết nối JDBC tới CSDL
 import java.sql.DriverManager;           // Lớp tạo Connection từ URL, user, password
 import java.sql.SQLException;            // Ngoại lệ sinh ra khi lỗi thao tác JDBC
+import java.util.Locale;                 // Chữ thường tên chế độ trong cảnh báo, không phụ thuộc locale máy
 import java.util.Objects;                // Tiện ích null-safe (Objects.toString, ...)
 import java.util.Properties;             // Lưu cặp key=value cấu hình DB
 
 public class DBConnection {              // Lớp chịu trách nhiệm quản lý kết nối DB theo mẫu Singleton
     private static volatile DBConnection instance; // Tham chiếu Singleton; volatile để an toàn đồng bộ đa luồng
     private final Properties props = new Properties(); // Đối tượng lưu cấu hình (url, user, password)
+    private final ConnectionPool pool;                 // Pool kết nối dùng chung; null nếu pool.enabled=false
 
     private DBConnection() {             // Constructor private: ngăn tạo mới từ bên ngoài (bắt buộc cho Singleton)
         loadProps();                     // Gọi hàm nạp cấu hình từ file + biến môi trường + mặc định
@@ -27,6 +31,7 @@ public class DBConnection {              // Lớp chịu trách nhiệm quản l
         try {
             Class.forName("com.mysql.cj.jdbc.Driver"); // Cố gắng nạp lớp driver MySQL; nếu thiếu thì DriverManager có thể không kết nối được
         } catch (ClassNotFoundException ignored) {}     // Nếu không tìm thấy driver, bỏ qua (vì đa số JDBC 4+ auto-load), nhưng nên kiểm tra pom.xml
+        pool = Boolean.parseBoolean(props.getProperty("pool.enabled", "true")) ? createPool() : null; // Khởi tạo pool theo cấu hình
     }
 
     @SuppressWarnings("DoubleCheckedLocking")
@@ -57,10 +62,78 @@ public class DBConnection {              // Lớp chịu trách nhiệm quản l
         // props.putIfAbsent("password", "");          // Mật khẩu mặc định rỗng (hãy đổi trong môi trường thực tế)
     }
 
-    public Connection getConnection() throws SQLException { // Cấp một Connection mới dựa trên cấu hình hiện tại
+    public Connection getConnection() throws SQLException { // Cấp một Connection (mượn từ pool) dựa trên cấu hình hiện tại
+        if (pool != null) return pool.borrow();         // Mượn từ pool; close() sẽ trả kết nối về pool thay vì đóng hẳn
         String url = Objects.toString(props.getProperty("url"), "");         // Lấy URL; nếu null thì thành chuỗi rỗng để tránh NullPointerException
         String user = Objects.toString(props.getProperty("user"), "");       // Lấy user; fallback rỗng
         String pass = Objects.toString(props.getProperty("password"), "");   // Lấy password; fallback rỗng
         return DriverManager.getConnection(url, user, pass); // Tạo và trả về kết nối JDBC tới MySQL; có thể ném SQLException nếu sai thông số/DB down
     }
+
+    /** Đọc một khoá cấu hình trong db.properties (vd: chế độ vận hành của Service); thiếu → def. */
+    public String getProperty(String key, String def) {
+        String v = props.getProperty(key);              // Giá trị thô từ file cấu hình
+        return v == null || v.isBlank() ? def : v.trim(); // Rỗng/không có → mặc định
+    }
+
+    /** Đọc khoá số nguyên; thiếu/rỗng/sai định dạng → def (an toàn khi gọi trong khởi tạo static). */
+    public int getIntProperty(String key, int def) {
+        try { return Integer.parseInt(getProperty(key, String.valueOf(def))); }
+        catch (NumberFormatException e) { return def; }  // Sai định dạng → mặc định, không làm hỏng khởi tạo lớp
+    }
+
+    /** Đọc khoá số long; thiếu/rỗng/sai định dạng → def. */
+    public long getLongProperty(String key, long def) {
+        try { return Long.parseLong(getProperty(key, String.valueOf(def))); }
+        catch (NumberFormatException e) { return def; }
+    }
+
+    /** Đọc khoá số thực; thiếu/rỗng/sai định dạng → def. */
+    public double getDoubleProperty(String key, double def) {
+        try { return Double.parseDouble(getProperty(key, String.valueOf(def))); }
+        catch (NumberFormatException e) { return def; }
+    }
+
+    /** Đọc khoá kiểu enum (không phân biệt hoa thường); thiếu → def, sai tên → def kèm cảnh báo STDERR. */
+    public <E extends Enum<E>> E getEnumProperty(String key, E def) {
+        String v = getProperty(key, def.name());
+        for (E e : def.getDeclaringClass().getEnumConstants())
+            if (e.name().equalsIgnoreCase(v)) return e;  // So không phân biệt hoa thường, không phụ thuộc locale máy
+        System.err.println("[DB] Giá trị " + key + "=" + v + " không hợp lệ, dùng mặc định " + def.name().toLowerCase(Locale.ROOT));
+        return def;
+    }
+
+    /** Số liệu pool hiện tại (active/idle/waiting, histogram thời gian mượn); null nếu tắt pool. */
+    public PoolStats getPoolStats() {
+        return pool == null ? null : pool.stats();      // Snapshot đọc được bất kỳ lúc nào từ trong app
+    }
+
+    /** Đóng pool khi thoát ứng dụng (gọi từ Main.stop()). */
+    public void shutdown() {
+        if (pool != null) pool.shutdown();               // Đóng toàn bộ kết nối rảnh, dừng luồng bảo trì
+    }
+
+    private ConnectionPool createPool() {               // Đọc các khoá pool.* (đều có giá trị mặc định hợp lý)
+        return new ConnectionPool(
+                Objects.toString(props.getProperty("url"), ""),
+                Objects.toString(props.getProperty("user"), ""),
+                Objects.toString(props.getProperty("password"), ""),
+                intProp("pool.minSize", 2),                  // Số kết nối giữ sẵn
+                intProp("pool.maxSize", 10),                 // Số kết nối tối đa cùng lúc
+                longProp("pool.borrowTimeoutMs", 5000),      // Chờ tối đa khi pool cạn
+                Boolean.parseBoolean(props.getProperty("pool.validateOnBorrow", "true")), // Kiểm tra isValid() trước khi cấp
+                intProp("pool.validationTimeoutSec", 2),     // Timeout cho isValid()
+                longProp("pool.idleTimeoutMs", 600_000),     // Đóng kết nối rảnh quá 10 phút (khi > minSize)
+                longProp("pool.maxLifetimeMs", 1_800_000),   // Thay kết nối sống quá 30 phút (nhỏ hơn wait_timeout của MySQL)
+                longProp("pool.housekeepingIntervalMs", 30_000), // Chu kỳ dọn dẹp nền
+                longProp("pool.leakDetectionThresholdMs", 60_000)); // Cảnh báo kết nối bị giữ quá 60s (0 = tắt)
+    }
+
+    private int intProp(String key, int def) {           // Đọc số nguyên; sai định dạng → dùng mặc định
+        return getIntProperty(key, def);
+    }
+
+    private long longProp(String key, long def) {        // Đọc số long; sai định dạng → dùng mặc định
+        return getLongProperty(key, def);
+    }
 }
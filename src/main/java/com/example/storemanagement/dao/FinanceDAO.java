@@ -38,6 +38,27 @@ public class FinanceDAO {              // DAO làm việc với bảng finance_r
         return -1L;                                              // Không có id trả về
     }
 
+    /**
+     * Ghi nhiều bản ghi trong một batch, dùng Connection của caller để tham gia cùng transaction
+     * (OrderService khi chốt đơn, OutboxWorker khi áp dụng outbox).
+     */
+    public void insertBatch(Connection cn, List<FinanceReport> rows) throws SQLException {
+        if (rows.isEmpty()) return;                               // Không có gì để ghi
+        String sql = "INSERT INTO finance_reports(store_id, report_date, type, category, amount, note) VALUES(?,?,?,?,?,?)";
+        try (PreparedStatement ps = cn.prepareStatement(sql)) {
+            for (FinanceReport r : rows) {
+                ps.setLong(1, r.getStoreId());                   // store_id
+                ps.setDate(2, Date.valueOf(r.getReportDate()));  // report_date
+                ps.setString(3, r.getType().name());             // type
+                ps.setString(4, r.getCategory());                // category
+                ps.setBigDecimal(5, r.getAmount());              // amount
+                ps.setString(6, r.getNote());                    // note
+                ps.addBatch();                                   // Gom vào batch
+            }
+            ps.executeBatch();                                   // Gửi một lần
+        }
+    }
+
     public boolean update(FinanceReport r) throws SQLException { // Cập nhật bản ghi tài chính
         String sql = "UPDATE finance_reports SET store_id=?, report_date=?, type=?, category=?, amount=?, note=? WHERE id=?"; // UPDATE theo id
         try (Connection cn = DBConnection.getInstance().getConnection();
@@ -0,0 +1,566 @@
+package com.example.storemanagement.dao;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.text.CollationKey;
+import java.text.Collator;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * InventoryMatrix – bản sao tồn kho (store, product) → quantity trong bộ nhớ cho màn hình tổng quan tồn kho,
+ * thay cho JOIN inventory/stores/products/suppliers ở mỗi lần đổi trang, lọc hay làm mới.
+ *
+ * - Ô tồn nằm trong bảng băm địa chỉ mở với khoá nguyên thuỷ (long storeId, long productId) và mảng song song
+ *   quantity / updatedAt; tên cửa hàng, SKU, tên sản phẩm, nhà cung cấp, giá được phi chuẩn hoá vào bảng phụ.
+ * - Là subscriber của StockMoveTailer: nạp stores + products + inventory trên read view REPEATABLE READ của tailer
+ *   (nhất quán với mốc stock_moves.id), sau đó cộng delta của các dòng mới (IMPORT +, EXPORT −, ADJUST ±) giống
+ *   trigger trg_moves_after_insert; gap / commit muộn / ADJUST của đối soát do tailer xử lý.
+ * - Thay đổi không đi qua stock_moves: sản phẩm sửa → theo products.updated_at (chỉ dòng thật sự khác bản đang giữ);
+ *   thêm / xoá một sản phẩm → addProduct / removeProduct chèn / gỡ đúng các ô của sản phẩm đó;
+ *   fanOutInventory hàng loạt → nạp lại toàn bộ; ngoài ra nạp lại định kỳ mỗi inventory.matrixResyncMs.
+ * - Thứ tự (store_name, product_name) so bằng Collator gốc ở độ mạnh PRIMARY (không phân biệt hoa thường / dấu)
+ *   – xấp xỉ utf8mb4_unicode_ci của đường SQL; các tên bằng nhau theo collation có thể ra thứ tự khác.
+ * - Độ trễ tối đa ~ inventory.tailPollMs; ghi kho từ chính instance này gọi catchUp() để màn hình thấy ngay.
+ */
+public final class InventoryMatrix implements StockMoveTailer.Subscriber {
+
+    private static final InventoryMatrix INSTANCE = new InventoryMatrix(
+            Boolean.parseBoolean(prop("inventory.matrix", "true")),
+            DBConnection.getInstance().getLongProperty("inventory.matrixResyncMs", 600000));
+
+    public static InventoryMatrix getInstance() { return INSTANCE; }
+
+    private static final boolean USE_SEARCH_INDEX = Boolean.parseBoolean(prop("products.searchIndex", "true"));
+    private static final long PRODUCT_LAG_MS = 5_000; // đọc lại products.updated_at lùi một khoảng (commit muộn)
+    private static final Collator COLLATOR = collator();
+
+    private final boolean enabled;
+    private final long resyncNanos;
+
+    // ---- Trạng thái đọc bởi màn hình: chỉ đọc/ghi dưới lock ----
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private Cells cells = new Cells(16);
+    private Map<Long, StoreDim> stores = new HashMap<>();
+    private Map<Long, ProductDim> products = new HashMap<>();
+    private int[] sortedSlots; // thứ tự store_name, product_name; null = cần dựng lại
+
+    // ---- Trạng thái nạp: chỉ luồng đang giữ pollLock dùng (callback của tailer, addProduct / removeProduct) ----
+    private final Object pollLock = new Object();
+    private long productWatermark;                             // products.updated_at lớn nhất đã thấy (epoch ms)
+    private long loadedAt;                                     // nanoTime lần nạp gần nhất; 0 = chưa nạp
+    private volatile boolean resyncRequested;
+    private long movesApplied;
+    private long resyncs;
+
+    private boolean subscribed;
+
+    InventoryMatrix(boolean enabled, long resyncMs) {
+        this.enabled = enabled;
+        this.resyncNanos = TimeUnit.MILLISECONDS.toNanos(resyncMs);
+    }
+
+    public boolean isEnabled() { return enabled; }
+
+    /**
+     * Tổng quan tồn kho từ bộ nhớ: cùng bộ lọc, thứ tự (store_name, product_name) và phân trang như
+     * ProductDAO.getInventoryOverview. Lần gọi đầu nạp ma trận và khởi động luồng bám đuôi.
+     */
+    public List<ProductDAO.InventoryOverview> query(Long storeId, Long supplierId, String keyword, int page, int pageSize)
+            throws SQLException {
+        if (page < 1)
+            page = 1;
+        if (pageSize <= 0)
+            pageSize = 20;
+        start();
+
+        Set<Long> keywordIds = null;
+        String kw = keyword == null ? "" : keyword.trim().toLowerCase(Locale.ROOT);
+        if (!kw.isEmpty() && USE_SEARCH_INDEX) {
+            keywordIds = new HashSet<>(ProductSearchIndex.getInstance().search(keyword, 0));
+            if (keywordIds.isEmpty()) return new ArrayList<>();
+        }
+
+        ensureSorted();
+        List<ProductDAO.InventoryOverview> list = new ArrayList<>(pageSize);
+        int skip = (page - 1) * pageSize;
+        lock.readLock().lock();
+        try {
+            int[] order = sortedSlots != null ? sortedSlots : sortSlots(); // vừa bị đổi cấu trúc → tự sắp
+            for (int slot : order) {
+                long sId = cells.storeIds[slot], pId = cells.productIds[slot];
+                if (storeId != null && sId != storeId) continue;
+                ProductDim p = products.get(pId);
+                if (supplierId != null && (p == null || p.supplierId == null || !p.supplierId.equals(supplierId))) continue;
+                if (!kw.isEmpty()) {
+                    if (keywordIds != null ? !keywordIds.contains(pId)
+                            : p == null || !(p.nameLower.contains(kw) || p.skuLower.contains(kw))) continue;
+                }
+                if (skip > 0) { skip--; continue; }
+                list.add(toOverview(slot, stores.get(sId), p));
+                if (list.size() >= pageSize) break;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return list;
+    }
+
+    /** Áp dụng ngay các stock_moves mới (gọi sau khi chính instance này ghi kho). */
+    public void catchUp() throws SQLException {
+        if (!enabled || !isLoaded()) return;
+        StockMoveTailer.getInstance().pollNow();
+    }
+
+    /** Có thay đổi ngoài stock_moves (thêm dòng inventory hàng loạt...) → nạp lại toàn bộ ở lượt kế tiếp. */
+    public void invalidate() {
+        resyncRequested = true;
+    }
+
+    /**
+     * Sản phẩm vừa tạo cùng các dòng inventory của nó (quantity 0): thêm tên sản phẩm + các ô còn thiếu với tồn 0,
+     * không nạp lại toàn bộ. Ô đã có (stock_moves của sản phẩm đã được bám đuôi) giữ nguyên. Chưa nạp → bỏ qua.
+     */
+    public void addProduct(long productId) throws SQLException {
+        if (!enabled) return;
+        synchronized (pollLock) {
+            if (loadedAt == 0) return;
+            Map<Long, ProductDim> dim = new HashMap<>();
+            Map<Long, Long> cellsAt = new HashMap<>(); // store_id → inventory.updated_at
+            try (Connection cn = DBConnection.getInstance().getConnection()) {
+                loadProducts(cn, "p.id = ?", productId, dim);
+                try (PreparedStatement ps = cn.prepareStatement("SELECT store_id, updated_at FROM inventory WHERE product_id = ?")) {
+                    ps.setLong(1, productId);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) cellsAt.put(rs.getLong(1), millis(rs.getTimestamp(2)));
+                    }
+                }
+            }
+            lock.writeLock().lock();
+            try {
+                products.putAll(dim);
+                for (Map.Entry<Long, Long> e : cellsAt.entrySet()) {
+                    int before = cells.size;
+                    int slot = cells.slotFor(e.getKey(), productId);
+                    if (cells.size == before) continue;
+                    cells.updatedAt[slot] = e.getValue();
+                    sortedSlots = null; // ô mới → sắp lại trong bộ nhớ ở lần xem kế tiếp
+                    if (!stores.containsKey(e.getKey())) resyncRequested = true; // cửa hàng mới, thiếu tên
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /** Sản phẩm đã xoá (ON DELETE CASCADE xoá inventory, không có stock_moves): gỡ tên và các ô của nó. */
+    public void removeProduct(long productId) {
+        if (!enabled) return;
+        synchronized (pollLock) {
+            if (loadedAt == 0) return;
+            lock.writeLock().lock();
+            try {
+                products.remove(productId);
+                int removed = 0;
+                for (long storeId : stores.keySet())
+                    if (cells.remove(storeId, productId)) removed++;
+                if (removed > 0 && sortedSlots != null) {
+                    // Ô bị gỡ thành tombstone, các ô khác giữ chỗ → lọc thứ tự cũ thay vì sắp lại
+                    int[] kept = new int[sortedSlots.length - removed];
+                    int n = 0;
+                    for (int slot : sortedSlots)
+                        if (cells.productIds[slot] > 0 && n < kept.length) kept[n++] = slot;
+                    sortedSlots = n == kept.length ? kept : null;
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    public synchronized void stop() {
+        if (!subscribed) return;
+        StockMoveTailer.getInstance().unsubscribe(this);
+        subscribed = false;
+        synchronized (pollLock) {
+            loadedAt = 0; // đăng ký lại → nạp lại từ đầu
+        }
+    }
+
+    @Override
+    public String toString() {
+        synchronized (pollLock) {
+            return "InventoryMatrix[cells=" + cells.size + ", movesApplied=" + movesApplied + ", resyncs=" + resyncs + "]";
+        }
+    }
+
+    // ===================== Nạp & bám đuôi =====================
+
+    private synchronized void start() throws SQLException {
+        if (subscribed) return;
+        StockMoveTailer tailer = StockMoveTailer.getInstance();
+        tailer.subscribe(this);
+        try {
+            tailer.pollNow(); // nạp lần đầu ngay trên luồng gọi → lỗi DB báo thẳng cho màn hình
+        } catch (SQLException | RuntimeException ex) {
+            tailer.unsubscribe(this); // lần xem sau thử lại
+            throw ex;
+        }
+        subscribed = true;
+    }
+
+    private boolean isLoaded() {
+        synchronized (pollLock) {
+            return loadedAt != 0;
+        }
+    }
+
+    @Override
+    public boolean needsReload() {
+        synchronized (pollLock) {
+            return loadedAt == 0 || resyncRequested || System.nanoTime() - loadedAt >= resyncNanos;
+        }
+    }
+
+    /** Đọc stores + products + inventory trên read view của tailer rồi thay nguyên cụm. */
+    @Override
+    public void reload(Connection cn) throws SQLException {
+        synchronized (pollLock) {
+            resyncRequested = false; // yêu cầu đến trong lúc nạp sẽ kích hoạt thêm một lần
+            Map<Long, StoreDim> newStores = new HashMap<>();
+            Map<Long, ProductDim> newProducts = new HashMap<>();
+            Cells newCells = new Cells(1024);
+            try (PreparedStatement ps = cn.prepareStatement("SELECT id, code, name FROM stores");
+                 ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) newStores.put(rs.getLong(1), new StoreDim(rs.getString(2), rs.getString(3)));
+            }
+            long wm = loadProducts(cn, null, null, newProducts);
+            try (PreparedStatement ps = cn.prepareStatement("SELECT store_id, product_id, quantity, updated_at FROM inventory")) {
+                ps.setFetchSize(Integer.MIN_VALUE); // MySQL: đọc dạng stream
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        int slot = newCells.slotFor(rs.getLong(1), rs.getLong(2));
+                        newCells.qty[slot] = rs.getInt(3);
+                        newCells.updatedAt[slot] = millis(rs.getTimestamp(4));
+                    }
+                }
+            }
+
+            lock.writeLock().lock();
+            try {
+                cells = newCells;
+                stores = newStores;
+                products = newProducts;
+                sortedSlots = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            productWatermark = wm;
+            long now = System.nanoTime();
+            loadedAt = now == 0 ? 1 : now;
+            resyncs++;
+        }
+    }
+
+    /** Cộng một lô stock_moves vào ma trận. */
+    @Override
+    public void apply(List<StockMoveTailer.Move> moves) {
+        synchronized (pollLock) {
+            lock.writeLock().lock();
+            try {
+                for (StockMoveTailer.Move m : moves) {
+                    int before = cells.size;
+                    int slot = cells.slotFor(m.storeId, m.productId);
+                    if (cells.size != before) sortedSlots = null; // ô mới (có thể kèm nhân đôi bảng) → thứ tự đổi
+                    cells.qty[slot] += m.delta();
+                    cells.updatedAt[slot] = Math.max(cells.updatedAt[slot], m.createdAt);
+                    if (!stores.containsKey(m.storeId) || !products.containsKey(m.productId)) resyncRequested = true; // thiếu tên
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+            movesApplied += moves.size();
+        }
+    }
+
+    /** Sau mỗi lượt bám đuôi: đọc sản phẩm đổi theo products.updated_at. */
+    @Override
+    public void caughtUp(Connection cn) throws SQLException {
+        synchronized (pollLock) {
+            if (loadedAt != 0) refreshProducts(cn);
+        }
+    }
+
+    /**
+     * Sản phẩm đổi theo products.updated_at (tên, SKU, giá, nhà cung cấp) → cập nhật bảng phụ. Khoảng lùi
+     * PRODUCT_LAG_MS luôn đọc lại vài dòng đã có → chỉ dòng khác bản đang giữ mới được ghi; thứ tự chỉ dựng lại
+     * khi tên sản phẩm đổi.
+     */
+    private void refreshProducts(Connection cn) throws SQLException {
+        Map<Long, ProductDim> read = new HashMap<>();
+        long wm = loadProducts(cn, "p.updated_at >= ?", new Timestamp(Math.max(0, productWatermark - PRODUCT_LAG_MS)), read);
+        productWatermark = Math.max(productWatermark, wm);
+        lock.readLock().lock();
+        try {
+            read.entrySet().removeIf(e -> e.getValue().sameAs(products.get(e.getKey())));
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (read.isEmpty()) return;
+        lock.writeLock().lock();
+        try {
+            for (Map.Entry<Long, ProductDim> e : read.entrySet()) {
+                ProductDim old = products.put(e.getKey(), e.getValue());
+                if (old == null || !Objects.equals(old.name, e.getValue().name)) sortedSlots = null;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Đọc products (kèm tên nhà cung cấp), tuỳ chọn lọc theo where (một tham số arg); trả về updated_at lớn nhất. */
+    private static long loadProducts(Connection cn, String where, Object arg, Map<Long, ProductDim> out) throws SQLException {
+        String sql = "SELECT p.id, p.sku, p.name, p.unit_price, p.supplier_id, sup.name, p.updated_at FROM products p "
+                + "LEFT JOIN suppliers sup ON sup.id = p.supplier_id" + (where != null ? " WHERE " + where : "");
+        long wm = 0;
+        try (PreparedStatement ps = cn.prepareStatement(sql)) {
+            if (where != null) ps.setObject(1, arg);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    long sup = rs.getLong(5);
+                    Long supplierId = rs.wasNull() ? null : sup;
+                    out.put(rs.getLong(1), new ProductDim(rs.getString(2), rs.getString(3), rs.getBigDecimal(4),
+                            supplierId, rs.getString(6)));
+                    wm = Math.max(wm, millis(rs.getTimestamp(7)));
+                }
+            }
+        }
+        return wm;
+    }
+
+    // ===================== Sắp xếp & map =====================
+
+    private void ensureSorted() {
+        lock.readLock().lock();
+        try {
+            if (sortedSlots != null) return;
+        } finally {
+            lock.readLock().unlock();
+        }
+        lock.writeLock().lock();
+        try {
+            if (sortedSlots == null) sortedSlots = sortSlots();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Các ô đang dùng theo (store_name, product_name); gọi khi giữ lock. */
+    private int[] sortSlots() {
+        Integer[] slots = new Integer[cells.size];
+        int n = 0;
+        for (int i = 0; i < cells.productIds.length; i++)
+            if (cells.productIds[i] > 0) slots[n++] = i;
+        Comparator<Integer> bySort = Comparator
+                .comparing((Integer s) -> storeKey(cells.storeIds[s]), Comparator.nullsFirst(Comparator.naturalOrder()))
+                .thenComparing((Integer s) -> productKey(cells.productIds[s]), Comparator.nullsFirst(Comparator.naturalOrder()));
+        Arrays.sort(slots, 0, n, bySort);
+        int[] out = new int[n];
+        for (int i = 0; i < n; i++) out[i] = slots[i];
+        return out;
+    }
+
+    private CollationKey storeKey(long id) {
+        StoreDim s = stores.get(id);
+        return s == null ? null : s.nameKey;
+    }
+
+    private CollationKey productKey(long id) {
+        ProductDim p = products.get(id);
+        return p == null ? null : p.nameKey;
+    }
+
+    private static Collator collator() {
+        Collator c = Collator.getInstance(Locale.ROOT);
+        c.setStrength(Collator.PRIMARY);
+        c.setDecomposition(Collator.CANONICAL_DECOMPOSITION);
+        return c;
+    }
+
+    private static CollationKey key(String name) {
+        if (name == null) return null;
+        synchronized (COLLATOR) {
+            return COLLATOR.getCollationKey(name);
+        }
+    }
+
+    private ProductDAO.InventoryOverview toOverview(int slot, StoreDim s, ProductDim p) {
+        ProductDAO.InventoryOverview o = new ProductDAO.InventoryOverview();
+        o.storeId = cells.storeIds[slot];
+        o.productId = cells.productIds[slot];
+        if (s != null) {
+            o.storeCode = s.code;
+            o.storeName = s.name;
+        }
+        if (p != null) {
+            o.sku = p.sku;
+            o.productName = p.name;
+            o.supplierName = p.supplierName;
+            o.unitPrice = p.unitPrice;
+        }
+        o.quantity = cells.qty[slot];
+        long at = cells.updatedAt[slot];
+        o.updatedAt = at == 0 ? null : LocalDateTime.ofInstant(Instant.ofEpochMilli(at), ZoneId.systemDefault());
+        return o;
+    }
+
+    private static long millis(Timestamp ts) {
+        return ts == null ? 0 : ts.getTime();
+    }
+
+    private static String prop(String key, String def) {
+        return DBConnection.getInstance().getProperty(key, def);
+    }
+
+    // ===================== Cấu trúc dữ liệu =====================
+
+    /**
+     * Bảng băm địa chỉ mở (linear probing) khoá (storeId, productId) nguyên thuỷ; productId 0 = ô trống
+     * (id AUTO_INCREMENT bắt đầu từ 1), TOMBSTONE = ô đã gỡ (giữ chuỗi dò; dùng lại khi chèn, bỏ khi nhân đôi).
+     */
+    private static final class Cells {
+        static final long TOMBSTONE = -1;
+
+        long[] storeIds;
+        long[] productIds;
+        int[] qty;
+        long[] updatedAt; // epoch ms
+        int size;         // ô đang dùng
+        int used;         // ô đang dùng + tombstone (tính tải)
+
+        Cells(int capacity) {
+            int cap = Integer.highestOneBit(Math.max(4, capacity - 1)) << 1;
+            storeIds = new long[cap];
+            productIds = new long[cap];
+            qty = new int[cap];
+            updatedAt = new long[cap];
+        }
+
+        /** Chỉ số ô của (storeId, productId), tạo ô quantity 0 nếu chưa có. */
+        int slotFor(long storeId, long productId) {
+            int mask = productIds.length - 1;
+            int i = hash(storeId, productId) & mask;
+            int free = -1;
+            while (productIds[i] != 0) {
+                if (productIds[i] == productId && storeIds[i] == storeId) return i;
+                if (free < 0 && productIds[i] == TOMBSTONE) free = i;
+                i = (i + 1) & mask;
+            }
+            if (free < 0 && (used + 1) * 10 > productIds.length * 6) { // tải > 60% → nhân đôi rồi tìm lại
+                grow();
+                return slotFor(storeId, productId);
+            }
+            if (free >= 0) i = free;
+            else used++;
+            storeIds[i] = storeId;
+            productIds[i] = productId;
+            qty[i] = 0;
+            updatedAt[i] = 0;
+            size++;
+            return i;
+        }
+
+        /** Gỡ ô (storeId, productId) nếu có; các ô khác giữ nguyên chỉ số. */
+        boolean remove(long storeId, long productId) {
+            int mask = productIds.length - 1;
+            for (int i = hash(storeId, productId) & mask; productIds[i] != 0; i = (i + 1) & mask) {
+                if (productIds[i] == productId && storeIds[i] == storeId) {
+                    productIds[i] = TOMBSTONE;
+                    size--;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void grow() {
+            long[] oldStores = storeIds, oldProducts = productIds, oldUpdated = updatedAt;
+            int[] oldQty = qty;
+            int cap = oldProducts.length << 1;
+            storeIds = new long[cap];
+            productIds = new long[cap];
+            qty = new int[cap];
+            updatedAt = new long[cap];
+            size = 0;
+            used = 0;
+            for (int j = 0; j < oldProducts.length; j++) {
+                if (oldProducts[j] <= 0) continue;
+                int i = slotFor(oldStores[j], oldProducts[j]);
+                qty[i] = oldQty[j];
+                updatedAt[i] = oldUpdated[j];
+            }
+        }
+
+        private static int hash(long storeId, long productId) {
+            long h = storeId * 0x9E3779B97F4A7C15L + productId;
+            h ^= h >>> 31;
+            h *= 0xBF58476D1CE4E5B9L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+
+    private static final class StoreDim {
+        final String code;
+        final String name;
+
+        final CollationKey nameKey;
+
+        StoreDim(String code, String name) {
+            this.code = code; this.name = name;
+            this.nameKey = key(name);
+        }
+    }
+
+    private static final class ProductDim {
+        final String sku;
+        final String name;
+        final BigDecimal unitPrice;
+        final Long supplierId;
+        final String supplierName;
+        final String skuLower;
+        final String nameLower;
+        final CollationKey nameKey;
+
+        ProductDim(String sku, String name, BigDecimal unitPrice, Long supplierId, String supplierName) {
+            this.sku = sku; this.name = name; this.unitPrice = unitPrice;
+            this.supplierId = supplierId; this.supplierName = supplierName;
+            this.skuLower = sku == null ? "" : sku.toLowerCase(Locale.ROOT);
+            this.nameLower = name == null ? "" : name.toLowerCase(Locale.ROOT);
+            this.nameKey = key(name);
+        }
+
+        /** Cùng nội dung hiển thị (giá so theo giá trị). */
+        boolean sameAs(ProductDim o) {
+            return o != null && Objects.equals(o.sku, sku) && Objects.equals(o.name, name)
+                    && Objects.equals(o.supplierId, supplierId) && Objects.equals(o.supplierName, supplierName)
+                    && (o.unitPrice == null ? unitPrice == null : unitPrice != null && o.unitPrice.compareTo(unitPrice) == 0);
+        }
+    }
+}
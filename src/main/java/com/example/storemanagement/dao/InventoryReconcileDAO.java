@@ -0,0 +1,168 @@
+package com.example.storemanagement.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * InventoryReconcileDAO – đối soát bảng inventory với tổng sổ cái stock_moves theo (store, product).
+ *
+ * Quét theo khoảng product_id của một cửa hàng: MỘT câu SELECT gộp UNION ALL (sổ cái + inventory) rồi GROUP BY,
+ * nên hai phía được đọc trên cùng một read view (consistent read, không khoá dòng, không chặn ghi bán hàng).
+ * stock_moves đọc theo idx_moves_store_product (store_id, product_id, ...) → mỗi khoảng là một range scan.
+ *
+ * Sửa lệch: ghi dòng ADJUST (quantity = inventory − sổ cái) để sổ cái khớp với inventory hiện có
+ * (inventory được coi là số đúng, ví dụ sau khi sửa tay / kiểm kê), còn inventory giữ nguyên.
+ */
+public class InventoryReconcileDAO {
+
+    private static final String DELTA = ProductDAO.MOVE_DELTA;
+
+    /** Kết quả quét một khoảng: số dòng sổ cái đã cộng, số ô đã so và các ô lệch. */
+    public static class RangeResult {
+        public long movesScanned;
+        public int cellsCompared;
+        public final List<Drift> drifts = new ArrayList<>();
+    }
+
+    /** Một ô (store, product) lệch. inventoryQty = null nếu chưa có dòng inventory. */
+    public static class Drift {
+        public final long storeId;
+        public final long productId;
+        public final long ledgerQty;
+        public final Integer inventoryQty;
+
+        Drift(long storeId, long productId, long ledgerQty, Integer inventoryQty) {
+            this.storeId = storeId;
+            this.productId = productId;
+            this.ledgerQty = ledgerQty;
+            this.inventoryQty = inventoryQty;
+        }
+
+        /** Lượng ADJUST cần ghi để sổ cái khớp inventory. */
+        public long correction() { return (inventoryQty == null ? 0 : inventoryQty) - ledgerQty; }
+    }
+
+    public List<Long> storeIds(Connection cn) throws SQLException {
+        List<Long> ids = new ArrayList<>();
+        try (PreparedStatement ps = cn.prepareStatement("SELECT id FROM stores ORDER BY id");
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) ids.add(rs.getLong(1));
+        }
+        return ids;
+    }
+
+    /** product_id lớn nhất (kể cả sản phẩm đã ngừng bán) – cận trên của các khoảng quét. */
+    public long maxProductId(Connection cn) throws SQLException {
+        try (PreparedStatement ps = cn.prepareStatement("SELECT COALESCE(MAX(id), 0) FROM products");
+             ResultSet rs = ps.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    /** So sổ cái với inventory cho storeId, product_id trong [fromId, toId). */
+    public RangeResult diffRange(Connection cn, long storeId, long fromId, long toId) throws SQLException {
+        String sql = "SELECT product_id, SUM(n), SUM(l), MAX(has_inv), SUM(i) FROM ("
+                + "SELECT product_id, 1 AS n, " + DELTA + " AS l, 0 AS has_inv, 0 AS i FROM stock_moves"
+                + " WHERE store_id = ? AND product_id >= ? AND product_id < ?"
+                + " UNION ALL "
+                + "SELECT product_id, 0, 0, 1, quantity FROM inventory"
+                + " WHERE store_id = ? AND product_id >= ? AND product_id < ?"
+                + ") x GROUP BY product_id";
+        RangeResult r = new RangeResult();
+        try (PreparedStatement ps = cn.prepareStatement(sql)) {
+            ps.setLong(1, storeId);
+            ps.setLong(2, fromId);
+            ps.setLong(3, toId);
+            ps.setLong(4, storeId);
+            ps.setLong(5, fromId);
+            ps.setLong(6, toId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    r.cellsCompared++;
+                    r.movesScanned += rs.getLong(2);
+                    long ledger = rs.getLong(3);
+                    Integer inv = rs.getInt(4) == 1 ? rs.getInt(5) : null;
+                    if (ledger != (inv == null ? 0 : inv))
+                        r.drifts.add(new Drift(storeId, rs.getLong(1), ledger, inv));
+                }
+            }
+        }
+        return r;
+    }
+
+    /**
+     * Ghi ADJUST cho các ô lệch của MỘT cửa hàng trên transaction của người gọi; trả về các ô đã sửa.
+     * Khoá các dòng inventory liên quan (FOR UPDATE) và bỏ qua ô đã đổi kể từ lúc quét (bán hàng xen giữa)
+     * hoặc inventory âm (trigger sẽ chặn). Chế độ trigger: trg_moves_after_insert cộng ADJUST vào inventory,
+     * nên trừ trước đúng lượng đó (upsert một batch) → inventory giữ nguyên, chỉ sổ cái thay đổi.
+     * Chế độ app: chỉ ghi stock_moves (không đi qua ProductDAO.postStockMoves vì hàm đó cập nhật inventory).
+     */
+    public List<Drift> applyCorrections(Connection cn, long storeId, List<Drift> drifts, String note) throws SQLException {
+        List<Drift> ok = new ArrayList<>(drifts.size());
+        for (int from = 0; from < drifts.size(); from += OrderDAO.CHUNK_SIZE) {
+            List<Drift> chunk = drifts.subList(from, Math.min(drifts.size(), from + OrderDAO.CHUNK_SIZE));
+            Map<Long, Integer> current = new HashMap<>();
+            try (PreparedStatement ps = cn.prepareStatement("SELECT product_id, quantity FROM inventory WHERE store_id = ?"
+                    + " AND product_id IN (" + OrderDAO.placeholders(chunk.size()) + ") ORDER BY product_id FOR UPDATE")) {
+                int i = 1;
+                ps.setLong(i++, storeId);
+                for (Drift d : chunk) ps.setLong(i++, d.productId);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) current.put(rs.getLong(1), rs.getInt(2));
+                }
+            }
+            for (Drift d : chunk) {
+                Integer now = current.get(d.productId);
+                boolean unchanged = d.inventoryQty == null ? now == null : d.inventoryQty.equals(now);
+                long c = d.correction();
+                if (unchanged && (now == null || now >= 0) && c >= Integer.MIN_VALUE && c <= Integer.MAX_VALUE)
+                    ok.add(d);
+            }
+        }
+        if (ok.isEmpty())
+            return ok;
+
+        if (ProductDAO.postingMode() == ProductDAO.PostingMode.TRIGGER) {
+            try (PreparedStatement ps = cn.prepareStatement("INSERT INTO inventory(store_id, product_id, quantity) VALUES (?,?,?)"
+                    + " ON DUPLICATE KEY UPDATE quantity = quantity + VALUES(quantity)")) {
+                batch(ps, ok, (p, d) -> {
+                    p.setLong(1, d.storeId);
+                    p.setLong(2, d.productId);
+                    p.setInt(3, (int) -d.correction()); // trừ trước, trigger cộng lại khi ghi ADJUST
+                });
+            }
+        }
+        try (PreparedStatement ps = cn.prepareStatement(
+                "INSERT INTO stock_moves(store_id, product_id, move_type, quantity, note) VALUES (?,?,'ADJUST',?,?)")) {
+            batch(ps, ok, (p, d) -> {
+                p.setLong(1, d.storeId);
+                p.setLong(2, d.productId);
+                p.setInt(3, (int) d.correction());
+                p.setString(4, note);
+            });
+        }
+        return ok;
+    }
+
+    private interface Binder {
+        void bind(PreparedStatement ps, Drift d) throws SQLException;
+    }
+
+    private static void batch(PreparedStatement ps, List<Drift> rows, Binder binder) throws SQLException {
+        int n = 0;
+        for (Drift d : rows) {
+            binder.bind(ps, d);
+            ps.addBatch();
+            if (++n % OrderDAO.CHUNK_SIZE == 0)
+                ps.executeBatch();
+        }
+        if (n % OrderDAO.CHUNK_SIZE != 0)
+            ps.executeBatch();
+    }
+}
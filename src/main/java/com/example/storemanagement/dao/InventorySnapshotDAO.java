@@ -0,0 +1,171 @@
+package com.example.storemanagement.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * InventorySnapshotDAO – ảnh chụp tồn kho theo mốc thời gian (inventory_snapshots + inventory_snapshot_lines)
+ * và truy vấn tồn tại một thời điểm bất kỳ.
+ *
+ * Quy ước: ảnh chụp mốc T chứa tồn của mọi stock_moves có created_at &lt; T (dòng quantity = 0 không lưu).
+ * Ảnh chụp mới = ảnh chụp trước + tổng delta trong [mốc trước, T) → chỉ quét một khoảng stock_moves.
+ * stockAt(store, product, t) = ảnh chụp gần nhất có mốc ≤ t + delta trong [mốc, t), đọc theo
+ * idx_moves_store_product (store_id, product_id, created_at) → quét khoảng, không phát lại toàn bộ lịch sử;
+ * cả cửa hàng dùng idx_moves_store_created (store_id, created_at), job tạo ảnh chụp dùng idx_moves_created.
+ */
+public class InventorySnapshotDAO {
+
+    private static final String DELTA = ProductDAO.MOVE_DELTA;
+
+    /** Mốc ảnh chụp. */
+    public static class Snapshot {
+        public final long id;
+        public final LocalDateTime cutoffAt;
+
+        Snapshot(long id, LocalDateTime cutoffAt) {
+            this.id = id;
+            this.cutoffAt = cutoffAt;
+        }
+    }
+
+    /** Xoá ảnh chụp hằng ngày cũ hơn before, giữ mốc đầu tháng (dòng chi tiết xoá theo FK CASCADE). */
+    public int pruneDaily(Connection cn, LocalDateTime before) throws SQLException {
+        try (PreparedStatement ps = cn.prepareStatement(
+                "DELETE FROM inventory_snapshots WHERE cutoff_at < ? AND DAYOFMONTH(cutoff_at) <> 1")) {
+            ps.setTimestamp(1, Timestamp.valueOf(before));
+            return ps.executeUpdate();
+        }
+    }
+
+    /** Ảnh chụp có mốc lớn nhất ≤ at (mốc = at vẫn dùng được: cùng quy ước created_at &lt; mốc). */
+    public Optional<Snapshot> findLatestAtOrBefore(Connection cn, LocalDateTime at) throws SQLException {
+        String sql = "SELECT id, cutoff_at FROM inventory_snapshots WHERE cutoff_at <= ? ORDER BY cutoff_at DESC LIMIT 1";
+        try (PreparedStatement ps = cn.prepareStatement(sql)) {
+            ps.setTimestamp(1, Timestamp.valueOf(at));
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) return Optional.of(new Snapshot(rs.getLong(1), rs.getTimestamp(2).toLocalDateTime()));
+            }
+        }
+        return Optional.empty();
+    }
+
+    /** Ảnh chụp mới nhất (job dùng để biết còn thiếu những mốc nào). */
+    public Optional<Snapshot> findLatest(Connection cn) throws SQLException {
+        try (PreparedStatement ps = cn.prepareStatement(
+                "SELECT id, cutoff_at FROM inventory_snapshots ORDER BY cutoff_at DESC LIMIT 1");
+             ResultSet rs = ps.executeQuery()) {
+            if (rs.next()) return Optional.of(new Snapshot(rs.getLong(1), rs.getTimestamp(2).toLocalDateTime()));
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Tạo ảnh chụp mốc cutoff từ ảnh chụp trước (previous, có thể null = lần đầu, cộng toàn bộ lịch sử một lần).
+     * Hai câu lệnh: INSERT header, INSERT ... SELECT các dòng (GROUP BY store, product). Trả về số dòng tồn.
+     * Trùng mốc (instance khác vừa tạo) → SQLException 1062, người gọi bỏ qua.
+     * Người gọi chạy ở READ COMMITTED: ở REPEATABLE READ, INSERT ... SELECT đặt shared next-key lock lên khoảng
+     * stock_moves đã quét (chặn bán hàng suốt câu lệnh); READ COMMITTED đọc nguồn bằng consistent read
+     * (cần binlog_format=ROW, mặc định của MySQL 8).
+     */
+    public int createSnapshot(Connection cn, LocalDateTime cutoff, Snapshot previous) throws SQLException {
+        long id;
+        try (PreparedStatement ps = cn.prepareStatement(
+                "INSERT INTO inventory_snapshots(cutoff_at) VALUES (?)", Statement.RETURN_GENERATED_KEYS)) {
+            ps.setTimestamp(1, Timestamp.valueOf(cutoff));
+            ps.executeUpdate();
+            try (ResultSet rs = ps.getGeneratedKeys()) {
+                if (!rs.next()) throw new SQLException("Không lấy được id ảnh chụp tồn kho");
+                id = rs.getLong(1);
+            }
+        }
+
+        StringBuilder sb = new StringBuilder()
+                .append("INSERT INTO inventory_snapshot_lines(snapshot_id, store_id, product_id, quantity) ")
+                .append("SELECT ?, store_id, product_id, SUM(q) FROM (");
+        if (previous != null)
+            sb.append("SELECT store_id, product_id, quantity AS q FROM inventory_snapshot_lines WHERE snapshot_id = ? ")
+              .append("UNION ALL ");
+        sb.append("SELECT store_id, product_id, ").append(DELTA).append(" AS q FROM stock_moves WHERE ");
+        if (previous != null)
+            sb.append("created_at >= ? AND ");
+        sb.append("created_at < ?) x GROUP BY store_id, product_id HAVING SUM(q) <> 0");
+
+        try (PreparedStatement ps = cn.prepareStatement(sb.toString())) {
+            int i = 1;
+            ps.setLong(i++, id);
+            if (previous != null) {
+                ps.setLong(i++, previous.id);
+                ps.setTimestamp(i++, Timestamp.valueOf(previous.cutoffAt));
+            }
+            ps.setTimestamp(i, Timestamp.valueOf(cutoff));
+            return ps.executeUpdate();
+        }
+    }
+
+    /** Tồn của một sản phẩm tại cửa hàng ngay trước thời điểm at. */
+    public int stockAt(Connection cn, long storeId, long productId, LocalDateTime at) throws SQLException {
+        Optional<Snapshot> snap = findLatestAtOrBefore(cn, at);
+        int qty = 0;
+        if (snap.isPresent()) {
+            try (PreparedStatement ps = cn.prepareStatement(
+                    "SELECT quantity FROM inventory_snapshot_lines WHERE snapshot_id = ? AND store_id = ? AND product_id = ?")) {
+                ps.setLong(1, snap.get().id);
+                ps.setLong(2, storeId);
+                ps.setLong(3, productId);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) qty = rs.getInt(1);
+                }
+            }
+        }
+        String sql = "SELECT COALESCE(SUM(" + DELTA + "), 0) FROM stock_moves WHERE store_id = ? AND product_id = ?"
+                + (snap.isPresent() ? " AND created_at >= ?" : "") + " AND created_at < ?"; // idx_moves_store_product
+        try (PreparedStatement ps = cn.prepareStatement(sql)) {
+            int i = 1;
+            ps.setLong(i++, storeId);
+            ps.setLong(i++, productId);
+            if (snap.isPresent()) ps.setTimestamp(i++, Timestamp.valueOf(snap.get().cutoffAt));
+            ps.setTimestamp(i, Timestamp.valueOf(at));
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) qty += rs.getInt(1);
+            }
+        }
+        return qty;
+    }
+
+    /** Tồn mọi sản phẩm của cửa hàng ngay trước at: product_id → quantity (sản phẩm tồn 0 không có trong map). */
+    public Map<Long, Integer> stockAt(Connection cn, long storeId, LocalDateTime at) throws SQLException {
+        Optional<Snapshot> snap = findLatestAtOrBefore(cn, at);
+        Map<Long, Integer> out = new HashMap<>();
+        if (snap.isPresent()) {
+            try (PreparedStatement ps = cn.prepareStatement(
+                    "SELECT product_id, quantity FROM inventory_snapshot_lines WHERE snapshot_id = ? AND store_id = ?")) {
+                ps.setLong(1, snap.get().id);
+                ps.setLong(2, storeId);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) out.put(rs.getLong(1), rs.getInt(2));
+                }
+            }
+        }
+        String sql = "SELECT product_id, SUM(" + DELTA + ") FROM stock_moves WHERE store_id = ?"
+                + (snap.isPresent() ? " AND created_at >= ?" : "") + " AND created_at < ? GROUP BY product_id";
+        try (PreparedStatement ps = cn.prepareStatement(sql)) {
+            int i = 1;
+            ps.setLong(i++, storeId);
+            if (snap.isPresent()) ps.setTimestamp(i++, Timestamp.valueOf(snap.get().cutoffAt));
+            ps.setTimestamp(i, Timestamp.valueOf(at));
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) out.merge(rs.getLong(1), rs.getInt(2), Integer::sum);
+            }
+        }
+        out.values().removeIf(q -> q == 0);
+        return out;
+    }
+}
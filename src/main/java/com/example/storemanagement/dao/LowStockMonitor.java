@@ -0,0 +1,286 @@
+package com.example.storemanagement.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * LowStockMonitor – cảnh báo sắp hết hàng theo ngưỡng reorder_thresholds, tính tăng dần từ stock_moves.
+ *
+ * - Chỉ các ô (store, product) có ngưỡng được theo dõi: bảng băm địa chỉ mở cố định, mỗi ô vài mảng nguyên thuỷ
+ *   (store, product, ngưỡng, tồn, trạng thái thấp) → bộ nhớ hằng số / SKU theo dõi, không giữ lịch sử.
+ * - Là subscriber của StockMoveTailer (dùng chung luồng bám đuôi với InventoryMatrix): nạp ngưỡng JOIN inventory
+ *   (chỉ dòng theo dõi) trên read view của tailer, sau đó cộng delta các lô stock_moves vào ô theo dõi (dòng của SKU
+ *   không theo dõi bị bỏ qua sau một lần tra bảng băm) và chỉ đánh giá lại các ô vừa đổi. ADJUST của job đối soát
+ *   (chỉ sửa sổ cái) không được giao nên không sinh sự kiện giả.
+ * - Phát sự kiện khi ô đổi trạng thái (tồn ≤ ngưỡng → LOW, vượt ngưỡng trở lại → RECOVERED): ghi log (stderr) và gọi
+ *   listener (màn hình tồn kho). Đổi ngưỡng / lệch ngoài stock_moves → invalidate(); nạp lại định kỳ mỗi lowStockResyncMs.
+ */
+public final class LowStockMonitor implements StockMoveTailer.Subscriber {
+
+    private static final LowStockMonitor INSTANCE = new LowStockMonitor(
+            Boolean.parseBoolean(prop("inventory.lowStock", "true")),
+            DBConnection.getInstance().getLongProperty("inventory.lowStockResyncMs", 600000));
+
+    public static LowStockMonitor getInstance() { return INSTANCE; }
+
+    /** Sự kiện đổi trạng thái tồn của một ô theo dõi. */
+    public static class LowStockEvent {
+        public final long storeId;
+        public final long productId;
+        public final String sku;
+        public final int quantity;
+        public final int minQty;
+        public final boolean low; // true = vừa xuống ≤ ngưỡng, false = đã vượt ngưỡng trở lại
+        public final LocalDateTime at;
+
+        LowStockEvent(long storeId, long productId, String sku, int quantity, int minQty, boolean low) {
+            this.storeId = storeId;
+            this.productId = productId;
+            this.sku = sku;
+            this.quantity = quantity;
+            this.minQty = minQty;
+            this.low = low;
+            this.at = LocalDateTime.now();
+        }
+
+        @Override
+        public String toString() {
+            return (low ? "LOW" : "RECOVERED") + " store=" + storeId + " sku=" + sku + " qty=" + quantity + " min=" + minQty;
+        }
+    }
+
+    private final boolean enabled;
+    private final long resyncNanos;
+    private final List<Consumer<LowStockEvent>> listeners = new CopyOnWriteArrayList<>();
+
+    // ---- Chỉ luồng giữ pollLock đọc/ghi ----
+    private final Object pollLock = new Object();
+    private Tracked tracked = new Tracked(0);
+    private long loadedAt;
+    private volatile boolean resyncRequested;
+    private volatile int lowCount;
+    private long movesSeen;
+    private final List<LowStockEvent> pending = new ArrayList<>(); // sự kiện chờ phát ở cuối lượt
+
+    private boolean subscribed;
+
+    LowStockMonitor(boolean enabled, long resyncMs) {
+        this.enabled = enabled;
+        this.resyncNanos = TimeUnit.MILLISECONDS.toNanos(resyncMs);
+    }
+
+    public boolean isEnabled() { return enabled; }
+
+    public void addListener(Consumer<LowStockEvent> l) { listeners.add(l); }
+
+    public void removeListener(Consumer<LowStockEvent> l) { listeners.remove(l); }
+
+    /** Số ô đang ở trạng thái LOW. */
+    public int getLowCount() { return lowCount; }
+
+    /** Các ô đang ở trạng thái LOW (ảnh chụp tại lượt bám đuôi gần nhất). */
+    public List<LowStockEvent> currentLow() {
+        List<LowStockEvent> out = new ArrayList<>();
+        synchronized (pollLock) {
+            Tracked t = tracked;
+            for (int i = 0; i < t.productIds.length; i++)
+                if (t.productIds[i] != 0 && t.low[i])
+                    out.add(new LowStockEvent(t.storeIds[i], t.productIds[i], t.skus[i], t.qty[i], t.minQty[i], true));
+        }
+        return out;
+    }
+
+    /** Ngưỡng đổi / tồn đổi ngoài stock_moves → nạp lại ở lượt kế tiếp. */
+    public void invalidate() {
+        resyncRequested = true;
+    }
+
+    public synchronized void start() {
+        if (!enabled || subscribed) return;
+        StockMoveTailer.getInstance().subscribe(this);
+        subscribed = true;
+    }
+
+    public synchronized void stop() {
+        if (!subscribed) return;
+        StockMoveTailer.getInstance().unsubscribe(this);
+        subscribed = false;
+        synchronized (pollLock) {
+            loadedAt = 0; // đăng ký lại → nạp lại (giữ trạng thái LOW để không phát trùng)
+        }
+    }
+
+    @Override
+    public String toString() {
+        synchronized (pollLock) {
+            return "LowStockMonitor[tracked=" + tracked.size + ", low=" + lowCount + ", movesSeen=" + movesSeen + "]";
+        }
+    }
+
+    // ===================== Callback của StockMoveTailer =====================
+
+    @Override
+    public boolean needsReload() {
+        synchronized (pollLock) {
+            return loadedAt == 0 || resyncRequested || System.nanoTime() - loadedAt >= resyncNanos;
+        }
+    }
+
+    /** Ngưỡng JOIN inventory trên read view của tailer; giữ trạng thái LOW cũ để không phát trùng. */
+    @Override
+    public void reload(Connection cn) throws SQLException {
+        synchronized (pollLock) {
+            resyncRequested = false;
+            List<long[]> rows = new ArrayList<>(); // {store, product, min, qty}
+            List<String> skus = new ArrayList<>();
+            try (PreparedStatement ps = cn.prepareStatement(
+                    "SELECT t.store_id, t.product_id, t.min_qty, COALESCE(i.quantity, 0), p.sku FROM reorder_thresholds t"
+                            + " JOIN products p ON p.id = t.product_id"
+                            + " LEFT JOIN inventory i ON i.store_id = t.store_id AND i.product_id = t.product_id");
+                 ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    rows.add(new long[] { rs.getLong(1), rs.getLong(2), rs.getInt(3), rs.getInt(4) });
+                    skus.add(rs.getString(5));
+                }
+            }
+
+            Tracked old = tracked;
+            Tracked t = new Tracked(rows.size());
+            for (int r = 0; r < rows.size(); r++) {
+                long[] row = rows.get(r);
+                int slot = t.insert(row[0], row[1]);
+                t.minQty[slot] = (int) row[2];
+                t.qty[slot] = (int) row[3];
+                t.skus[slot] = skus.get(r);
+                int was = old.find(row[0], row[1]);
+                t.low[slot] = was >= 0 && old.low[was]; // đánh giá lại so với trạng thái trước đó
+                evaluate(t, slot, pending);
+            }
+            tracked = t;
+            long now = System.nanoTime();
+            loadedAt = now == 0 ? 1 : now;
+            lowCount = countLow(t);
+        }
+    }
+
+    /** Cộng một lô stock_moves vào các ô theo dõi rồi đánh giá lại đúng các ô vừa đổi. */
+    @Override
+    public void apply(List<StockMoveTailer.Move> moves) {
+        synchronized (pollLock) {
+            Set<Integer> changed = new HashSet<>();
+            for (StockMoveTailer.Move m : moves) {
+                movesSeen++;
+                int slot = tracked.find(m.storeId, m.productId);
+                if (slot < 0) continue;
+                tracked.qty[slot] += m.delta();
+                changed.add(slot);
+            }
+            for (int slot : changed) evaluate(tracked, slot, pending);
+        }
+    }
+
+    /** Cuối mỗi lượt: phát các sự kiện đã gom. */
+    @Override
+    public void caughtUp(Connection cn) {
+        List<LowStockEvent> events;
+        synchronized (pollLock) {
+            if (pending.isEmpty()) return;
+            events = new ArrayList<>(pending);
+            pending.clear();
+        }
+        for (LowStockEvent e : events) {
+            System.err.println("[LowStockMonitor] " + e);
+            for (Consumer<LowStockEvent> l : listeners) {
+                try {
+                    l.accept(e);
+                } catch (RuntimeException ex) {
+                    System.err.println("[LowStockMonitor] Listener lỗi: " + ex.getMessage());
+                }
+            }
+        }
+    }
+
+    /** Đánh giá một ô; đổi trạng thái → thêm sự kiện. */
+    private void evaluate(Tracked t, int slot, List<LowStockEvent> events) {
+        boolean low = t.qty[slot] <= t.minQty[slot];
+        if (low == t.low[slot]) return;
+        t.low[slot] = low;
+        lowCount += t == tracked ? (low ? 1 : -1) : 0; // reload tự đếm lại sau khi thay bảng
+        events.add(new LowStockEvent(t.storeIds[slot], t.productIds[slot], t.skus[slot], t.qty[slot], t.minQty[slot], low));
+    }
+
+    private static int countLow(Tracked t) {
+        int n = 0;
+        for (int i = 0; i < t.productIds.length; i++)
+            if (t.productIds[i] != 0 && t.low[i]) n++;
+        return n;
+    }
+
+    private static String prop(String key, String def) {
+        return DBConnection.getInstance().getProperty(key, def);
+    }
+
+    // ===================== Cấu trúc dữ liệu =====================
+
+    /** Bảng băm địa chỉ mở kích thước cố định (dựng lại khi nạp) cho các ô theo dõi. */
+    private static final class Tracked {
+        final long[] storeIds;
+        final long[] productIds;
+        final int[] minQty;
+        final int[] qty;
+        final boolean[] low;
+        final String[] skus;
+        int size;
+
+        Tracked(int expected) {
+            int cap = Integer.highestOneBit(Math.max(4, expected * 2 - 1)) << 1; // tải ≤ 50%
+            storeIds = new long[cap];
+            productIds = new long[cap];
+            minQty = new int[cap];
+            qty = new int[cap];
+            low = new boolean[cap];
+            skus = new String[cap];
+        }
+
+        int insert(long storeId, long productId) {
+            int mask = productIds.length - 1;
+            int i = hash(storeId, productId) & mask;
+            while (productIds[i] != 0) {
+                if (productIds[i] == productId && storeIds[i] == storeId) return i;
+                i = (i + 1) & mask;
+            }
+            storeIds[i] = storeId;
+            productIds[i] = productId;
+            size++;
+            return i;
+        }
+
+        /** Chỉ số ô hoặc -1 nếu không theo dõi. */
+        int find(long storeId, long productId) {
+            int mask = productIds.length - 1;
+            int i = hash(storeId, productId) & mask;
+            while (productIds[i] != 0) {
+                if (productIds[i] == productId && storeIds[i] == storeId) return i;
+                i = (i + 1) & mask;
+            }
+            return -1;
+        }
+
+        private static int hash(long storeId, long productId) {
+            long h = storeId * 0x9E3779B97F4A7C15L + productId;
+            h ^= h >>> 31;
+            h *= 0xBF58476D1CE4E5B9L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
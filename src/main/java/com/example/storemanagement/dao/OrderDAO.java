@@ -1,6 +1,7 @@
 package com.example.storemanagement.dao;
 
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -8,20 +9,33 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Timestamp;
 import java.sql.Types;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import com.example.storemanagement.model.Order;
+import com.example.storemanagement.model.OrderEvent;
 import com.example.storemanagement.model.OrderItem;
+import com.example.storemanagement.model.OrderPage;
+import com.example.storemanagement.model.PointsLedger;
 
 /** DAO đặc thù cho đơn hàng. Chấp nhận truyền Connection để tham gia cùng transaction. */
 public class OrderDAO {
 
+    /** Số phần tử tối đa trong một mệnh đề IN (...) / một lần executeBatch(). */
+    static final int CHUNK_SIZE = 500;
+
     // =============== ORDER =================
     public long insertOrder(Connection cn, Order o) throws SQLException {
-        String sql = "INSERT INTO orders(order_code, store_id, customer_id, total_amount, discount, status, note)" +
-                     " VALUES (?,?,?,?,?,?,?)";
+        String sql = "INSERT INTO orders(order_code, store_id, customer_id, total_amount, discount, status, note, request_key)" +
+                     " VALUES (?,?,?,?,?,?,?,?)";
         try (PreparedStatement ps = cn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
             ps.setString(1, o.getOrderCode());
             ps.setLong(2, o.getStoreId());
@@ -30,14 +44,44 @@ public class OrderDAO {
             ps.setBigDecimal(5, o.getDiscount() == null ? BigDecimal.ZERO : o.getDiscount());
             ps.setString(6, o.getStatus() == null ? Order.Status.CONFIRMED.name() : o.getStatus().name());
             ps.setString(7, o.getNote());
+            ps.setString(8, o.getRequestKey());
             ps.executeUpdate();
             try (ResultSet rs = ps.getGeneratedKeys()) { if (rs.next()) return rs.getLong(1); }
         }
         throw new SQLException("Không lấy được ID order vừa tạo");
     }
 
+    /**
+     * Ghi nhiều order trong một batch; ID sinh tự động được gán ngược vào từng Order (theo đúng thứ tự).
+     */
+    public void insertOrders(Connection cn, List<Order> orders) throws SQLException {
+        if (orders.isEmpty()) return;
+        String sql = "INSERT INTO orders(order_code, store_id, customer_id, total_amount, discount, status, note, request_key)" +
+                     " VALUES (?,?,?,?,?,?,?,?)";
+        try (PreparedStatement ps = cn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            for (Order o : orders) {
+                ps.setString(1, o.getOrderCode());
+                ps.setLong(2, o.getStoreId());
+                if (o.getCustomerId() == null) ps.setNull(3, Types.BIGINT); else ps.setLong(3, o.getCustomerId());
+                ps.setBigDecimal(4, o.getTotalAmount() == null ? BigDecimal.ZERO : o.getTotalAmount());
+                ps.setBigDecimal(5, o.getDiscount() == null ? BigDecimal.ZERO : o.getDiscount());
+                ps.setString(6, o.getStatus() == null ? Order.Status.CONFIRMED.name() : o.getStatus().name());
+                ps.setString(7, o.getNote());
+                ps.setString(8, o.getRequestKey());
+                ps.addBatch();
+            }
+            ps.executeBatch();
+            try (ResultSet rs = ps.getGeneratedKeys()) {
+                for (Order o : orders) {
+                    if (!rs.next()) throw new SQLException("Không lấy được ID order vừa tạo");
+                    o.setId(rs.getLong(1));
+                }
+            }
+        }
+    }
+
     public Optional<Order> findById(Connection cn, long id) throws SQLException {
-        String sql = "SELECT id, order_code, store_id, customer_id, total_amount, discount, status, note, created_at, paid_at" +
+        String sql = "SELECT id, order_code, request_key, store_id, customer_id, total_amount, discount, status, note, created_at, paid_at" +
                      " FROM orders WHERE id=?";
         try (PreparedStatement ps = cn.prepareStatement(sql)) {
             ps.setLong(1, id);
@@ -51,8 +95,32 @@ public class OrderDAO {
         return Optional.empty();
     }
 
+    /** ID đơn đã chốt với khoá idempotency này (nếu có). */
+    public Optional<Long> findIdByRequestKey(Connection cn, String requestKey) throws SQLException {
+        try (PreparedStatement ps = cn.prepareStatement("SELECT id FROM orders WHERE request_key=?")) {
+            ps.setString(1, requestKey);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) return Optional.of(rs.getLong(1));
+            }
+        }
+        return Optional.empty();
+    }
+
+    /** Lỗi trùng khoá idempotency (MySQL 1062 trên uq_orders_request_key). */
+    public static boolean isDuplicateRequestKey(SQLException ex) {
+        for (Throwable t = ex; t != null; t = t.getCause()) {
+            if (t instanceof SQLException se && se.getErrorCode() == 1062
+                    && se.getMessage() != null && se.getMessage().contains("uq_orders_request_key")) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Phân trang OFFSET: trang càng sâu càng phải quét bỏ nhiều dòng. Màn hình lịch sử đơn nên dùng
+     * listByCustomerPage(...) (keyset) – chi phí mỗi trang như nhau.
+     */
     public List<Order> listByCustomer(Connection cn, long customerId, int page, int pageSize) throws SQLException {
-        String sql = "SELECT id, order_code, store_id, customer_id, total_amount, discount, status, note, created_at, paid_at" +
+        String sql = "SELECT id, order_code, request_key, store_id, customer_id, total_amount, discount, status, note, created_at, paid_at" +
                      " FROM orders WHERE customer_id=? ORDER BY created_at DESC LIMIT ? OFFSET ?";
         List<Order> list = new ArrayList<>();
         try (PreparedStatement ps = cn.prepareStatement(sql)) {
@@ -64,6 +132,54 @@ public class OrderDAO {
         return list;
     }
 
+    /**
+     * Lịch sử đơn của khách theo keyset (created_at DESC, id DESC) trên idx_orders_customer_created:
+     * trang N chỉ seek tới vị trí con trỏ rồi đọc pageSize + 1 dòng, không quét bỏ các trang trước.
+     * pageToken = null → trang đầu; token của trang sau lấy từ OrderPage.getNextPageToken().
+     */
+    public OrderPage listByCustomerPage(Connection cn, long customerId, String pageToken, int pageSize) throws SQLException {
+        if (pageSize <= 0) throw new IllegalArgumentException("pageSize phải > 0");
+        String base = "SELECT id, order_code, request_key, store_id, customer_id, total_amount, discount, status, note, created_at, paid_at" +
+                      " FROM orders WHERE customer_id=?";
+        String sql = pageToken == null
+                ? base + " ORDER BY created_at DESC, id DESC LIMIT ?"
+                : base + " AND (created_at < ? OR (created_at = ? AND id < ?)) ORDER BY created_at DESC, id DESC LIMIT ?";
+        List<Order> list = new ArrayList<>(pageSize + 1);
+        try (PreparedStatement ps = cn.prepareStatement(sql)) {
+            int i = 1;
+            ps.setLong(i++, customerId);
+            if (pageToken != null) {
+                Object[] cursor = decodeCursor(pageToken);
+                ps.setTimestamp(i++, (Timestamp) cursor[0]);
+                ps.setTimestamp(i++, (Timestamp) cursor[0]);
+                ps.setLong(i++, (Long) cursor[1]);
+            }
+            ps.setInt(i, pageSize + 1); // đọc dư 1 dòng để biết còn trang sau hay không
+            try (ResultSet rs = ps.executeQuery()) { while (rs.next()) list.add(mapOrder(rs)); }
+        }
+        if (list.size() <= pageSize) return new OrderPage(list, null);
+        list.remove(pageSize);
+        Order last = list.get(pageSize - 1);
+        return new OrderPage(list, encodeCursor(last.getCreatedAt(), last.getId()));
+    }
+
+    /** Token mờ (opaque) cho con trỏ (created_at, id): base64url("yyyy-MM-ddTHH:mm:ss[.n]|id"). */
+    private static String encodeCursor(LocalDateTime createdAt, long id) {
+        String raw = createdAt + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Object[] decodeCursor(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int sep = raw.lastIndexOf('|');
+            Timestamp createdAt = Timestamp.valueOf(LocalDateTime.parse(raw.substring(0, sep)));
+            return new Object[] { createdAt, Long.parseLong(raw.substring(sep + 1)) };
+        } catch (RuntimeException ex) {
+            throw new IllegalArgumentException("Page token không hợp lệ", ex);
+        }
+    }
+
     public BigDecimal getSubtotal(Connection cn, long orderId) throws SQLException {
         String sql = "SELECT IFNULL(SUM(line_total),0) FROM order_items WHERE order_id=?";
         try (PreparedStatement ps = cn.prepareStatement(sql)) {
@@ -73,6 +189,24 @@ public class OrderDAO {
         return BigDecimal.ZERO;
     }
 
+    /** Subtotal (SUM line_total) của nhiều order trong một truy vấn GROUP BY. */
+    public Map<Long, BigDecimal> getSubtotals(Connection cn, Collection<Long> orderIds) throws SQLException {
+        Map<Long, BigDecimal> totals = new HashMap<>();
+        List<Long> ids = new ArrayList<>(new LinkedHashSet<>(orderIds));
+        for (int from = 0; from < ids.size(); from += CHUNK_SIZE) {
+            List<Long> chunk = ids.subList(from, Math.min(ids.size(), from + CHUNK_SIZE));
+            String sql = "SELECT order_id, IFNULL(SUM(line_total),0) FROM order_items WHERE order_id IN ("
+                    + placeholders(chunk.size()) + ") GROUP BY order_id";
+            try (PreparedStatement ps = cn.prepareStatement(sql)) {
+                for (int i = 0; i < chunk.size(); i++) ps.setLong(i + 1, chunk.get(i));
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) totals.put(rs.getLong(1), rs.getBigDecimal(2));
+                }
+            }
+        }
+        return totals;
+    }
+
     // =============== ITEMS =================
     public void insertItem(Connection cn, OrderItem it) throws SQLException {
         String sql = "INSERT INTO order_items(order_id, product_id, quantity, unit_price) VALUES (?,?,?,?)";
@@ -85,6 +219,82 @@ public class OrderDAO {
         }
     }
 
+    /**
+     * Ghi nhiều dòng order_items bằng một JDBC batch (với rewriteBatchedStatements=true,
+     * driver MySQL gộp thành INSERT nhiều dòng → ít round trip).
+     */
+    public void insertItems(Connection cn, List<OrderItem> items) throws SQLException {
+        if (items.isEmpty()) return;
+        String sql = "INSERT INTO order_items(order_id, product_id, quantity, unit_price) VALUES (?,?,?,?)";
+        try (PreparedStatement ps = cn.prepareStatement(sql)) {
+            int n = 0;
+            for (OrderItem it : items) {
+                ps.setLong(1, it.getOrderId());
+                ps.setLong(2, it.getProductId());
+                ps.setInt(3, it.getQuantity());
+                ps.setBigDecimal(4, it.getUnitPrice());
+                ps.addBatch();
+                if (++n % CHUNK_SIZE == 0) ps.executeBatch();
+            }
+            if (n % CHUNK_SIZE != 0) ps.executeBatch();
+        }
+    }
+
+    /** Đọc unit_price hiện tại của nhiều sản phẩm bằng truy vấn IN (...) (chia chunk nếu quá dài). */
+    public Map<Long, BigDecimal> findUnitPrices(Connection cn, Collection<Long> productIds) throws SQLException {
+        Map<Long, BigDecimal> prices = new HashMap<>();
+        List<Long> ids = new ArrayList<>(new LinkedHashSet<>(productIds)); // bỏ trùng, giữ thứ tự
+        for (int from = 0; from < ids.size(); from += CHUNK_SIZE) {
+            List<Long> chunk = ids.subList(from, Math.min(ids.size(), from + CHUNK_SIZE));
+            String sql = "SELECT id, unit_price FROM products WHERE id IN (" + placeholders(chunk.size()) + ")";
+            try (PreparedStatement ps = cn.prepareStatement(sql)) {
+                for (int i = 0; i < chunk.size(); i++) ps.setLong(i + 1, chunk.get(i));
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) prices.put(rs.getLong(1), rs.getBigDecimal(2));
+                }
+            }
+        }
+        return prices;
+    }
+
+    // =============== EVENTS / POINTS LEDGER =================
+    /** Ghi nhiều order_events trong một batch. */
+    public void insertEvents(Connection cn, List<OrderEvent> events) throws SQLException {
+        if (events.isEmpty()) return;
+        String sql = "INSERT INTO order_events(order_id, event_type, data_json, note) VALUES (?,?,?,?)";
+        try (PreparedStatement ps = cn.prepareStatement(sql)) {
+            int n = 0;
+            for (OrderEvent e : events) {
+                ps.setLong(1, e.getOrderId());
+                ps.setString(2, e.getEventType());
+                ps.setString(3, e.getDataJson());
+                ps.setString(4, e.getNote());
+                ps.addBatch();
+                if (++n % CHUNK_SIZE == 0) ps.executeBatch();
+            }
+            if (n % CHUNK_SIZE != 0) ps.executeBatch();
+        }
+    }
+
+    /** Ghi nhiều dòng points_ledger trong một batch. */
+    public void insertPointsLedger(Connection cn, List<PointsLedger> rows) throws SQLException {
+        if (rows.isEmpty()) return;
+        String sql = "INSERT INTO points_ledger(customer_id, order_id, delta, reason, note) VALUES (?,?,?,?,?)";
+        try (PreparedStatement ps = cn.prepareStatement(sql)) {
+            int n = 0;
+            for (PointsLedger r : rows) {
+                ps.setLong(1, r.getCustomerId());
+                if (r.getOrderId() == null) ps.setNull(2, Types.BIGINT); else ps.setLong(2, r.getOrderId());
+                ps.setInt(3, r.getDelta());
+                ps.setString(4, r.getReason());
+                ps.setString(5, r.getNote());
+                ps.addBatch();
+                if (++n % CHUNK_SIZE == 0) ps.executeBatch();
+            }
+            if (n % CHUNK_SIZE != 0) ps.executeBatch();
+        }
+    }
+
     public List<OrderItem> listItems(Connection cn, long orderId) throws SQLException {
         String sql = "SELECT id, order_id, product_id, quantity, unit_price, line_total FROM order_items WHERE order_id=?";
         List<OrderItem> list = new ArrayList<>();
@@ -106,11 +316,81 @@ public class OrderDAO {
         return list;
     }
 
+    /**
+     * Dòng hàng của nhiều đơn (kèm SKU + tên sản phẩm) trong ceil(n / CHUNK_SIZE) truy vấn IN (...),
+     * thay cho gọi listItems(...) từng đơn. Kết quả giữ thứ tự orderIds; đơn không có dòng → danh sách rỗng.
+     */
+    public Map<Long, List<OrderItem>> listItemsByOrders(Connection cn, Collection<Long> orderIds) throws SQLException {
+        Map<Long, List<OrderItem>> byOrder = new LinkedHashMap<>();
+        for (Long id : orderIds) byOrder.putIfAbsent(id, new ArrayList<>());
+        List<Long> ids = new ArrayList<>(byOrder.keySet());
+        for (int from = 0; from < ids.size(); from += CHUNK_SIZE) {
+            List<Long> chunk = ids.subList(from, Math.min(ids.size(), from + CHUNK_SIZE));
+            String sql = "SELECT i.id, i.order_id, i.product_id, i.quantity, i.unit_price, i.line_total, p.sku, p.name" +
+                         " FROM order_items i JOIN products p ON p.id = i.product_id" +
+                         " WHERE i.order_id IN (" + placeholders(chunk.size()) + ") ORDER BY i.order_id, i.id";
+            try (PreparedStatement ps = cn.prepareStatement(sql)) {
+                for (int i = 0; i < chunk.size(); i++) ps.setLong(i + 1, chunk.get(i));
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        OrderItem it = new OrderItem();
+                        it.setId(rs.getLong("id"));
+                        it.setOrderId(rs.getLong("order_id"));
+                        it.setProductId(rs.getLong("product_id"));
+                        it.setQuantity(rs.getInt("quantity"));
+                        it.setUnitPrice(rs.getBigDecimal("unit_price"));
+                        it.setLineTotal(rs.getBigDecimal("line_total"));
+                        it.setProductSku(rs.getString("sku"));
+                        it.setProductName(rs.getString("name"));
+                        byOrder.get(it.getOrderId()).add(it);
+                    }
+                }
+            }
+        }
+        return byOrder;
+    }
+
+    // =============== ORDER CODE BLOCKS =================
+    /**
+     * Giữ trước một khối size giá trị liên tiếp của bộ đếm mã đơn cho cửa hàng; trả về giá trị đầu khối.
+     * Một round trip: UPDATE ... LAST_INSERT_ID(expr) trả giá trị mới qua generated keys (OK packet).
+     * Nên gọi trên kết nối autoCommit riêng (không nằm trong transaction chốt đơn) để không giữ khoá dòng bộ đếm.
+     */
+    public long reserveCodeBlock(Connection cn, long storeId, int size) throws SQLException {
+        String upd = "UPDATE order_code_blocks SET next_value = LAST_INSERT_ID(next_value + ?) WHERE store_id = ?";
+        for (int attempt = 0; attempt < 2; attempt++) {
+            try (PreparedStatement ps = cn.prepareStatement(upd, Statement.RETURN_GENERATED_KEYS)) {
+                ps.setInt(1, size);
+                ps.setLong(2, storeId);
+                if (ps.executeUpdate() > 0) {
+                    try (ResultSet rs = ps.getGeneratedKeys()) {
+                        if (rs.next()) return rs.getLong(1) - size;
+                    }
+                    throw new SQLException("Không đọc được khối mã đơn của cửa hàng #" + storeId);
+                }
+            }
+            // Lần đầu của cửa hàng: tạo bộ đếm (IGNORE nếu instance khác vừa tạo) rồi thử lại
+            try (PreparedStatement ps = cn.prepareStatement(
+                    "INSERT IGNORE INTO order_code_blocks(store_id, next_value) VALUES (?, 1)")) {
+                ps.setLong(1, storeId);
+                ps.executeUpdate();
+            }
+        }
+        throw new SQLException("Không tạo được bộ đếm mã đơn cho cửa hàng #" + storeId);
+    }
+
     // =============== Helpers =================
+    static String placeholders(int n) {
+        StringBuilder sb = new StringBuilder(n * 2);
+        for (int i = 0; i < n; i++) sb.append(i == 0 ? "?" : ",?");
+        return sb.toString();
+    }
+
     private Order mapOrder(ResultSet rs) throws SQLException {
         Order o = new Order();
         o.setId(rs.getLong("id"));
         o.setOrderCode(rs.getString("order_code"));
+        o.setRequestKey(rs.getString("request_key"));
         o.setStoreId(rs.getLong("store_id"));
         long cid = rs.getLong("customer_id"); o.setCustomerId(rs.wasNull()? null: cid);
         o.setTotalAmount(rs.getBigDecimal("total_amount"));
@@ -0,0 +1,118 @@
+package com.example.storemanagement.dao;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.example.storemanagement.model.CheckoutOutbox;
+
+/**
+ * DAO cho bảng checkout_outbox. Mọi hàm nhận Connection để tham gia transaction của caller:
+ * - OrderService ghi outbox trong cùng commit với order;
+ * - OutboxWorker claim (FOR UPDATE SKIP LOCKED) + áp dụng + đánh dấu DONE trong một transaction.
+ */
+public class OutboxDAO {
+
+    /** Ghi nhiều dòng outbox trong một batch. Trùng idem_key → SQLIntegrityConstraintViolationException. */
+    public void insert(Connection cn, List<CheckoutOutbox> rows) throws SQLException {
+        if (rows.isEmpty()) return;
+        String sql = "INSERT INTO checkout_outbox(idem_key, order_id, order_code, store_id, customer_id, amount, points," +
+                     " note, payment_method, report_date) VALUES (?,?,?,?,?,?,?,?,?,?)";
+        try (PreparedStatement ps = cn.prepareStatement(sql)) {
+            for (CheckoutOutbox r : rows) {
+                ps.setString(1, r.getIdemKey());
+                ps.setLong(2, r.getOrderId());
+                ps.setString(3, r.getOrderCode());
+                ps.setLong(4, r.getStoreId());
+                if (r.getCustomerId() == null) ps.setNull(5, Types.BIGINT); else ps.setLong(5, r.getCustomerId());
+                ps.setBigDecimal(6, r.getAmount() == null ? BigDecimal.ZERO : r.getAmount());
+                ps.setInt(7, r.getPoints() == null ? 0 : r.getPoints());
+                ps.setString(8, r.getNote());
+                ps.setString(9, r.getPaymentMethod());
+                ps.setDate(10, Date.valueOf(r.getReportDate()));
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    /**
+     * Khoá và lấy tối đa limit dòng PENDING (cũ nhất trước). SKIP LOCKED cho phép nhiều worker
+     * chạy song song mà không tranh nhau cùng dòng. Phải gọi trong transaction (autoCommit=false).
+     */
+    public List<CheckoutOutbox> claimPending(Connection cn, int limit) throws SQLException {
+        String sql = "SELECT id, idem_key, order_id, order_code, store_id, customer_id, amount, points, note," +
+                     " payment_method, report_date, status, attempts, last_error, created_at, processed_at" +
+                     " FROM checkout_outbox WHERE status='PENDING' ORDER BY id LIMIT ? FOR UPDATE SKIP LOCKED";
+        List<CheckoutOutbox> list = new ArrayList<>();
+        try (PreparedStatement ps = cn.prepareStatement(sql)) {
+            ps.setInt(1, limit);
+            try (ResultSet rs = ps.executeQuery()) { while (rs.next()) list.add(map(rs)); }
+        }
+        return list;
+    }
+
+    /** Đánh dấu đã áp dụng xong. */
+    public void markDone(Connection cn, List<Long> ids) throws SQLException {
+        if (ids.isEmpty()) return;
+        String sql = "UPDATE checkout_outbox SET status='DONE', processed_at=CURRENT_TIMESTAMP, last_error=NULL" +
+                     " WHERE id IN (" + OrderDAO.placeholders(ids.size()) + ")";
+        try (PreparedStatement ps = cn.prepareStatement(sql)) {
+            for (int i = 0; i < ids.size(); i++) ps.setLong(i + 1, ids.get(i));
+            ps.executeUpdate();
+        }
+    }
+
+    /** Ghi nhận một lần thử thất bại; quá maxAttempts → FAILED (cần xử lý tay), ngược lại giữ PENDING. */
+    public void recordFailure(Connection cn, long id, String error, int maxAttempts) throws SQLException {
+        // MySQL gán SET từ trái sang phải → IF(...) đã thấy attempts sau khi tăng
+        String sql = "UPDATE checkout_outbox SET attempts = attempts + 1, last_error = ?," +
+                     " status = IF(attempts >= ?, 'FAILED', 'PENDING') WHERE id = ?";
+        try (PreparedStatement ps = cn.prepareStatement(sql)) {
+            ps.setString(1, error == null ? null : error.substring(0, Math.min(255, error.length())));
+            ps.setInt(2, maxAttempts);
+            ps.setLong(3, id);
+            ps.executeUpdate();
+        }
+    }
+
+    /** Số dòng còn chờ xử lý (theo dõi độ trễ của worker). */
+    public int countPending(Connection cn) throws SQLException {
+        try (PreparedStatement ps = cn.prepareStatement("SELECT COUNT(*) FROM checkout_outbox WHERE status='PENDING'");
+             ResultSet rs = ps.executeQuery()) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    private CheckoutOutbox map(ResultSet rs) throws SQLException {
+        CheckoutOutbox r = new CheckoutOutbox();
+        r.setId(rs.getLong("id"));
+        r.setIdemKey(rs.getString("idem_key"));
+        r.setOrderId(rs.getLong("order_id"));
+        r.setOrderCode(rs.getString("order_code"));
+        r.setStoreId(rs.getLong("store_id"));
+        long cid = rs.getLong("customer_id"); r.setCustomerId(rs.wasNull() ? null : cid);
+        r.setAmount(rs.getBigDecimal("amount"));
+        r.setPoints(rs.getInt("points"));
+        r.setNote(rs.getString("note"));
+        r.setPaymentMethod(rs.getString("payment_method"));
+        Date d = rs.getDate("report_date");
+        r.setReportDate(d != null ? d.toLocalDate() : null);
+        r.setStatus(CheckoutOutbox.Status.valueOf(rs.getString("status")));
+        r.setAttempts(rs.getInt("attempts"));
+        r.setLastError(rs.getString("last_error"));
+        Timestamp c = rs.getTimestamp("created_at");
+        if (c != null) r.setCreatedAt(c.toLocalDateTime());
+        Timestamp p = rs.getTimestamp("processed_at");
+        if (p != null) r.setProcessedAt(p.toLocalDateTime());
+        return r;
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.storemanagement.dao;
+
+import com.example.storemanagement.util.LatencyHistogram;
+
+/**
+ * PoolStats – bản chụp (snapshot) trạng thái pool kết nối tại một thời điểm.
+ * Lấy qua DBConnection.getInstance().getPoolStats().
+ */
+public final class PoolStats {
+    private final int active;       // đang được DAO/Service mượn
+    private final int idle;         // đang rảnh trong pool
+    private final int waiting;      // số luồng đang chờ mượn
+    private final int maxSize;
+    private final long leaksDetected;
+    private final LatencyHistogram.Snapshot borrowLatency;
+
+    PoolStats(int active, int idle, int waiting, int maxSize, long leaksDetected,
+              LatencyHistogram.Snapshot borrowLatency) {
+        this.active = active;
+        this.idle = idle;
+        this.waiting = waiting;
+        this.maxSize = maxSize;
+        this.leaksDetected = leaksDetected;
+        this.borrowLatency = borrowLatency;
+    }
+
+    public int getActive() { return active; }
+    public int getIdle() { return idle; }
+    public int getWaiting() { return waiting; }
+    public int getMaxSize() { return maxSize; }
+    public long getLeaksDetected() { return leaksDetected; }
+    public LatencyHistogram.Snapshot getBorrowLatency() { return borrowLatency; }
+
+    @Override
+    public String toString() {
+        return "Pool[active=" + active + ", idle=" + idle + ", waiting=" + waiting + ", max=" + maxSize
+                + ", leaks=" + leaksDetected + "] borrow " + borrowLatency;
+    }
+}
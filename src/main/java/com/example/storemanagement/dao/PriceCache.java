@@ -0,0 +1,95 @@
+package com.example.storemanagement.dao;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * PriceCache – cache products.unit_price cho luồng chốt đơn.
+ *
+ * - Đọc: ConcurrentHashMap.get (không khoá); chỉ sản phẩm chưa có/hết hạn mới đọc DB (1 truy vấn IN cho cả giỏ).
+ * - Ghi xuyên (write-through): ProductDAO.update/delete gọi invalidate(id) sau khi ghi DB thành công.
+ * - Phiên bản: mỗi lần invalidate tăng version; lần nạp nào bắt đầu trước đó sẽ không được ghi vào cache
+ *   (tránh nạp giá cũ đè lên sau khi vừa invalidate). Kiểm tra version + ghi cache và invalidate chạy dưới cùng
+ *   một khoá → invalidate không thể chen vào giữa kiểm tra và ghi.
+ * - Thay đổi từ instance khác (không gọi được invalidate ở đây) được thấy sau tối đa prices.cacheTtlMs.
+ *
+ * Lấy qua PriceCache.getInstance(); tắt bằng prices.cacheEnabled=false (mọi lần đọc đi thẳng DB).
+ */
+public final class PriceCache {
+
+    private static final PriceCache INSTANCE = new PriceCache(
+            Boolean.parseBoolean(DBConnection.getInstance().getProperty("prices.cacheEnabled", "true")),
+            DBConnection.getInstance().getLongProperty("prices.cacheTtlMs", 30000));
+
+    public static PriceCache getInstance() { return INSTANCE; }
+
+    private final boolean enabled;
+    private final long ttlNanos;
+    private final ConcurrentHashMap<Long, Entry> prices = new ConcurrentHashMap<>();
+    private final AtomicLong version = new AtomicLong();
+    private final OrderDAO orderDAO = new OrderDAO();
+
+    PriceCache(boolean enabled, long ttlMs) {
+        this.enabled = enabled;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMs);
+    }
+
+    /**
+     * Giá hiện hành của các sản phẩm; id không tồn tại sẽ không có trong map kết quả.
+     * cn dùng cho phần phải đọc DB (có thể là kết nối đang trong transaction chốt đơn).
+     */
+    public Map<Long, BigDecimal> getPrices(Connection cn, Collection<Long> productIds) throws SQLException {
+        if (!enabled) return orderDAO.findUnitPrices(cn, productIds);
+
+        Map<Long, BigDecimal> result = new HashMap<>();
+        List<Long> misses = new ArrayList<>();
+        long now = System.nanoTime();
+        for (Long id : productIds) {
+            if (result.containsKey(id)) continue;
+            Entry e = prices.get(id);
+            if (e != null && now - e.loadedAt < ttlNanos) result.put(id, e.price);
+            else misses.add(id);
+        }
+        if (misses.isEmpty()) return result;
+
+        long v = version.get();
+        Map<Long, BigDecimal> loaded = orderDAO.findUnitPrices(cn, misses);
+        result.putAll(loaded);
+        synchronized (this) { // cùng khoá với invalidate: kiểm tra + ghi là một bước
+            if (version.get() == v) { // không có invalidate nào xen giữa → an toàn để lưu
+                long loadedAt = System.nanoTime();
+                loaded.forEach((id, price) -> prices.put(id, new Entry(price, loadedAt)));
+            }
+        }
+        return result;
+    }
+
+    /** Bỏ giá đã cache của một sản phẩm (gọi sau khi UPDATE/DELETE products thành công). */
+    public synchronized void invalidate(long productId) {
+        version.incrementAndGet();
+        prices.remove(productId);
+    }
+
+    /** Bỏ toàn bộ cache (vd: cập nhật giá hàng loạt bằng SQL). */
+    public synchronized void invalidateAll() {
+        version.incrementAndGet();
+        prices.clear();
+    }
+
+    public int size() { return prices.size(); }
+
+    private static final class Entry {
+        final BigDecimal price;
+        final long loadedAt; // System.nanoTime() lúc nạp
+        Entry(BigDecimal price, long loadedAt) { this.price = price; this.loadedAt = loadedAt; }
+    }
+}
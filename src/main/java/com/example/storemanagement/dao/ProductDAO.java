@@ -2,7 +2,8 @@ package com.example.storemanagement.dao; // Package DAO: nơi chứa lớp truy
 
 /*
  * ProductDAO – CRUD sản phẩm + tra cứu tổng quan tồn kho (view v_inventory_overview)
- * và thao tác nhập/xuất kho qua bảng stock_moves (trigger sẽ cập nhật inventory).
+ * và thao tác nhập/xuất kho qua bảng stock_moves (trigger sẽ cập nhật inventory; hoặc ProductDAO tự cập nhật
+ * khi inventory.posting=app).
  *
  * (Phiên bản này CHỈ bổ sung chú thích giải thích từng dòng; KHÔNG thay đổi logic/code.)
  */
@@ -17,13 +18,39 @@ import java.sql.Timestamp; // Kiểu thời gian JDBC (map sang LocalDateTime)
 import java.sql.Types; // Hằng số JDBC cho kiểu dữ liệu (dùng setNull)
 import java.time.LocalDateTime; // Thời gian hiện đại của Java
 import java.util.ArrayList; // Danh sách động
+import java.util.Collection; // Tập id đầu vào
+import java.util.Collections; // nCopies cho VALUES nhiều dòng
+import java.util.HashMap; // Map kết quả
+import java.util.LinkedHashSet; // Bỏ trùng, giữ thứ tự
 import java.util.List; // Interface list
+import java.util.Map; // Map product_id → số lượng
 import java.util.Optional; // Gói kết quả có/không có
+import java.util.TreeMap; // Gộp delta tồn theo khoá có thứ tự
 
 import com.example.storemanagement.model.Product; // Model sản phẩm (POJO)
 
 public class ProductDAO { // Lớp DAO làm việc với bảng products và view tồn kho
 
+    // Tìm theo từ khoá qua chỉ mục trong bộ nhớ (SKU prefix + trigram tên) thay cho LIKE '%kw%' quét toàn bảng
+    private static final boolean USE_SEARCH_INDEX = Boolean.parseBoolean(
+            DBConnection.getInstance().getProperty("products.searchIndex", "true"));
+    private static final int INDEX_IN_LIMIT = 5000; // Quá số id này thì lọc bằng LIKE (IN quá dài không còn lợi)
+
+    // Nơi cập nhật inventory khi ghi stock_moves (khoá inventory.posting): trigger (mặc định, trg_moves_after_insert)
+    // hoặc app (ProductDAO gộp delta + cập nhật nhiều dòng; chạy schema_app_inventory.sql để bỏ trigger)
+    public enum PostingMode { TRIGGER, APP }
+
+    private static final PostingMode POSTING =
+            DBConnection.getInstance().getEnumProperty("inventory.posting", PostingMode.TRIGGER);
+
+    public static PostingMode postingMode() { // OrderService: chế độ app phải tự ghi xuất kho cho order_items
+        return POSTING;
+    }
+
+    // Delta có dấu của một dòng stock_moves trong SQL – cùng quy ước với trg_moves_after_insert
+    // (dùng chung cho ảnh chụp tồn và đối soát sổ cái)
+    static final String MOVE_DELTA = "CASE move_type WHEN 'EXPORT' THEN -quantity ELSE quantity END";
+
     // ===================== CRUD sản phẩm =====================
     public long insert(Product p) throws SQLException { // Thêm sản phẩm, trả về ID tự tăng
         String sql = "INSERT INTO products(supplier_id, sku, name, unit, unit_price, unit_cost, active) " +
@@ -43,8 +70,12 @@ public class ProductDAO { // Lớp DAO làm việc với bảng products và vie
             ps.setBoolean(7, p.isActive()); // trạng thái hoạt động
             ps.executeUpdate(); // Thực thi INSERT
             try (ResultSet rs = ps.getGeneratedKeys()) { // Lấy khóa tự tăng (id)
-                if (rs.next())
-                    return rs.getLong(1); // Trả về ID nếu có
+                if (rs.next()) {
+                    long id = rs.getLong(1);
+                    ProductSearchIndex.getInstance().put(id, p.getSku(), p.getName(), System.currentTimeMillis()); // Cập nhật chỉ mục tìm kiếm
+                    SkuLookup.getInstance().refreshAsync(); // SKU mới quét được ở quầy sau khi snapshot dựng lại
+                    return id; // Trả về ID nếu có
+                }
             }
         }
         return -1L; // Nếu không lấy được id, trả về -1
@@ -66,7 +97,13 @@ public class ProductDAO { // Lớp DAO làm việc với bảng products và vie
             ps.setBigDecimal(6, p.getUnitCost() != null ? p.getUnitCost() : BigDecimal.ZERO); // unit_cost
             ps.setBoolean(7, p.isActive()); // active
             ps.setLong(8, p.getId()); // where id = ?
-            return ps.executeUpdate() > 0; // true nếu có ít nhất 1 dòng bị ảnh hưởng
+            boolean updated = ps.executeUpdate() > 0; // true nếu có ít nhất 1 dòng bị ảnh hưởng
+            if (updated) {
+                PriceCache.getInstance().invalidate(p.getId()); // Giá có thể đã đổi → bỏ giá cũ khỏi cache chốt đơn
+                ProductSearchIndex.getInstance().put(p.getId(), p.getSku(), p.getName(), 0); // SKU/tên có thể đã đổi
+                SkuLookup.getInstance().refreshAsync(); // SKU/tên/giá/active ở quầy
+            }
+            return updated;
         }
     }
 
@@ -75,7 +112,13 @@ public class ProductDAO { // Lớp DAO làm việc với bảng products và vie
         try (Connection cn = DBConnection.getInstance().getConnection();
                 PreparedStatement ps = cn.prepareStatement(sql)) {
             ps.setLong(1, id); // id cần xóa
-            return ps.executeUpdate() > 0; // Trả về true nếu xóa thành công
+            boolean deleted = ps.executeUpdate() > 0; // Trả về true nếu xóa thành công
+            if (deleted) {
+                PriceCache.getInstance().invalidate(id); // Sản phẩm không còn → bỏ khỏi cache giá
+                ProductSearchIndex.getInstance().remove(id); // và khỏi chỉ mục tìm kiếm
+                SkuLookup.getInstance().refreshAsync(); // và khỏi bảng tra SKU ở quầy
+            }
+            return deleted;
         }
     }
 
@@ -108,6 +151,12 @@ public class ProductDAO { // Lớp DAO làm việc với bảng products và vie
                                                                                                                            // lệnh
         String where = ""; // Phần WHERE tùy chọn
         boolean hasKw = keyword != null && !keyword.isBlank(); // Kiểm tra có từ khóa không
+        if (hasKw && USE_SEARCH_INDEX) { // Chỉ mục trả về id đã sắp xếp → chỉ đọc đúng các dòng của trang
+            List<Long> ids = ProductSearchIndex.getInstance().search(keyword, offset + pageSize);
+            if (ids.size() <= offset)
+                return new ArrayList<>(); // Hết kết quả
+            return findByIdsOrdered(ids.subList(offset, ids.size()));
+        }
         if (hasKw)
             where = "WHERE (name LIKE ? OR sku LIKE ?) "; // Lọc theo name hoặc sku
         String tail = "ORDER BY created_at DESC LIMIT ? OFFSET ?"; // Sắp xếp mới nhất, phân trang
@@ -131,48 +180,262 @@ public class ProductDAO { // Lớp DAO làm việc với bảng products và vie
         return list; // Trả về danh sách sản phẩm
     }
 
+    /** Các cột upsertBatch có thể ghi đè khi SKU đã tồn tại. */
+    public static final List<String> UPSERT_COLUMNS = List.of("supplier_id", "name", "unit", "unit_price", "unit_cost", "active");
+
+    /**
+     * Upsert nhiều sản phẩm theo SKU (UNIQUE) bằng JDBC batch: SKU mới → INSERT, SKU đã có → cập nhật mọi cột.
+     * Chạy trên kết nối/transaction do tầng service quản lý; tầng đó làm mới các cache sản phẩm SAU KHI commit
+     * (làm mới trong transaction → lần nạp lại xen giữa đọc thiếu các dòng chưa commit).
+     */
+    public void upsertBatch(Connection cn, List<Product> products) throws SQLException {
+        upsertBatch(cn, products, UPSERT_COLUMNS);
+    }
+
+    /**
+     * Như trên nhưng SKU đã có chỉ cập nhật các cột trong updateColumns (vd: các cột có trong header CSV),
+     * cột không được cung cấp giữ nguyên giá trị trong DB thay vì bị ghi đè bằng mặc định.
+     */
+    public void upsertBatch(Connection cn, List<Product> products, Collection<String> updateColumns) throws SQLException { // Nạp danh mục hàng loạt
+        if (products.isEmpty())
+            return;
+        StringBuilder set = new StringBuilder();
+        for (String c : UPSERT_COLUMNS)
+            if (updateColumns.contains(c))
+                set.append(set.length() == 0 ? "" : ", ").append(c).append("=VALUES(").append(c).append(')');
+        if (set.length() == 0)
+            set.append("sku=sku"); // không cột nào để cập nhật → giữ nguyên dòng cũ
+        String sql = "INSERT INTO products(supplier_id, sku, name, unit, unit_price, unit_cost, active) VALUES(?,?,?,?,?,?,?)"
+                + " ON DUPLICATE KEY UPDATE " + set;
+        try (PreparedStatement ps = cn.prepareStatement(sql)) {
+            for (Product p : products) {
+                if (p.getSupplierId() == null)
+                    ps.setNull(1, Types.BIGINT);
+                else
+                    ps.setLong(1, p.getSupplierId()); // supplier_id có thể null
+                ps.setString(2, p.getSku()); // sku (khoá upsert)
+                ps.setString(3, p.getName()); // name
+                ps.setString(4, p.getUnit()); // unit
+                ps.setBigDecimal(5, p.getUnitPrice() != null ? p.getUnitPrice() : BigDecimal.ZERO); // giá bán
+                ps.setBigDecimal(6, p.getUnitCost() != null ? p.getUnitCost() : BigDecimal.ZERO); // giá vốn
+                ps.setBoolean(7, p.isActive()); // active
+                ps.addBatch();
+            }
+            ps.executeBatch(); // rewriteBatchedStatements → một câu INSERT nhiều dòng
+        }
+    }
+
+    /** Đọc sản phẩm theo danh sách id (1 truy vấn IN), giữ nguyên thứ tự của ids. */
+    private List<Product> findByIdsOrdered(List<Long> ids) throws SQLException {
+        Map<Long, Product> byId = new HashMap<>();
+        String sql = "SELECT id, supplier_id, sku, name, unit, unit_price, unit_cost, active, created_at FROM products WHERE id IN ("
+                + OrderDAO.placeholders(ids.size()) + ")";
+        try (Connection cn = DBConnection.getInstance().getConnection();
+                PreparedStatement ps = cn.prepareStatement(sql)) {
+            for (int i = 0; i < ids.size(); i++)
+                ps.setLong(i + 1, ids.get(i));
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    Product p = map(rs);
+                    byId.put(p.getId(), p);
+                }
+            }
+        }
+        List<Product> list = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            Product p = byId.get(id);
+            if (p != null)
+                list.add(p); // Bỏ qua id vừa bị xoá ở nơi khác
+        }
+        return list;
+    }
+
+    /**
+     * Tạo dòng inventory (quantity = 0) ở mọi cửa hàng cho các SKU, bằng MỘT câu INSERT ... SELECT;
+     * dòng đã tồn tại được giữ nguyên (INSERT IGNORE trên PRIMARY KEY (store_id, product_id)).
+     */
+    public int fanOutInventory(Connection cn, Collection<String> skus) throws SQLException { // Thay cho INSERT ... SELECT
+                                                                                             // từng sản phẩm
+        if (skus.isEmpty())
+            return 0;
+        List<String> list = new ArrayList<>(new LinkedHashSet<>(skus));
+        String sql = "INSERT IGNORE INTO inventory(store_id, product_id, quantity) "
+                + "SELECT s.id, p.id, 0 FROM stores s JOIN products p ON p.sku IN (" + OrderDAO.placeholders(list.size()) + ")";
+        try (PreparedStatement ps = cn.prepareStatement(sql)) {
+            for (int i = 0; i < list.size(); i++)
+                ps.setString(i + 1, list.get(i));
+            return ps.executeUpdate(); // Số dòng inventory mới (InventoryMatrix do service nạp lại sau commit)
+        }
+    }
+
     // ===================== Tồn kho & Stock move =====================
 
     /**
-     * Nhập kho: ghi vào stock_moves (trigger sẽ cộng tồn kho tương ứng)
+     * Nhập kho: ghi vào stock_moves (trigger – hoặc ProductDAO ở chế độ inventory.posting=app – cộng tồn kho tương ứng)
      */
     public void importStock(long storeId, long productId, int quantity, String note) throws SQLException { // Ghi một
                                                                                                            // dòng
                                                                                                            // IMPORT vào
                                                                                                            // stock_moves
-        String sql = "INSERT INTO stock_moves(store_id, product_id, move_type, quantity, note) VALUES (?,?,?,?,?)"; // move_type
-                                                                                                                    // =
-                                                                                                                    // IMPORT
-        try (Connection cn = DBConnection.getInstance().getConnection();
-                PreparedStatement ps = cn.prepareStatement(sql)) {
-            ps.setLong(1, storeId); // cửa hàng
-            ps.setLong(2, productId); // sản phẩm
-            ps.setString(3, "IMPORT"); // kiểu di chuyển = IMPORT
-            ps.setInt(4, quantity); // số lượng nhập
-            ps.setString(5, note); // ghi chú
-            ps.executeUpdate(); // Triggers DB sẽ cập nhật bảng tồn kho
+        postInOwnTransaction(new StockMove(storeId, productId, "IMPORT", quantity, note)); // kiểu di chuyển = IMPORT
+    }
+
+    /**
+     * Ghi một dòng stock_moves trên kết nối do tầng service quản lý (tham gia transaction / thử lại của TxTemplate).
+     */
+    public void insertStockMove(Connection cn, long storeId, long productId, String moveType, int quantity, String note)
+            throws SQLException { // Dùng chung cho IMPORT / EXPORT
+        postStockMoves(cn, List.of(new StockMove(storeId, productId, moveType, quantity, note)));
+    }
+
+    /**
+     * Ghi nhiều dòng stock_moves cùng loại cho một cửa hàng bằng JDBC batch (rewriteBatchedStatements → INSERT nhiều dòng),
+     * chia mỗi CHUNK_SIZE dòng một lần gửi. Chạy trên kết nối/transaction do tầng service quản lý.
+     */
+    public void insertStockMoves(Connection cn, long storeId, String moveType, List<StockMoveLine> lines)
+            throws SQLException { // Nhập/xuất hàng loạt
+        List<StockMove> moves = new ArrayList<>(lines.size());
+        for (StockMoveLine l : lines)
+            moves.add(new StockMove(storeId, l.productId, moveType, l.quantity, l.note));
+        postStockMoves(cn, moves);
+    }
+
+    /**
+     * Ghi stock_moves và cập nhật tồn kho trên kết nối/transaction của người gọi.
+     * - trigger: chỉ INSERT stock_moves (batch); trg_moves_after_insert cập nhật inventory từng dòng.
+     * - app: gộp delta theo (store, product) rồi cập nhật inventory bằng vài câu nhiều dòng (có chặn âm kho),
+     *   sau đó INSERT stock_moves (batch) làm nhật ký – dùng kèm schema_app_inventory.sql (bỏ trigger).
+     */
+    public void postStockMoves(Connection cn, List<StockMove> moves) throws SQLException {
+        if (moves.isEmpty())
+            return;
+        if (POSTING == PostingMode.APP)
+            applyInventoryDeltas(cn, moves); // Chặn âm kho trước khi ghi nhật ký
+        String sql = "INSERT INTO stock_moves(store_id, product_id, move_type, quantity, note) VALUES (?,?,?,?,?)";
+        try (PreparedStatement ps = cn.prepareStatement(sql)) {
+            int n = 0;
+            for (StockMove m : moves) {
+                ps.setLong(1, m.storeId); // cửa hàng
+                ps.setLong(2, m.productId); // sản phẩm
+                ps.setString(3, m.moveType); // IMPORT / EXPORT / ADJUST
+                ps.setInt(4, m.quantity); // số lượng
+                ps.setString(5, m.note); // ghi chú (có thể null)
+                ps.addBatch();
+                if (++n % OrderDAO.CHUNK_SIZE == 0)
+                    ps.executeBatch(); // Gửi từng chunk để giới hạn kích thước gói tin
+            }
+            if (n % OrderDAO.CHUNK_SIZE != 0)
+                ps.executeBatch();
+        }
+    }
+
+    /**
+     * Chế độ app: cộng delta đã gộp theo (store, product) vào inventory, khoá dòng theo thứ tự khoá tăng dần.
+     * Delta dương → 1 câu INSERT ... ON DUPLICATE KEY UPDATE nhiều dòng / chunk (tạo dòng nếu chưa có);
+     * delta âm → 1 câu UPDATE JOIN (bảng delta dẫn xuất) / chunk với điều kiện quantity >= số trừ;
+     * số dòng khớp ít hơn số delta = có sản phẩm sẽ âm kho → SQLException 45000 (giống trigger), người gọi rollback.
+     */
+    private void applyInventoryDeltas(Connection cn, List<StockMove> moves) throws SQLException {
+        TreeMap<InventoryKey, Integer> deltas = new TreeMap<>();
+        for (StockMove m : moves)
+            deltas.merge(new InventoryKey(m.storeId, m.productId), m.delta(), Integer::sum);
+        List<Map.Entry<InventoryKey, Integer>> plus = new ArrayList<>();
+        List<Map.Entry<InventoryKey, Integer>> minus = new ArrayList<>();
+        for (Map.Entry<InventoryKey, Integer> e : deltas.entrySet()) {
+            if (e.getValue() > 0)
+                plus.add(e);
+            else if (e.getValue() < 0)
+                minus.add(e);
+        }
+
+        for (int from = 0; from < plus.size(); from += OrderDAO.CHUNK_SIZE) {
+            List<Map.Entry<InventoryKey, Integer>> chunk = plus.subList(from, Math.min(plus.size(), from + OrderDAO.CHUNK_SIZE));
+            String sql = "INSERT INTO inventory(store_id, product_id, quantity) VALUES "
+                    + String.join(",", Collections.nCopies(chunk.size(), "(?,?,?)"))
+                    + " ON DUPLICATE KEY UPDATE quantity = quantity + VALUES(quantity), updated_at = NOW()";
+            try (PreparedStatement ps = cn.prepareStatement(sql)) {
+                int i = 1;
+                for (Map.Entry<InventoryKey, Integer> e : chunk) {
+                    ps.setLong(i++, e.getKey().storeId()); // cửa hàng
+                    ps.setLong(i++, e.getKey().productId()); // sản phẩm
+                    ps.setInt(i++, e.getValue()); // lượng cộng thêm
+                }
+                ps.executeUpdate();
+            }
+        }
+
+        for (int from = 0; from < minus.size(); from += OrderDAO.CHUNK_SIZE) {
+            List<Map.Entry<InventoryKey, Integer>> chunk = minus.subList(from, Math.min(minus.size(), from + OrderDAO.CHUNK_SIZE));
+            String sql = "UPDATE inventory i JOIN ("
+                    + "SELECT ? AS store_id, ? AS product_id, ? AS qty"
+                    + " UNION ALL SELECT ?,?,?".repeat(chunk.size() - 1)
+                    + ") d ON i.store_id = d.store_id AND i.product_id = d.product_id"
+                    + " SET i.quantity = i.quantity - d.qty, i.updated_at = NOW() WHERE i.quantity >= d.qty";
+            try (PreparedStatement ps = cn.prepareStatement(sql)) {
+                int i = 1;
+                for (Map.Entry<InventoryKey, Integer> e : chunk) {
+                    ps.setLong(i++, e.getKey().storeId()); // cửa hàng
+                    ps.setLong(i++, e.getKey().productId()); // sản phẩm
+                    ps.setInt(i++, -e.getValue()); // lượng trừ (dương)
+                }
+                if (ps.executeUpdate() < chunk.size()) // Connector/J trả số dòng khớp WHERE (found rows)
+                    throw new SQLException("Stock would become negative – operation canceled", "45000");
+            }
+        }
+    }
+
+    /** Ghi một stock move trong transaction riêng (chế độ app gồm nhiều câu lệnh → phải nguyên tử). */
+    private void postInOwnTransaction(StockMove move) throws SQLException {
+        try (Connection cn = DBConnection.getInstance().getConnection()) {
+            boolean oldAuto = cn.getAutoCommit();
+            cn.setAutoCommit(false);
+            try {
+                postStockMoves(cn, List.of(move));
+                cn.commit();
+            } catch (SQLException | RuntimeException ex) {
+                try { cn.rollback(); } catch (SQLException rb) { ex.addSuppressed(rb); }
+                throw ex;
+            } finally {
+                cn.setAutoCommit(oldAuto);
+            }
         }
     }
 
     /**
-     * Xuất kho: ghi vào stock_moves (trigger sẽ trừ tồn kho; nếu âm → trigger chặn)
+     * Xuất kho: ghi vào stock_moves (trigger / chế độ app sẽ trừ tồn kho; nếu âm → chặn, SQLState 45000)
      */
     public void exportStock(long storeId, long productId, int quantity, String note) throws SQLException { // Ghi một
                                                                                                            // dòng
                                                                                                            // EXPORT vào
                                                                                                            // stock_moves
-        String sql = "INSERT INTO stock_moves(store_id, product_id, move_type, quantity, note) VALUES (?,?,?,?,?)"; // move_type
-                                                                                                                    // =
-                                                                                                                    // EXPORT
-        try (Connection cn = DBConnection.getInstance().getConnection();
-                PreparedStatement ps = cn.prepareStatement(sql)) {
-            ps.setLong(1, storeId); // cửa hàng
-            ps.setLong(2, productId); // sản phẩm
-            ps.setString(3, "EXPORT"); // kiểu di chuyển = EXPORT
-            ps.setInt(4, quantity); // số lượng xuất
-            ps.setString(5, note); // ghi chú
-            ps.executeUpdate(); // Triggers DB sẽ trừ tồn kho; nếu âm → báo lỗi phía DB
+        postInOwnTransaction(new StockMove(storeId, productId, "EXPORT", quantity, note)); // kiểu = EXPORT
+    }
+
+    /**
+     * Tồn kho hiện tại của nhiều sản phẩm tại một cửa hàng (truy vấn IN theo chunk).
+     * Sản phẩm chưa có dòng inventory → không có trong map (coi như tồn = 0).
+     */
+    public Map<Long, Integer> getStockLevels(long storeId, Collection<Long> productIds) throws SQLException { // Đọc tồn
+                                                                                                            // theo lô
+        Map<Long, Integer> levels = new HashMap<>(); // product_id → quantity
+        List<Long> ids = new ArrayList<>(new LinkedHashSet<>(productIds)); // Bỏ trùng
+        try (Connection cn = DBConnection.getInstance().getConnection()) {
+            for (int from = 0; from < ids.size(); from += OrderDAO.CHUNK_SIZE) { // Giới hạn số tham số mỗi câu
+                List<Long> chunk = ids.subList(from, Math.min(ids.size(), from + OrderDAO.CHUNK_SIZE));
+                String sql = "SELECT product_id, quantity FROM inventory WHERE store_id=? AND product_id IN ("
+                        + OrderDAO.placeholders(chunk.size()) + ")";
+                try (PreparedStatement ps = cn.prepareStatement(sql)) {
+                    ps.setLong(1, storeId); // cửa hàng
+                    for (int i = 0; i < chunk.size(); i++)
+                        ps.setLong(i + 2, chunk.get(i)); // danh sách sản phẩm
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next())
+                            levels.put(rs.getLong(1), rs.getInt(2));
+                    }
+                }
+            }
         }
+        return levels; // Trả về map tồn kho
     }
 
     /**
@@ -204,10 +467,18 @@ public class ProductDAO { // Lớp DAO làm việc với bảng products và vie
             params.add(storeId);
         } // Lọc theo cửa hàng nếu có
         if (keyword != null && !keyword.isBlank()) { // Lọc theo tên hoặc SKU nếu có từ khóa
-            sb.append("AND (product_name LIKE ? OR sku LIKE ?) ");
-            String kw = "%" + keyword.trim() + "%"; // wildcard cho LIKE
-            params.add(kw);
-            params.add(kw);
+            List<Long> ids = USE_SEARCH_INDEX ? ProductSearchIndex.getInstance().search(keyword, INDEX_IN_LIMIT + 1) : null;
+            if (ids != null && ids.isEmpty())
+                return new ArrayList<>(); // Không sản phẩm nào khớp
+            if (ids != null && ids.size() <= INDEX_IN_LIMIT) { // Lọc theo id từ chỉ mục (dùng PRIMARY KEY)
+                sb.append("AND p.id IN (").append(OrderDAO.placeholders(ids.size())).append(") ");
+                params.addAll(ids);
+            } else {
+                sb.append("AND (p.name LIKE ? OR p.sku LIKE ?) "); // Alias product_name không dùng được trong WHERE
+                String kw = "%" + keyword.trim() + "%"; // wildcard cho LIKE
+                params.add(kw);
+                params.add(kw);
+            }
         }
 
         if (supplierId != null) {
@@ -263,6 +534,49 @@ public class ProductDAO { // Lớp DAO làm việc với bảng products và vie
         return p; // Trả về Product đã map xong
     }
 
+    // DTO một dòng nhập/xuất hàng loạt (receiveStock)
+    public static class StockMoveLine {
+        public long productId;
+        public int quantity;
+        public String note;
+
+        public StockMoveLine(long productId, int quantity, String note) {
+            this.productId = productId;
+            this.quantity = quantity;
+            this.note = note;
+        }
+    }
+
+    // Một dòng stock_moves đầy đủ (postStockMoves)
+    public static class StockMove {
+        public long storeId;
+        public long productId;
+        public String moveType; // IMPORT / EXPORT / ADJUST
+        public int quantity;
+        public String note;
+
+        public StockMove(long storeId, long productId, String moveType, int quantity, String note) {
+            this.storeId = storeId;
+            this.productId = productId;
+            this.moveType = moveType;
+            this.quantity = quantity;
+            this.note = note;
+        }
+
+        int delta() { // Quy đổi giống trg_moves_after_insert
+            return "EXPORT".equals(moveType) ? -quantity : quantity;
+        }
+    }
+
+    // Khoá (store_id, product_id) – sắp xếp tăng dần để mọi transaction khoá dòng inventory cùng thứ tự
+    private record InventoryKey(long storeId, long productId) implements Comparable<InventoryKey> {
+        @Override
+        public int compareTo(InventoryKey o) {
+            int c = Long.compare(storeId, o.storeId);
+            return c != 0 ? c : Long.compare(productId, o.productId);
+        }
+    }
+
     // DTO nhỏ cho view tồn kho – để tránh tạo model riêng
     public static class InventoryOverview {
         public long storeId;
@@ -0,0 +1,263 @@
+package com.example.storemanagement.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * ProductSearchIndex – chỉ mục tìm kiếm sản phẩm trong bộ nhớ, thay cho LIKE '%kw%' (luôn quét toàn bảng).
+ *
+ * - Tên + SKU: inverted index trigram (3 ký tự liên tiếp) → bản ghi; từ khoá ≥ 3 ký tự duyệt posting ngắn nhất
+ *   rồi kiểm tra lại contains() → đúng ngữ nghĩa LIKE '%kw%'.
+ * - Từ khoá 1–2 ký tự (chưa đủ trigram): trộn các posting của trigram chứa nó (1 ký tự: ở vị trí bất kỳ;
+ *   2 ký tự: đầu hoặc cuối trigram) – mọi vị trí xuất hiện đều nằm trong một trigram như vậy nên vẫn như LIKE.
+ * - Posting đã xếp sẵn mới nhất trước → duyệt / trộn dừng ngay khi đủ limit, không sắp xếp kết quả.
+ * - SKU không có cấu trúc tiền tố riêng: LIKE '%kw%' khớp ở giữa SKU nên tiền tố không trả lời thay được
+ *   trigram, và SKU đã nằm trong nội dung lập chỉ mục trigram.
+ * - Chuẩn hoá giống collation utf8mb4_unicode_ci của cột: chữ thường, bỏ dấu (NFD rồi bỏ \p{M}, đ → d),
+ *   nên "ca phe" khớp "Cà phê" ở cả tên đã lập chỉ mục lẫn từ khoá.
+ * - Cập nhật tăng dần: ProductDAO.insert/update/delete gọi put/remove; nhập hàng loạt (CatalogImportService)
+ *   đánh dấu cần nạp lại sau khi commit. Thay đổi từ instance khác được thấy sau tối đa products.searchIndexTtlMs
+ *   (nạp lại toàn bộ).
+ *
+ * Kết quả là danh sách id theo created_at DESC, id DESC (cùng thứ tự màn hình tìm kiếm cũ).
+ */
+public final class ProductSearchIndex {
+
+    /** Thứ tự kết quả: mới nhất trước (khai báo trước INSTANCE: State dựng trong constructor cần nó). */
+    private static final Comparator<Doc> NEWEST_FIRST =
+            Comparator.comparingLong((Doc d) -> d.createdAt).reversed().thenComparing(Comparator.comparingLong((Doc d) -> d.id).reversed());
+
+    private static final ProductSearchIndex INSTANCE = new ProductSearchIndex(
+            DBConnection.getInstance().getLongProperty("products.searchIndexTtlMs", 300000));
+
+    public static ProductSearchIndex getInstance() { return INSTANCE; }
+
+    /** Ngăn cách tên và SKU trong nội dung chỉ mục – không xuất hiện trong từ khoá nên không khớp vắt qua hai trường. */
+    private static final char SEP = '\u0001';
+
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+
+    private final long ttlNanos;
+    private volatile State state = new State(); // nạp lại = dựng State mới rồi thay cả cụm (tìm kiếm không thấy trạng thái dở)
+    private volatile long loadedAt; // System.nanoTime() lần nạp toàn bộ gần nhất; 0 = chưa nạp / cần nạp lại
+
+    ProductSearchIndex(long ttlMs) {
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMs);
+    }
+
+    /**
+     * id sản phẩm khớp từ khoá, mới nhất trước, tối đa limit phần tử (limit ≤ 0 = không giới hạn).
+     */
+    public List<Long> search(String keyword, int limit) throws SQLException {
+        ensureLoaded();
+        State st = state;
+        String kw = normalize(keyword);
+        if (kw.isEmpty()) return List.of();
+        int max = limit <= 0 ? Integer.MAX_VALUE : limit;
+        if (kw.length() < 3) {
+            Set<String> keys = st.byShort.get(kw);
+            if (keys == null) return List.of();
+            List<Posting> postings = new ArrayList<>(keys.size());
+            for (String g : keys) {
+                Posting p = st.trigrams.get(g);
+                if (p != null) postings.add(p); // khoá vừa đăng ký, posting chưa kịp vào map
+            }
+            return merge(postings, kw, max);
+        }
+        Posting smallest = null;
+        for (int i = 0; i + 3 <= kw.length(); i++) {
+            Posting posting = st.trigrams.get(kw.substring(i, i + 3));
+            if (posting == null) return List.of(); // có trigram không xuất hiện ở đâu → không khớp
+            if (smallest == null || posting.size < smallest.size) smallest = posting;
+        }
+        List<Long> ids = new ArrayList<>(Math.min(max, 64));
+        for (Doc d : smallest.docs) { // đã theo thứ tự mới nhất trước → đủ limit là dừng
+            if (!d.text.contains(kw)) continue;
+            ids.add(d.id);
+            if (ids.size() >= max) break;
+        }
+        return ids;
+    }
+
+    /** Thêm / cập nhật một sản phẩm (gọi sau khi INSERT/UPDATE thành công); createdAtMillis ≤ 0 = giữ giá trị cũ. */
+    public void put(long id, String sku, String name, long createdAtMillis) {
+        if (loadedAt == 0) return; // chưa nạp → lần nạp đầu sẽ đọc cả bản ghi này
+        synchronized (this) {
+            State st = state;
+            Doc old = st.docs.get(id);
+            if (createdAtMillis <= 0) createdAtMillis = old != null ? old.createdAt : System.currentTimeMillis();
+            st.remove(id);
+            st.add(new Doc(id, normalize(name) + SEP + normalize(sku), createdAtMillis));
+        }
+    }
+
+    /** Bỏ một sản phẩm khỏi chỉ mục (gọi sau khi DELETE thành công). */
+    public synchronized void remove(long id) {
+        state.remove(id);
+    }
+
+    /** Đánh dấu cần nạp lại toàn bộ (sau khi ghi hàng loạt). */
+    public void invalidate() {
+        loadedAt = 0;
+    }
+
+    public int size() { return state.docs.size(); }
+
+    private void ensureLoaded() throws SQLException {
+        long at = loadedAt;
+        if (at != 0 && System.nanoTime() - at < ttlNanos) return;
+        synchronized (this) {
+            at = loadedAt;
+            if (at != 0 && System.nanoTime() - at < ttlNanos) return;
+            State fresh = new State();
+            try (Connection cn = DBConnection.getInstance().getConnection();
+                 PreparedStatement ps = cn.prepareStatement("SELECT id, sku, name, created_at FROM products")) {
+                ps.setFetchSize(Integer.MIN_VALUE); // MySQL: đọc dạng stream, không giữ cả bảng trong driver
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        long id = rs.getLong(1);
+                        Timestamp ts = rs.getTimestamp(4);
+                        fresh.add(new Doc(id, normalize(rs.getString(3)) + SEP + normalize(rs.getString(2)),
+                                ts == null ? 0 : ts.getTime()));
+                    }
+                }
+            }
+            install(fresh);
+        }
+    }
+
+    /** Coi chỉ mục rỗng là đã nạp (không đọc DB); test dựng dữ liệu qua put(). */
+    synchronized void loadEmpty() {
+        install(new State());
+    }
+
+    private void install(State fresh) {
+        state = fresh;
+        long now = System.nanoTime();
+        loadedAt = now == 0 ? 1 : now;
+    }
+
+    /** Trộn k posting (cùng thứ tự mới nhất trước) bằng heap, bỏ bản ghi lặp, dừng khi đủ max. */
+    private static List<Long> merge(List<Posting> postings, String kw, int max) {
+        PriorityQueue<Cursor> heap = new PriorityQueue<>(Math.max(1, postings.size()),
+                (a, b) -> NEWEST_FIRST.compare(a.head, b.head));
+        for (Posting p : postings) {
+            Cursor c = new Cursor(p.docs.iterator());
+            if (c.advance()) heap.add(c);
+        }
+        List<Long> ids = new ArrayList<>(Math.min(max, 64));
+        long last = Long.MIN_VALUE;
+        while (!heap.isEmpty() && ids.size() < max) {
+            Cursor c = heap.poll();
+            Doc d = c.head;
+            if (c.advance()) heap.add(c);
+            if (d.id == last) continue; // cùng bản ghi nằm trong nhiều posting → ra liền nhau
+            last = d.id;
+            if (d.text.contains(kw)) ids.add(d.id);
+        }
+        return ids;
+    }
+
+    private static List<String> grams(String text) {
+        List<String> out = new ArrayList<>(Math.max(0, text.length() - 2));
+        for (int i = 0; i + 3 <= text.length(); i++) out.add(text.substring(i, i + 3));
+        return out;
+    }
+
+    /** Chữ thường + bỏ dấu; package-private để test so với ngữ nghĩa LIKE. */
+    static String normalize(String s) {
+        if (s == null) return "";
+        String t = s.trim().toLowerCase(Locale.ROOT);
+        if (isAscii(t)) return t; // đường nhanh: SKU, tên không dấu
+        t = Normalizer.normalize(t, Normalizer.Form.NFD);
+        return MARKS.matcher(t).replaceAll("").replace('đ', 'd');
+    }
+
+    private static boolean isAscii(String s) {
+        for (int i = 0; i < s.length(); i++)
+            if (s.charAt(i) >= 0x80) return false;
+        return true;
+    }
+
+    /** Toàn bộ cấu trúc chỉ mục; ghi dưới khoá của ProductSearchIndex, đọc không khoá. */
+    private static final class State {
+        final ConcurrentHashMap<Long, Doc> docs = new ConcurrentHashMap<>();
+        final ConcurrentHashMap<String, Posting> trigrams = new ConcurrentHashMap<>();
+        // từ khoá 1–2 ký tự → các trigram chứa nó (1 ký tự: mọi vị trí; 2 ký tự: đầu hoặc cuối trigram)
+        final ConcurrentHashMap<String, Set<String>> byShort = new ConcurrentHashMap<>();
+
+        void add(Doc d) {
+            docs.put(d.id, d);
+            for (String g : grams(d.text)) trigrams.computeIfAbsent(g, this::newPosting).add(d);
+        }
+
+        private Posting newPosting(String g) {
+            for (String k : new String[] { g.substring(0, 1), g.substring(1, 2), g.substring(2, 3),
+                    g.substring(0, 2), g.substring(1, 3) })
+                byShort.computeIfAbsent(k, x -> ConcurrentHashMap.newKeySet()).add(g);
+            return new Posting();
+        }
+
+        void remove(long id) {
+            Doc old = docs.remove(id);
+            if (old == null) return;
+            for (String g : grams(old.text)) {
+                Posting posting = trigrams.get(g);
+                if (posting != null) posting.remove(old);
+            }
+        }
+    }
+
+    /** Bản ghi chứa một trigram, mới nhất trước. */
+    private static final class Posting {
+        final ConcurrentSkipListSet<Doc> docs = new ConcurrentSkipListSet<>(NEWEST_FIRST);
+        volatile int size; // size() của skip list là O(n); chỉ ghi dưới khoá
+
+        void add(Doc d) {
+            if (docs.add(d)) size++;
+        }
+
+        void remove(Doc d) {
+            if (docs.remove(d)) size--;
+        }
+    }
+
+    /** Vị trí duyệt trong một posting khi trộn. */
+    private static final class Cursor {
+        final Iterator<Doc> it;
+        Doc head;
+
+        Cursor(Iterator<Doc> it) { this.it = it; }
+
+        boolean advance() {
+            if (!it.hasNext()) return false;
+            head = it.next();
+            return true;
+        }
+    }
+
+    private static final class Doc {
+        final long id;
+        final String text;      // tên + SEP + sku, đã chuẩn hoá – nội dung để khớp contains()
+        final long createdAt;   // epoch millis
+
+        Doc(long id, String text, long createdAt) {
+            this.id = id; this.text = text; this.createdAt = createdAt;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.storemanagement.dao;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ReorderSuggestionDAO – đề xuất lượng đặt hàng lại cho một cửa hàng, tính hoàn toàn trong SQL.
+ *
+ * Tốc độ bán (đơn vị/ngày) = SUM(order_items.quantity) của đơn CONFIRMED/PAID trong cửa sổ windowDays
+ * (đọc theo idx_orders_store_created rồi idx_items_order) / windowDays.
+ * Mức cần có = CEIL(tốc độ × (lead time nhà cung cấp + coverageDays)); đề xuất = mức cần có − tồn hiện tại.
+ * Chỉ sản phẩm đang bán và cần đặt (đề xuất > 0) được trả về → kết quả nhỏ dù cửa hàng có hàng chục nghìn SKU.
+ */
+public class ReorderSuggestionDAO {
+
+    /** Một dòng đề xuất (cửa hàng, sản phẩm). supplierId = null nếu sản phẩm chưa gán nhà cung cấp. */
+    public static class Suggestion {
+        public long storeId;
+        public long productId;
+        public String sku;
+        public String productName;
+        public Long supplierId;
+        public String supplierName;
+        public int leadTimeDays;
+        public int soldInWindow;
+        public double dailyVelocity;
+        public int onHand;
+        public int targetQty;
+        public int suggestedQty;
+        public BigDecimal unitCost;
+    }
+
+    public List<Suggestion> suggestForStore(Connection cn, long storeId, LocalDateTime since, int windowDays,
+                                            int coverageDays, int defaultLeadDays) throws SQLException {
+        String sql = "SELECT x.*, x.target - x.on_hand AS suggested FROM ("
+                + "SELECT p.id, p.sku, p.name, p.supplier_id, s.name AS supplier_name, p.unit_cost, v.sold,"
+                + " COALESCE(s.lead_time_days, ?) AS lead_days, COALESCE(i.quantity, 0) AS on_hand,"
+                + " CEIL(v.sold / ? * (COALESCE(s.lead_time_days, ?) + ?)) AS target"
+                + " FROM (SELECT oi.product_id, SUM(oi.quantity) AS sold FROM orders o"
+                + " JOIN order_items oi ON oi.order_id = o.id"
+                + " WHERE o.store_id = ? AND o.created_at >= ? AND o.status IN ('CONFIRMED','PAID')"
+                + " GROUP BY oi.product_id) v"
+                + " JOIN products p ON p.id = v.product_id AND p.active = 1"
+                + " LEFT JOIN suppliers s ON s.id = p.supplier_id"
+                + " LEFT JOIN inventory i ON i.store_id = ? AND i.product_id = v.product_id"
+                + ") x WHERE x.target > x.on_hand";
+        List<Suggestion> out = new ArrayList<>();
+        try (PreparedStatement ps = cn.prepareStatement(sql)) {
+            int i = 1;
+            ps.setInt(i++, defaultLeadDays);
+            ps.setInt(i++, windowDays);
+            ps.setInt(i++, defaultLeadDays);
+            ps.setInt(i++, coverageDays);
+            ps.setLong(i++, storeId);
+            ps.setTimestamp(i++, Timestamp.valueOf(since));
+            ps.setLong(i, storeId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    Suggestion s = new Suggestion();
+                    s.storeId = storeId;
+                    s.productId = rs.getLong("id");
+                    s.sku = rs.getString("sku");
+                    s.productName = rs.getString("name");
+                    long sup = rs.getLong("supplier_id");
+                    s.supplierId = rs.wasNull() ? null : sup;
+                    s.supplierName = rs.getString("supplier_name");
+                    s.unitCost = rs.getBigDecimal("unit_cost");
+                    s.soldInWindow = rs.getInt("sold");
+                    s.dailyVelocity = (double) s.soldInWindow / windowDays;
+                    s.leadTimeDays = rs.getInt("lead_days");
+                    s.onHand = rs.getInt("on_hand");
+                    s.targetQty = rs.getInt("target");
+                    s.suggestedQty = rs.getInt("suggested");
+                    out.add(s);
+                }
+            }
+        }
+        return out;
+    }
+}
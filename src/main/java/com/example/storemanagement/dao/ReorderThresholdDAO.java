@@ -0,0 +1,34 @@
+package com.example.storemanagement.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * ReorderThresholdDAO – ngưỡng đặt hàng lại theo (store, product) trong reorder_thresholds.
+ * Tồn ≤ min_qty → LowStockMonitor phát sự kiện sắp hết hàng. Không có dòng = không theo dõi.
+ */
+public class ReorderThresholdDAO {
+
+    /** Đặt / đổi ngưỡng của một sản phẩm tại cửa hàng. */
+    public void upsert(Connection cn, long storeId, long productId, int minQty) throws SQLException {
+        try (PreparedStatement ps = cn.prepareStatement(
+                "INSERT INTO reorder_thresholds(store_id, product_id, min_qty) VALUES (?,?,?)"
+                        + " ON DUPLICATE KEY UPDATE min_qty = VALUES(min_qty)")) {
+            ps.setLong(1, storeId);
+            ps.setLong(2, productId);
+            ps.setInt(3, minQty);
+            ps.executeUpdate();
+        }
+    }
+
+    /** Bỏ theo dõi; trả về true nếu có dòng bị xoá. */
+    public boolean delete(Connection cn, long storeId, long productId) throws SQLException {
+        try (PreparedStatement ps = cn.prepareStatement(
+                "DELETE FROM reorder_thresholds WHERE store_id = ? AND product_id = ?")) {
+            ps.setLong(1, storeId);
+            ps.setLong(2, productId);
+            return ps.executeUpdate() > 0;
+        }
+    }
+}
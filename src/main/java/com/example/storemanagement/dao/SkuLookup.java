@@ -0,0 +1,271 @@
+package com.example.storemanagement.dao;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * SkuLookup – tra SKU (quét mã vạch ở quầy) → (id, tên, giá bán) hoàn toàn trong bộ nhớ.
+ *
+ * - Snapshot bất biến: bảng băm địa chỉ mở (linear probing, dung lượng 2^k ≥ 2n) gồm mảng Entry dựng sẵn.
+ *   Tra cứu không khoá, không chạm DB, không cấp phát: băm trực tiếp trên ký tự của chuỗi quét
+ *   (bỏ khoảng trắng đầu/cuối, không phân biệt hoa thường) và so sánh bằng regionMatches.
+ * - Chỉ chứa sản phẩm active=1 (cùng tập với danh sách chọn hàng của màn hình bán).
+ * - Danh mục đổi (ProductDAO.insert/update/delete, nhập CSV) → refreshAsync(): dựng snapshot mới trên một
+ *   luồng nền rồi thay nguyên cụm qua một biến volatile; người đang tra luôn thấy trọn snapshot cũ hoặc mới.
+ *   Nhiều yêu cầu dồn dập được gộp thành một lần dựng. Thay đổi từ instance khác được thấy sau tối đa
+ *   products.skuLookupTtlMs (lần tra đầu tiên sau hạn sẽ kích hoạt dựng lại nền, vẫn trả kết quả cũ ngay).
+ * - Dựng lại tăng dần theo watermark products.updated_at: chỉ đọc các dòng đổi từ (watermark - skuLookupLagMs)
+ *   (lùi một khoảng để không lỡ transaction commit muộn hơn thời điểm ghi updated_at), ghép vào snapshot cũ.
+ *   Sản phẩm bị xoá không để lại dấu vết updated_at → nếu số dòng active lệch với snapshot thì nạp lại toàn bộ.
+ * - seed(...) nhận snapshot từ ảnh chụp trên đĩa (CatalogSnapshotFile) để phục vụ ngay khi khởi động.
+ */
+public final class SkuLookup {
+
+    private static final SkuLookup INSTANCE = new SkuLookup(
+            DBConnection.getInstance().getLongProperty("products.skuLookupTtlMs", 300000),
+            DBConnection.getInstance().getLongProperty("products.skuLookupLagMs", 5000));
+
+    public static SkuLookup getInstance() { return INSTANCE; }
+
+    /** Một sản phẩm trong snapshot; dựng một lần lúc nạp, trả thẳng cho người gọi (không sao chép). */
+    public static final class Entry {
+        public final long id;
+        public final String sku;
+        public final String name;
+        public final BigDecimal unitPrice;
+
+        Entry(long id, String sku, String name, BigDecimal unitPrice) {
+            this.id = id; this.sku = sku; this.name = name; this.unitPrice = unitPrice;
+        }
+
+        /** Cùng nội dung tra cứu (giá so theo giá trị, không theo scale). */
+        boolean sameAs(Entry o) {
+            return o != null && o.id == id && o.sku.equals(sku) && Objects.equals(o.name, name)
+                    && o.unitPrice.compareTo(unitPrice) == 0;
+        }
+    }
+
+    private final long ttlNanos;
+    private final long lagMs;
+    private final AtomicBoolean refreshQueued = new AtomicBoolean();
+    private final ExecutorService refresher = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "sku-lookup-refresh");
+        t.setDaemon(true);
+        return t;
+    });
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+
+    SkuLookup(long ttlMs, long lagMs) {
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMs);
+        this.lagMs = Math.max(0, lagMs);
+    }
+
+    /**
+     * Tra theo SKU vừa quét; null nếu không có (hoặc snapshot chưa nạp – gọi ensureLoaded() khi mở màn hình).
+     * Không truy vấn DB, không cấp phát.
+     */
+    public Entry find(CharSequence scanned) {
+        Snapshot s = snapshot;
+        if (s.loadedAt != 0 && System.nanoTime() - s.loadedAt >= ttlNanos) refreshAsync();
+        if (scanned == null) return null;
+        int from = 0, to = scanned.length();
+        while (from < to && Character.isWhitespace(scanned.charAt(from))) from++;
+        while (to > from && Character.isWhitespace(scanned.charAt(to - 1))) to--;
+        if (from == to) return null;
+
+        Entry[] table = s.table;
+        int mask = table.length - 1;
+        int len = to - from;
+        for (int i = hash(scanned, from, to) & mask; ; i = (i + 1) & mask) {
+            Entry e = table[i];
+            if (e == null) return null;
+            if (e.sku.length() == len && regionMatches(e.sku, scanned, from, len)) return e;
+        }
+    }
+
+    /** Nạp snapshot đồng bộ nếu chưa có (gọi một lần khi mở màn hình bán hàng, ngoài đường quét). */
+    public void ensureLoaded() throws SQLException {
+        if (snapshot.loadedAt != 0) return;
+        synchronized (this) {
+            if (snapshot.loadedAt == 0) snapshot = load();
+        }
+    }
+
+    /** Phục vụ ngay từ ảnh chụp trên đĩa nếu chưa nạp gì; lần refresh kế tiếp chỉ đọc phần đổi sau watermark. */
+    public synchronized boolean seed(Collection<Entry> rows, long watermark) {
+        if (snapshot.loadedAt != 0) return false;
+        snapshot = Snapshot.of(rows, watermark);
+        return true;
+    }
+
+    /**
+     * Dựng lại ngay trên luồng gọi: tăng dần nếu đã có snapshot, toàn bộ nếu chưa.
+     * Trả về true nếu bảng tra đã đổi (false = chỉ làm mới mốc TTL / watermark).
+     */
+    public synchronized boolean refreshNow() throws SQLException {
+        Snapshot base = snapshot;
+        snapshot = base.loadedAt == 0 ? load() : loadChanges(base);
+        return snapshot.table != base.table;
+    }
+
+    /** Watermark (epoch ms của products.updated_at lớn nhất đã thấy) của snapshot hiện tại. */
+    public long watermark() { return snapshot.watermark; }
+
+    /** Danh mục đã đổi: dựng lại snapshot trên luồng nền (các yêu cầu dồn dập gộp thành một lần dựng). */
+    public void refreshAsync() {
+        if (!refreshQueued.compareAndSet(false, true)) return;
+        refresher.execute(() -> {
+            refreshQueued.set(false); // đổi sau thời điểm này sẽ kích hoạt thêm một lần dựng
+            try {
+                refreshNow();
+            } catch (SQLException ex) {
+                System.err.println("[SkuLookup] Không nạp lại được danh mục: " + ex.getMessage());
+            }
+        });
+    }
+
+    /** Toàn bộ sản phẩm trong snapshot hiện tại (thứ tự theo bảng băm). */
+    public List<Entry> entries() {
+        Snapshot s = snapshot;
+        List<Entry> out = new ArrayList<>(s.size);
+        for (Entry e : s.table) if (e != null) out.add(e);
+        return out;
+    }
+
+    public int size() { return snapshot.size; }
+
+    private static Snapshot load() throws SQLException {
+        List<Entry> rows = new ArrayList<>();
+        long watermark = 0;
+        try (Connection cn = DBConnection.getInstance().getConnection();
+             PreparedStatement ps = cn.prepareStatement("SELECT id, sku, name, unit_price, active, updated_at FROM products")) {
+            ps.setFetchSize(Integer.MIN_VALUE); // MySQL: đọc dạng stream
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    watermark = Math.max(watermark, millis(rs.getTimestamp(6)));
+                    Entry e = toEntry(rs);
+                    if (e != null) rows.add(e);
+                }
+            }
+        }
+        return Snapshot.of(rows, watermark);
+    }
+
+    /**
+     * Ghép các dòng đổi từ (watermark - lag) vào snapshot cũ; lệch số dòng (có sản phẩm bị xoá) → nạp lại toàn bộ.
+     * Khoảng lùi lag luôn đọc lại vài dòng đã có (ít nhất dòng mới nhất) → chỉ dòng khác bản đang giữ mới tính là đổi,
+     * không đổi gì thì giữ nguyên bảng (touch).
+     */
+    private Snapshot loadChanges(Snapshot base) throws SQLException {
+        Map<Long, Entry> byId = new HashMap<>(base.size * 2);
+        for (Entry e : base.table) if (e != null) byId.put(e.id, e);
+        long watermark = base.watermark;
+        int changed = 0;
+        int activeCount;
+        try (Connection cn = DBConnection.getInstance().getConnection()) {
+            try (PreparedStatement ps = cn.prepareStatement(
+                    "SELECT id, sku, name, unit_price, active, updated_at FROM products WHERE updated_at >= ?")) {
+                ps.setTimestamp(1, new Timestamp(Math.max(0, base.watermark - lagMs)));
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        watermark = Math.max(watermark, millis(rs.getTimestamp(6)));
+                        Entry e = toEntry(rs);
+                        if (e != null) {
+                            if (!e.sameAs(byId.put(e.id, e))) changed++;
+                        } else if (byId.remove(rs.getLong(1)) != null) {
+                            changed++; // ngừng bán / SKU rỗng → bỏ khỏi bảng tra
+                        }
+                    }
+                }
+            }
+            try (PreparedStatement ps = cn.prepareStatement("SELECT COUNT(*) FROM products WHERE active=1 AND TRIM(sku) <> ''");
+                 ResultSet rs = ps.executeQuery()) {
+                activeCount = rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+        if (activeCount != byId.size()) return load();
+        if (changed == 0) return base.touch(watermark);
+        return Snapshot.of(byId.values(), watermark);
+    }
+
+    /** Dòng products (id, sku, name, unit_price, active, ...) → Entry; null nếu ngừng bán hoặc SKU rỗng. */
+    private static Entry toEntry(ResultSet rs) throws SQLException {
+        if (!rs.getBoolean(5)) return null;
+        String sku = rs.getString(2);
+        if (sku == null || (sku = sku.trim()).isEmpty()) return null;
+        BigDecimal price = rs.getBigDecimal(4);
+        return new Entry(rs.getLong(1), sku, rs.getString(3), price != null ? price : BigDecimal.ZERO);
+    }
+
+    private static long millis(Timestamp ts) {
+        return ts == null ? 0 : ts.getTime();
+    }
+
+    /** Băm không phân biệt hoa thường trên đoạn [from, to), trộn bit cao xuống để linear probing phân tán đều. */
+    private static int hash(CharSequence s, int from, int to) {
+        int h = 0;
+        for (int i = from; i < to; i++) h = 31 * h + Character.toLowerCase(s.charAt(i));
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean regionMatches(String sku, CharSequence s, int from, int len) {
+        for (int i = 0; i < len; i++) {
+            char a = sku.charAt(i), b = s.charAt(from + i);
+            if (a != b && Character.toLowerCase(a) != Character.toLowerCase(b)) return false;
+        }
+        return true;
+    }
+
+    /** Bảng băm bất biến sau khi dựng. */
+    private static final class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(new Entry[1], 0, 0, 0);
+
+        final Entry[] table;
+        final int size;
+        final long watermark; // epoch ms của products.updated_at lớn nhất đã đọc
+        final long loadedAt;  // System.nanoTime() lúc dựng; 0 = chưa nạp
+
+        private Snapshot(Entry[] table, int size, long watermark, long loadedAt) {
+            this.table = table; this.size = size; this.watermark = watermark; this.loadedAt = loadedAt;
+        }
+
+        /** Cùng bảng, làm mới mốc TTL (không có gì đổi); watermark có thể tiến nếu dòng đọc lại chỉ đổi cột khác. */
+        Snapshot touch(long watermark) {
+            return new Snapshot(table, size, watermark, now());
+        }
+
+        static Snapshot of(Collection<Entry> rows, long watermark) {
+            int cap = Integer.highestOneBit(Math.max(2, rows.size() * 2 - 1)) << 1; // 2^k ≥ 2n → tải ≤ 50%
+            Entry[] table = new Entry[cap];
+            int mask = cap - 1, size = 0;
+            outer:
+            for (Entry e : rows) {
+                int i = hash(e.sku, 0, e.sku.length()) & mask;
+                for (Entry o; (o = table[i]) != null; i = (i + 1) & mask)
+                    if (o.sku.equalsIgnoreCase(e.sku)) continue outer; // SKU trùng (khác hoa thường) → giữ bản đầu
+                table[i] = e;
+                size++;
+            }
+            return new Snapshot(table, size, watermark, now());
+        }
+
+        private static long now() {
+            long now = System.nanoTime();
+            return now == 0 ? 1 : now;
+        }
+    }
+}
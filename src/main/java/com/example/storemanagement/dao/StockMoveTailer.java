@@ -0,0 +1,326 @@
+package com.example.storemanagement.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * StockMoveTailer – một luồng bám đuôi stock_moves theo id dùng chung cho các bản sao tồn trong bộ nhớ
+ * (InventoryMatrix, LowStockMonitor): một truy vấn / lượt thay vì mỗi bản sao tự đọc lại cùng các dòng.
+ *
+ * - Bám đuôi: mỗi inventory.tailPollMs đọc stock_moves có id > high-water mark theo lô inventory.tailBatchSize
+ *   và giao từng lô (theo thứ tự id) cho mọi subscriber. id AUTO_INCREMENT có thể commit không theo thứ tự → id bị
+ *   "nhảy cóc" được ghi nhận là gap và hỏi lại ở các lượt sau cho tới inventory.tailGapTimeoutMs
+ *   (id của transaction rollback không bao giờ xuất hiện).
+ * - Nạp lại: subscriber cần nạp (needsReload) được gọi reload(cn) trong một transaction REPEATABLE READ sau câu
+ *   MAX(id) → ảnh chụp nhất quán với mốc since của riêng subscriber đó; các dòng ≤ mốc đã nằm trong ảnh chụp bị bỏ
+ *   qua, trừ id trong cửa sổ sát mốc chưa commit lúc đọc (được giao khi xuất hiện). Subscriber khác không bị nạp lại.
+ * - Dòng ADJUST của job đối soát (note bắt đầu bằng RECONCILE_NOTE_PREFIX) chỉ sửa sổ cái, không đổi inventory
+ *   → không giao cho subscriber.
+ * - Gap quá nhiều → coi như mất dấu: mọi subscriber nạp lại ở lượt kế tiếp.
+ */
+public final class StockMoveTailer {
+
+    private static final StockMoveTailer INSTANCE = new StockMoveTailer(
+            DBConnection.getInstance().getLongProperty("inventory.tailPollMs", 1000),
+            DBConnection.getInstance().getIntProperty("inventory.tailBatchSize", 5000),
+            DBConnection.getInstance().getLongProperty("inventory.tailGapTimeoutMs", 60000));
+
+    public static StockMoveTailer getInstance() { return INSTANCE; }
+
+    /** Tiền tố note của dòng ADJUST do InventoryReconciliationJob ghi. */
+    public static final String RECONCILE_NOTE_PREFIX = "Reconcile ";
+
+    private static final int MAX_GAPS = 10_000; // nhiều hơn → nạp lại toàn bộ
+
+    /** Một dòng stock_moves. delta() có dấu giống trg_moves_after_insert. */
+    public static final class Move {
+        public final long id;
+        public final long storeId;
+        public final long productId;
+        public final String moveType;
+        public final int quantity;
+        public final long createdAt; // epoch ms
+
+        Move(long id, long storeId, long productId, String moveType, int quantity, long createdAt) {
+            this.id = id; this.storeId = storeId; this.productId = productId;
+            this.moveType = moveType; this.quantity = quantity; this.createdAt = createdAt;
+        }
+
+        /** IMPORT +, EXPORT −, ADJUST ± (quantity đã có dấu). */
+        public int delta() { return "EXPORT".equals(moveType) ? -quantity : quantity; }
+    }
+
+    /** Bản sao nhận các dòng stock_moves. Mọi lời gọi chạy trên luồng đang giữ khoá poll của tailer. */
+    public interface Subscriber {
+        /** Cần nạp lại ảnh chụp ở lượt kế tiếp (chưa nạp, bị invalidate, tới hạn nạp định kỳ...). */
+        boolean needsReload();
+
+        /** Đọc ảnh chụp trên cn (REPEATABLE READ, read view đã mở) rồi thay nguyên trạng thái. */
+        void reload(Connection cn) throws SQLException;
+
+        /** Một lô dòng mới (hoặc gap vừa commit), đã bỏ dòng nằm trong ảnh chụp của subscriber. */
+        void apply(List<Move> moves);
+
+        /** Sau mỗi lượt bám đuôi thành công (cùng kết nối): việc phụ như đọc danh mục đổi, phát sự kiện. */
+        default void caughtUp(Connection cn) throws SQLException {}
+    }
+
+    private final long pollMs;
+    private final int batchSize;
+    private final long gapTimeoutNanos;
+    private final List<Sub> subs = new CopyOnWriteArrayList<>();
+
+    // ---- Chỉ luồng giữ pollLock đọc/ghi ----
+    private final Object pollLock = new Object();
+    private boolean initialized;
+    private long highWater;                                   // stock_moves.id lớn nhất đã đọc
+    private final TreeMap<Long, Long> gaps = new TreeMap<>(); // id chưa thấy → nanoTime lúc phát hiện
+    private long movesRead;
+    private long skipped;
+
+    private ScheduledExecutorService tailer;
+
+    StockMoveTailer(long pollMs, int batchSize, long gapTimeoutMs) {
+        this.pollMs = Math.max(50, pollMs);
+        this.batchSize = Math.max(100, batchSize);
+        this.gapTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(gapTimeoutMs);
+    }
+
+    /** Đăng ký subscriber (nạp ở lượt kế tiếp); luồng nền khởi động cùng subscriber đầu tiên. */
+    public synchronized void subscribe(Subscriber s) {
+        if (!register(s) || tailer != null) return;
+        tailer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "stock-moves-tail");
+            t.setDaemon(true);
+            return t;
+        });
+        tailer.scheduleWithFixedDelay(() -> {
+            try {
+                poll();
+            } catch (SQLException | RuntimeException ex) {
+                System.err.println("[StockMoveTailer] Bám đuôi stock_moves lỗi: " + ex.getMessage());
+            }
+        }, 0, pollMs, TimeUnit.MILLISECONDS);
+    }
+
+    /** Thêm vào danh sách mà không khởi động luồng nền; false nếu đã đăng ký. */
+    synchronized boolean register(Subscriber s) {
+        for (Sub x : subs) if (x.s == s) return false;
+        subs.add(new Sub(s));
+        return true;
+    }
+
+    /** Huỷ đăng ký; subscriber cuối cùng rời đi → dừng luồng nền, lần đăng ký sau bắt đầu lại từ ảnh chụp. */
+    public synchronized void unsubscribe(Subscriber s) {
+        subs.removeIf(x -> x.s == s);
+        if (!subs.isEmpty() || tailer == null) return;
+        tailer.shutdownNow();
+        tailer = null;
+        synchronized (pollLock) {
+            initialized = false;
+            gaps.clear();
+        }
+    }
+
+    /** Một lượt ngay trên luồng gọi (lỗi DB ném thẳng cho người gọi). */
+    public void pollNow() throws SQLException {
+        poll();
+    }
+
+    @Override
+    public String toString() {
+        synchronized (pollLock) {
+            return "StockMoveTailer[subscribers=" + subs.size() + ", highWater=" + highWater + ", gaps=" + gaps.size()
+                    + ", movesRead=" + movesRead + ", skipped=" + skipped + "]";
+        }
+    }
+
+    // ===================== Nạp & bám đuôi =====================
+
+    void poll() throws SQLException {
+        synchronized (pollLock) {
+            List<Sub> reload = new ArrayList<>();
+            for (Sub x : subs)
+                if (!initialized || x.forceReload || x.s.needsReload()) reload.add(x);
+            if (!initialized && reload.isEmpty()) return; // chưa có subscriber
+            if (!reload.isEmpty()) bootstrap(reload);
+            if (subs.isEmpty()) return;
+            try (Connection cn = DBConnection.getInstance().getConnection()) {
+                recheckGaps(cn);
+                while (tail(cn) >= batchSize) {
+                    // còn lô đầy → đọc tiếp ngay
+                }
+                for (Sub x : subs) if (!x.forceReload) x.s.caughtUp(cn);
+            }
+            if (gaps.size() > MAX_GAPS) initialized = false; // mất dấu → mọi subscriber nạp lại
+        }
+    }
+
+    /** MAX(id) + id đã commit sát mốc, rồi reload các subscriber trên cùng một read view. */
+    private void bootstrap(List<Sub> reload) throws SQLException {
+        long hw;
+        Set<Long> recentIds = new HashSet<>();
+        try (Connection cn = DBConnection.getInstance().getConnection()) {
+            boolean oldAuto = cn.getAutoCommit();
+            int oldIso = cn.getTransactionIsolation();
+            cn.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+            cn.setAutoCommit(false);
+            try {
+                try (PreparedStatement ps = cn.prepareStatement("SELECT COALESCE(MAX(id), 0) FROM stock_moves");
+                     ResultSet rs = ps.executeQuery()) {
+                    hw = rs.next() ? rs.getLong(1) : 0; // câu đọc đầu tiên tạo read view cho cả transaction
+                }
+                // id trong cửa sổ gần mốc chưa thấy = transaction chưa commit → giao khi xuất hiện
+                try (PreparedStatement ps = cn.prepareStatement("SELECT id FROM stock_moves WHERE id > ? AND id <= ?")) {
+                    ps.setLong(1, Math.max(0, hw - batchSize));
+                    ps.setLong(2, hw);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) recentIds.add(rs.getLong(1));
+                    }
+                }
+                for (Sub x : reload) x.s.reload(cn);
+                cn.commit();
+            } catch (SQLException | RuntimeException ex) {
+                try { cn.rollback(); } catch (SQLException rb) { ex.addSuppressed(rb); }
+                throw ex;
+            } finally {
+                cn.setAutoCommit(oldAuto);
+                cn.setTransactionIsolation(oldIso); // kết nối quay về pool với cấu hình cũ
+            }
+        }
+        snapshotTaken(reload, hw, recentIds);
+    }
+
+    /** Ghi nhận ảnh chụp của s tại mốc hw (recentIds = id đã commit trong cửa sổ sát mốc), không đọc DB. */
+    void loaded(Subscriber s, long hw, Set<Long> recentIds) {
+        synchronized (pollLock) {
+            for (Sub x : subs) if (x.s == s) snapshotTaken(List.of(x), hw, recentIds);
+        }
+    }
+
+    private void snapshotTaken(List<Sub> reload, long hw, Set<Long> recentIds) {
+        long now = System.nanoTime();
+        TreeMap<Long, Long> missing = new TreeMap<>();
+        for (long id = Math.max(1, hw - batchSize + 1); id <= hw; id++)
+            if (!recentIds.contains(id)) missing.put(id, now);
+        for (Sub x : reload) {
+            x.since = hw;
+            x.pending.clear();
+            x.pending.putAll(missing);
+            x.forceReload = false;
+        }
+        if (!initialized) {
+            // Mốc chung bắt đầu tại ảnh chụp; luồng đã đọc trước đó luôn ≤ hw (read view mở sau lượt đọc cuối)
+            gaps.clear();
+            gaps.putAll(missing);
+            highWater = hw;
+            initialized = true;
+        }
+    }
+
+    /** Đọc stock_moves có id > highWater (tối đa một lô); trả về số dòng đã đọc. */
+    private int tail(Connection cn) throws SQLException {
+        List<Move> batch = new ArrayList<>();
+        int n = 0;
+        try (PreparedStatement ps = cn.prepareStatement(
+                "SELECT id, store_id, product_id, move_type, quantity, created_at, note FROM stock_moves"
+                        + " WHERE id > ? ORDER BY id LIMIT ?")) {
+            ps.setLong(1, highWater);
+            ps.setInt(2, batchSize);
+            try (ResultSet rs = ps.executeQuery()) {
+                long now = System.nanoTime();
+                while (rs.next()) {
+                    long id = rs.getLong(1);
+                    for (long missing = highWater + 1; missing < id && gaps.size() <= MAX_GAPS; missing++)
+                        gaps.put(missing, now); // id nhỏ hơn chưa commit (hoặc đã rollback)
+                    Move m = read(rs);
+                    if (m != null) batch.add(m);
+                    highWater = id;
+                    n++;
+                }
+            }
+        }
+        movesRead += n;
+        deliver(batch);
+        return n;
+    }
+
+    /** Hỏi lại các id gap; gap quá hạn (transaction đã rollback) bị bỏ. */
+    private void recheckGaps(Connection cn) throws SQLException {
+        long now = System.nanoTime();
+        for (Sub x : subs) x.pending.values().removeIf(seen -> now - seen >= gapTimeoutNanos);
+        if (gaps.isEmpty()) return;
+        gaps.values().removeIf(seen -> now - seen >= gapTimeoutNanos);
+        if (gaps.isEmpty()) return;
+        List<Long> ids = new ArrayList<>(gaps.keySet());
+        for (int from = 0; from < ids.size(); from += OrderDAO.CHUNK_SIZE) {
+            List<Long> chunk = ids.subList(from, Math.min(ids.size(), from + OrderDAO.CHUNK_SIZE));
+            List<Move> batch = new ArrayList<>();
+            try (PreparedStatement ps = cn.prepareStatement(
+                    "SELECT id, store_id, product_id, move_type, quantity, created_at, note FROM stock_moves WHERE id IN ("
+                            + OrderDAO.placeholders(chunk.size()) + ") ORDER BY id")) {
+                for (int i = 0; i < chunk.size(); i++) ps.setLong(i + 1, chunk.get(i));
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        gaps.remove(rs.getLong(1));
+                        movesRead++;
+                        Move m = read(rs);
+                        if (m != null) batch.add(m);
+                    }
+                }
+            }
+            deliver(batch);
+        }
+    }
+
+    /** Giao một lô cho từng subscriber, bỏ dòng đã nằm trong ảnh chụp của subscriber đó. */
+    void deliver(List<Move> batch) {
+        if (batch.isEmpty()) return;
+        for (Sub x : subs) {
+            if (x.forceReload) continue; // chưa có ảnh chụp (vừa đăng ký) → lượt sau nạp
+            List<Move> mine = new ArrayList<>(batch.size());
+            for (Move m : batch)
+                if (m.id > x.since || x.pending.remove(m.id) != null) mine.add(m);
+            if (!mine.isEmpty()) x.s.apply(mine);
+        }
+    }
+
+    /** Dòng (id, store_id, product_id, move_type, quantity, created_at, note) → Move; null nếu là ADJUST của đối soát. */
+    private Move read(ResultSet rs) throws SQLException {
+        String type = rs.getString(4);
+        String note = rs.getString(7);
+        if (isReconcile(type, note)) {
+            skipped++;
+            return null;
+        }
+        Timestamp ts = rs.getTimestamp(6);
+        return new Move(rs.getLong(1), rs.getLong(2), rs.getLong(3), type, rs.getInt(5), ts == null ? 0 : ts.getTime());
+    }
+
+    /** ADJUST do job đối soát ghi: sổ cái đổi, inventory giữ nguyên. */
+    static boolean isReconcile(String moveType, String note) {
+        return "ADJUST".equals(moveType) && note != null && note.startsWith(RECONCILE_NOTE_PREFIX);
+    }
+
+    /** Trạng thái giao nhận của một subscriber. */
+    private static final class Sub {
+        final Subscriber s;
+        long since;                                                // mốc ảnh chụp: id ≤ since đã có trong ảnh chụp
+        final TreeMap<Long, Long> pending = new TreeMap<>();       // id ≤ since chưa commit lúc chụp → vẫn phải giao
+        boolean forceReload = true;                                // true tới lần reload đầu tiên
+
+        Sub(Subscriber s) { this.s = s; }
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.storemanagement.model;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * CheckoutOutbox – đại diện cho bảng checkout_outbox.
+ * Mỗi dòng gói gọn các tác động phụ của một đơn đã chốt (doanh thu, điểm, ledger, events)
+ * để OutboxWorker áp dụng sau khi transaction chốt đơn đã commit.
+ */
+public class CheckoutOutbox {
+    public enum Status { PENDING, DONE, FAILED }
+
+    private Long id;
+    private String idemKey;       // khoá idempotency, vd: "order:123" (UNIQUE)
+    private Long orderId;
+    private String orderCode;
+    private Long storeId;
+    private Long customerId;      // có thể null (khách vãng lai)
+    private BigDecimal amount;    // grand total → finance_reports.amount
+    private Integer points;       // điểm cộng cho khách (0 nếu không có)
+    private String note;          // ghi chú đơn → event CREATED
+    private String paymentMethod; // → event CONFIRMED
+    private LocalDate reportDate; // ngày ghi nhận doanh thu (ngày chốt đơn, không phải ngày xử lý)
+    private Status status;
+    private Integer attempts;
+    private String lastError;
+    private LocalDateTime createdAt;
+    private LocalDateTime processedAt;
+
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+    public String getIdemKey() { return idemKey; }
+    public void setIdemKey(String idemKey) { this.idemKey = idemKey; }
+    public Long getOrderId() { return orderId; }
+    public void setOrderId(Long orderId) { this.orderId = orderId; }
+    public String getOrderCode() { return orderCode; }
+    public void setOrderCode(String orderCode) { this.orderCode = orderCode; }
+    public Long getStoreId() { return storeId; }
+    public void setStoreId(Long storeId) { this.storeId = storeId; }
+    public Long getCustomerId() { return customerId; }
+    public void setCustomerId(Long customerId) { this.customerId = customerId; }
+    public BigDecimal getAmount() { return amount; }
+    public void setAmount(BigDecimal amount) { this.amount = amount; }
+    public Integer getPoints() { return points; }
+    public void setPoints(Integer points) { this.points = points; }
+    public String getNote() { return note; }
+    public void setNote(String note) { this.note = note; }
+    public String getPaymentMethod() { return paymentMethod; }
+    public void setPaymentMethod(String paymentMethod) { this.paymentMethod = paymentMethod; }
+    public LocalDate getReportDate() { return reportDate; }
+    public void setReportDate(LocalDate reportDate) { this.reportDate = reportDate; }
+    public Status getStatus() { return status; }
+    public void setStatus(Status status) { this.status = status; }
+    public Integer getAttempts() { return attempts; }
+    public void setAttempts(Integer attempts) { this.attempts = attempts; }
+    public String getLastError() { return lastError; }
+    public void setLastError(String lastError) { this.lastError = lastError; }
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+    public LocalDateTime getProcessedAt() { return processedAt; }
+    public void setProcessedAt(LocalDateTime processedAt) { this.processedAt = processedAt; }
+}
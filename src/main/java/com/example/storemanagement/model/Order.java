@@ -11,6 +11,7 @@ import java.time.LocalDateTime;
 public class Order {
     private Long id;
     private String orderCode;
+    private String requestKey;      // khoá idempotency do client gửi (có thể null)
     private Long storeId;
     private Long customerId; // có thể null
     private BigDecimal totalAmount; // SUBTOTAL do trigger tính
@@ -26,6 +27,8 @@ public class Order {
     public void setId(Long id) { this.id = id; }
     public String getOrderCode() { return orderCode; }
     public void setOrderCode(String orderCode) { this.orderCode = orderCode; }
+    public String getRequestKey() { return requestKey; }
+    public void setRequestKey(String requestKey) { this.requestKey = requestKey; }
     public Long getStoreId() { return storeId; }
     public void setStoreId(Long storeId) { this.storeId = storeId; }
     public Long getCustomerId() { return customerId; }
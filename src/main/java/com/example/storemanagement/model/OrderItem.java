@@ -10,6 +10,8 @@ public class OrderItem {
     private Integer quantity;
     private BigDecimal unitPrice;
     private BigDecimal lineTotal; // STORED (quantity*unit_price)
+    private String productSku;    // chỉ đọc – JOIN products khi nạp nhiều đơn
+    private String productName;   // chỉ đọc – JOIN products khi nạp nhiều đơn
 
     public Long getId() { return id; }
     public void setId(Long id) { this.id = id; }
@@ -23,4 +25,8 @@ public class OrderItem {
     public void setUnitPrice(BigDecimal unitPrice) { this.unitPrice = unitPrice; }
     public BigDecimal getLineTotal() { return lineTotal; }
     public void setLineTotal(BigDecimal lineTotal) { this.lineTotal = lineTotal; }
-}
\ No newline at end of file
+    public String getProductSku() { return productSku; }
+    public void setProductSku(String productSku) { this.productSku = productSku; }
+    public String getProductName() { return productName; }
+    public void setProductName(String productName) { this.productName = productName; }
+}
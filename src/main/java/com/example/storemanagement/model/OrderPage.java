@@ -0,0 +1,18 @@
+package com.example.storemanagement.model;
+
+import java.util.List;
+
+/** Một trang lịch sử đơn (keyset pagination) + token để đọc trang kế tiếp (null = hết dữ liệu). */
+public class OrderPage {
+    private final List<Order> orders;
+    private final String nextPageToken;
+
+    public OrderPage(List<Order> orders, String nextPageToken) {
+        this.orders = orders;
+        this.nextPageToken = nextPageToken;
+    }
+
+    public List<Order> getOrders() { return orders; }
+    public String getNextPageToken() { return nextPageToken; }
+    public boolean hasMore() { return nextPageToken != null; }
+}
@@ -0,0 +1,77 @@
+package com.example.storemanagement.service;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.example.storemanagement.dao.DBConnection;
+import com.example.storemanagement.dao.OrderDAO;
+
+/**
+ * BlockOrderCodeAllocator – mã đơn tăng dần theo từng cửa hàng, cấp từ các khối giữ trước trong DB.
+ *
+ * - Mỗi cửa hàng có bộ đếm trong bảng order_code_blocks; allocator giữ trước blockSize giá trị
+ *   bằng 1 câu UPDATE (1 round trip / blockSize đơn) rồi phát dần trong bộ nhớ.
+ * - Đường nhanh không khoá: AtomicLong.getAndIncrement() trên khối hiện tại; chỉ khi hết khối
+ *   mới đồng bộ theo cửa hàng để xin khối mới.
+ * - Bộ đếm nằm trong DB nên mã không trùng qua các lần restart và giữa nhiều instance;
+ *   giá trị của khối chưa dùng hết khi tắt app sẽ bị bỏ qua (mã có thể nhảy cóc, không trùng).
+ * - Định dạng: ORD-yyyyMMdd-<storeId>-<seq 7 chữ số>, vd: ORD-20251017-1-0000042.
+ */
+public class BlockOrderCodeAllocator implements OrderCodeAllocator {
+
+    private static final DateTimeFormatter DAY = DateTimeFormatter.BASIC_ISO_DATE;
+
+    private final OrderDAO orderDAO = new OrderDAO();
+    private final int blockSize;
+    private final ConcurrentHashMap<Long, AtomicReference<Block>> blocks = new ConcurrentHashMap<>();
+
+    public BlockOrderCodeAllocator() {
+        this(DBConnection.getInstance().getIntProperty("orders.codeBlockSize", 100));
+    }
+
+    public BlockOrderCodeAllocator(int blockSize) {
+        if (blockSize <= 0) throw new IllegalArgumentException("orders.codeBlockSize phải > 0");
+        this.blockSize = blockSize;
+    }
+
+    @Override
+    public String nextCode(long storeId) throws SQLException {
+        return "ORD-" + LocalDate.now().format(DAY) + "-" + storeId + "-" + String.format("%07d", nextValue(storeId));
+    }
+
+    /** Giá trị tiếp theo của bộ đếm cửa hàng. */
+    long nextValue(long storeId) throws SQLException {
+        AtomicReference<Block> ref = blocks.computeIfAbsent(storeId, k -> new AtomicReference<>());
+        while (true) {
+            Block b = ref.get();
+            if (b != null) {
+                long v = b.next.getAndIncrement();
+                if (v < b.end) return v;
+            }
+            synchronized (ref) {            // chỉ tranh chấp khi hết khối
+                if (ref.get() == b) ref.set(reserve(storeId));
+            }
+        }
+    }
+
+    private Block reserve(long storeId) throws SQLException {
+        // Kết nối riêng (autoCommit) – không nằm trong transaction chốt đơn; OrderService cấp mã trước khi
+        // lấy kết nối transaction nên luồng này không giữ hai kết nối pool cùng lúc
+        try (Connection cn = DBConnection.getInstance().getConnection()) {
+            long start = orderDAO.reserveCodeBlock(cn, storeId, blockSize);
+            return new Block(start, start + blockSize);
+        }
+    }
+
+    /** Khối [start, end) đã giữ trước; next là con trỏ cấp phát. */
+    private static final class Block {
+        final AtomicLong next;
+        final long end;
+        Block(long start, long end) { this.next = new AtomicLong(start); this.end = end; }
+    }
+}
@@ -0,0 +1,282 @@
+package com.example.storemanagement.service;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.example.storemanagement.dao.DBConnection;
+import com.example.storemanagement.dao.InventoryMatrix;
+import com.example.storemanagement.dao.PriceCache;
+import com.example.storemanagement.dao.SkuLookup;
+import com.example.storemanagement.dao.ProductDAO;
+import com.example.storemanagement.dao.ProductSearchIndex;
+import com.example.storemanagement.model.Product;
+import com.example.storemanagement.util.CsvUtils;
+import com.example.storemanagement.util.ValidationUtils;
+
+/**
+ * CatalogImportService – nhập danh mục sản phẩm từ file CSV lớn (onboard nhà cung cấp mới).
+ *
+ * File có dòng tiêu đề; cột bắt buộc: sku, name, unit_price; tuỳ chọn: unit, unit_cost, supplier_id, active.
+ *
+ * Luồng xử lý (bộ nhớ giới hạn, không đọc cả file vào RAM):
+ *  1) Luồng gọi đọc file tuần tự, gom batchSize dòng thành một lô.
+ *  2) Lô được validate song song trên pool catalog.import.threads luồng (SKU theo ValidationUtils.isSku, giá ≥ 0, ...).
+ *  3) Một luồng ghi lấy kết quả theo đúng thứ tự lô: upsert products theo SKU (1 batch) + tạo dòng inventory
+ *     cho mọi cửa hàng (1 câu INSERT ... SELECT) trong một transaction TxTemplate.
+ *  Hàng đợi giữa bước 2 và 3 có giới hạn → đọc file bị chặn lại khi DB ghi chậm hơn.
+ *
+ * Dòng lỗi (validate hoặc DB) được ghi vào file reject: line,error,dòng gốc. Kết quả trả về ImportStats.
+ */
+public class CatalogImportService {
+
+    private static final int MAX_NAME = 160;
+    private static final int MAX_UNIT = 32;
+
+    private final ProductDAO productDAO = new ProductDAO();
+    private final TxTemplate tx = TxTemplate.getDefault();
+    private final int threads;
+    private final int batchSize;
+
+    public CatalogImportService() {
+        this(DBConnection.getInstance().getIntProperty("catalog.import.threads", Runtime.getRuntime().availableProcessors()),
+             DBConnection.getInstance().getIntProperty("catalog.import.batchSize", 500));
+    }
+
+    public CatalogImportService(int threads, int batchSize) {
+        this.threads = Math.max(1, threads);
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /** Thống kê một lần nhập. */
+    public static class ImportStats {
+        public long rowsRead;
+        public long upserted;
+        public long rejected;
+        public long inventoryRowsCreated;
+        public long elapsedMs;
+
+        public double rowsPerSecond() { return elapsedMs == 0 ? rowsRead : rowsRead * 1000.0 / elapsedMs; }
+
+        @Override
+        public String toString() {
+            return String.format("Catalog import: read=%d upserted=%d rejected=%d inventoryRows=%d in %dms (%.0f rows/s)",
+                    rowsRead, upserted, rejected, inventoryRowsCreated, elapsedMs, rowsPerSecond());
+        }
+    }
+
+    /**
+     * Nhập file CSV; dòng lỗi ghi ra rejectFile (ghi đè). IOException khi không đọc/ghi được file,
+     * SQLException khi DB lỗi không phải do dữ liệu dòng (mất kết nối, ...).
+     */
+    public ImportStats importCsv(Path csvFile, Path rejectFile) throws IOException, SQLException {
+        long started = System.nanoTime();
+        ImportStats stats = new ImportStats();
+        AtomicInteger seq = new AtomicInteger();
+        ExecutorService validators = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "catalog-validate-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        // Lô đã giao cho validate, theo thứ tự đọc; giới hạn số lô "đang bay" để giữ bộ nhớ cố định
+        BlockingQueue<Future<Batch>> inFlight = new ArrayBlockingQueue<>(threads * 2);
+
+        try (BufferedReader in = Files.newBufferedReader(csvFile, StandardCharsets.UTF_8);
+             BufferedWriter rejects = Files.newBufferedWriter(rejectFile, StandardCharsets.UTF_8)) {
+            rejects.write("line,error,row");
+            rejects.newLine();
+
+            String header = in.readLine();
+            if (header == null) return stats;
+            Map<String, Integer> cols = columns(header);
+
+            List<String[]> raw = new ArrayList<>(batchSize); // {số dòng, nội dung}
+            int lineNo = 1;
+            String line;
+            while ((line = in.readLine()) != null) {
+                lineNo++;
+                if (line.isBlank()) continue;
+                stats.rowsRead++;
+                raw.add(new String[] { String.valueOf(lineNo), line });
+                if (raw.size() == batchSize) {
+                    submit(validators, inFlight, raw, cols, stats, rejects);
+                    raw = new ArrayList<>(batchSize);
+                }
+            }
+            if (!raw.isEmpty()) submit(validators, inFlight, raw, cols, stats, rejects);
+            while (!inFlight.isEmpty()) write(await(inFlight.poll()), cols.keySet(), stats, rejects);
+        } finally {
+            validators.shutdownNow();
+            stats.elapsedMs = (System.nanoTime() - started) / 1_000_000;
+            // Lỗi giữa chừng vẫn có thể để lại các lô đã commit → luôn làm mới cache
+            PriceCache.getInstance().invalidateAll(); // giá có thể đã đổi hàng loạt
+            SkuLookup.getInstance().refreshAsync(); // dựng lại bảng tra SKU ở quầy sau khi các lô đã commit
+            InventoryMatrix.getInstance().invalidate(); // dòng tồn 0 mới (fanOutInventory) đã commit → ma trận nạp lại
+            ProductSearchIndex.getInstance().invalidate(); // sản phẩm mới/đổi tên đã commit → chỉ mục nạp lại ở lần tìm kế tiếp
+        }
+        return stats;
+    }
+
+    /** Giao lô cho pool validate; nếu hàng đợi đầy thì ghi lô cũ nhất trước (giữ thứ tự + chặn luồng đọc). */
+    private void submit(ExecutorService validators, BlockingQueue<Future<Batch>> inFlight, List<String[]> raw,
+                        Map<String, Integer> cols, ImportStats stats, BufferedWriter rejects) throws IOException, SQLException {
+        Future<Batch> f = validators.submit(() -> validate(raw, cols));
+        while (!inFlight.offer(f)) write(await(inFlight.poll()), cols.keySet(), stats, rejects);
+    }
+
+    private Batch await(Future<Batch> f) throws SQLException {
+        try {
+            return f.get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Bị ngắt khi nhập danh mục", ie);
+        } catch (ExecutionException ee) {
+            throw new SQLException("Lỗi validate danh mục: " + ee.getCause().getMessage(), ee.getCause());
+        }
+    }
+
+    // ==================== Validate (chạy song song) ====================
+
+    private static final class Batch {
+        final List<Product> products = new ArrayList<>();
+        final List<String[]> source = new ArrayList<>();   // dòng gốc tương ứng từng product
+        final List<String[]> rejected = new ArrayList<>(); // {line, error, row}
+    }
+
+    private Batch validate(List<String[]> raw, Map<String, Integer> cols) {
+        Batch b = new Batch();
+        for (String[] r : raw) {
+            try {
+                b.products.add(parse(CsvUtils.parseLine(r[1]), cols));
+                b.source.add(r);
+            } catch (IllegalArgumentException ex) {
+                b.rejected.add(new String[] { r[0], ex.getMessage(), r[1] });
+            }
+        }
+        return b;
+    }
+
+    static Product parse(List<String> f, Map<String, Integer> cols) {
+        String sku = field(f, cols, "sku");
+        if (!ValidationUtils.isSku(sku)) throw new IllegalArgumentException("SKU không hợp lệ");
+        String name = ValidationUtils.requireNonBlank(field(f, cols, "name"), "Tên sản phẩm");
+        if (name.length() > MAX_NAME) throw new IllegalArgumentException("Tên sản phẩm quá dài");
+        String unit = field(f, cols, "unit");
+        unit = ValidationUtils.isBlank(unit) ? "pcs" : unit.trim();
+        if (unit.length() > MAX_UNIT) throw new IllegalArgumentException("Đơn vị tính quá dài");
+
+        Product p = new Product();
+        p.setSku(sku.trim());
+        p.setName(name);
+        p.setUnit(unit);
+        p.setUnitPrice(money(field(f, cols, "unit_price"), "Giá bán", true));
+        p.setUnitCost(money(field(f, cols, "unit_cost"), "Giá vốn", false));
+        String sup = field(f, cols, "supplier_id");
+        if (!ValidationUtils.isBlank(sup)) {
+            try { p.setSupplierId(ValidationUtils.requirePositive(Long.parseLong(sup.trim()), "supplier_id")); }
+            catch (NumberFormatException ex) { throw new IllegalArgumentException("supplier_id không hợp lệ"); }
+        }
+        String active = field(f, cols, "active");
+        p.setActive(ValidationUtils.isBlank(active) || "1".equals(active.trim()) || "true".equalsIgnoreCase(active.trim()));
+        return p;
+    }
+
+    private static BigDecimal money(String v, String fieldName, boolean required) {
+        if (ValidationUtils.isBlank(v)) {
+            if (required) throw new IllegalArgumentException(fieldName + " không được để trống");
+            return BigDecimal.ZERO;
+        }
+        try {
+            BigDecimal d = new BigDecimal(v.trim());
+            if (d.signum() < 0) throw new IllegalArgumentException(fieldName + " không hợp lệ");
+            if (d.scale() > 2 || d.precision() - d.scale() > 10) throw new IllegalArgumentException(fieldName + " vượt DECIMAL(12,2)");
+            return d;
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException(fieldName + " không phải số");
+        }
+    }
+
+    private static String field(List<String> f, Map<String, Integer> cols, String name) {
+        Integer i = cols.get(name);
+        return i == null || i >= f.size() ? null : f.get(i);
+    }
+
+    /** Tên cột (chữ thường) → vị trí; thiếu cột bắt buộc → IllegalArgumentException. */
+    static Map<String, Integer> columns(String header) {
+        if (header.startsWith("\uFEFF")) header = header.substring(1); // BOM của Excel
+        Map<String, Integer> cols = new HashMap<>();
+        List<String> names = CsvUtils.parseLine(header);
+        for (int i = 0; i < names.size(); i++) cols.put(names.get(i).trim().toLowerCase(Locale.ROOT), i);
+        for (String req : new String[] { "sku", "name", "unit_price" })
+            if (!cols.containsKey(req)) throw new IllegalArgumentException("File CSV thiếu cột " + req);
+        return cols;
+    }
+
+    // ==================== Ghi DB (một luồng, theo thứ tự lô) ====================
+
+    /** columns: các cột có trong header – SKU đã tồn tại chỉ được cập nhật các cột này. */
+    private void write(Batch b, Set<String> columns, ImportStats stats, BufferedWriter rejects) throws IOException, SQLException {
+        for (String[] r : b.rejected) reject(rejects, r[0], r[1], r[2], stats);
+        if (b.products.isEmpty()) return;
+
+        List<String[]> dbRejects = new ArrayList<>();
+        int[] created = new int[1];
+        tx.execute(cn -> {
+            dbRejects.clear();
+            List<Product> ok = b.products;
+            Savepoint sp = cn.setSavepoint();
+            try {
+                productDAO.upsertBatch(cn, b.products, columns); // đường nhanh: cả lô một batch
+            } catch (SQLException batchEx) {
+                if (TxTemplate.isRetryable(batchEx)) throw batchEx;
+                cn.rollback(sp);
+                ok = new ArrayList<>(b.products.size());
+                for (int i = 0; i < b.products.size(); i++) { // cô lập dòng lỗi (vd: supplier_id không tồn tại)
+                    Savepoint one = cn.setSavepoint();
+                    try {
+                        productDAO.upsertBatch(cn, List.of(b.products.get(i)), columns);
+                        cn.releaseSavepoint(one);
+                        ok.add(b.products.get(i));
+                    } catch (SQLException rowEx) {
+                        if (TxTemplate.isRetryable(rowEx)) throw rowEx;
+                        cn.rollback(one);
+                        String[] src = b.source.get(i);
+                        dbRejects.add(new String[] { src[0], rowEx.getMessage(), src[1] });
+                    }
+                }
+            }
+            List<String> skus = new ArrayList<>(ok.size());
+            for (Product p : ok) skus.add(p.getSku());
+            created[0] = productDAO.fanOutInventory(cn, skus);
+            return null;
+        });
+        for (String[] r : dbRejects) reject(rejects, r[0], r[1], r[2], stats);
+        stats.upserted += b.products.size() - dbRejects.size();
+        stats.inventoryRowsCreated += created[0];
+    }
+
+    private static void reject(BufferedWriter out, String line, String error, String row, ImportStats stats) throws IOException {
+        out.write(line + "," + CsvUtils.escape(error) + "," + CsvUtils.escape(row));
+        out.newLine();
+        stats.rejected++;
+    }
+}
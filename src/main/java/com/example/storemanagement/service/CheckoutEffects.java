@@ -0,0 +1,72 @@
+package com.example.storemanagement.service;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.example.storemanagement.dao.CustomerDAO;
+import com.example.storemanagement.dao.FinanceDAO;
+import com.example.storemanagement.dao.OrderDAO;
+import com.example.storemanagement.model.CheckoutOutbox;
+import com.example.storemanagement.model.FinanceReport;
+import com.example.storemanagement.model.OrderEvent;
+import com.example.storemanagement.model.PointsLedger;
+
+/**
+ * CheckoutEffects – áp dụng các tác động phụ của đơn đã chốt (mô tả bằng CheckoutOutbox):
+ *  - finance_reports (INCOME: Sales)
+ *  - customers.points (gộp theo khách hàng) + points_ledger
+ *  - order_events CREATED / CONFIRMED
+ * Dùng chung cho chế độ inline (OrderService, trong transaction chốt đơn)
+ * và chế độ outbox (OutboxWorker, trong transaction của worker). Mỗi loại ghi bằng một batch.
+ */
+class CheckoutEffects {
+
+    private final OrderDAO orderDAO = new OrderDAO();
+    private final FinanceDAO financeDAO = new FinanceDAO();
+    private final CustomerDAO customerDAO = new CustomerDAO();
+
+    void apply(Connection cn, List<CheckoutOutbox> effects) throws SQLException {
+        List<FinanceReport> finance = new ArrayList<>(effects.size());
+        Map<Long, Integer> pointsByCustomer = new LinkedHashMap<>();
+        List<PointsLedger> ledger = new ArrayList<>();
+        List<OrderEvent> events = new ArrayList<>(effects.size() * 2);
+
+        for (CheckoutOutbox e : effects) {
+            String ref = "Order #" + e.getOrderCode();
+            finance.add(new FinanceReport(null, e.getStoreId(), e.getReportDate(), FinanceReport.Type.INCOME,
+                    "Sales", e.getAmount(), ref, null));
+
+            int points = e.getPoints() == null ? 0 : e.getPoints();
+            if (e.getCustomerId() != null && points > 0) {
+                pointsByCustomer.merge(e.getCustomerId(), points, Integer::sum);
+                PointsLedger r = new PointsLedger();
+                r.setCustomerId(e.getCustomerId());
+                r.setOrderId(e.getOrderId());
+                r.setDelta(points);
+                r.setReason("PURCHASE");
+                r.setNote(ref);
+                ledger.add(r);
+            }
+
+            events.add(event(e.getOrderId(), "CREATED", e.getNote()));
+            events.add(event(e.getOrderId(), "CONFIRMED", e.getPaymentMethod()));
+        }
+
+        financeDAO.insertBatch(cn, finance);
+        customerDAO.addPoints(cn, pointsByCustomer);
+        orderDAO.insertPointsLedger(cn, ledger);
+        orderDAO.insertEvents(cn, events);
+    }
+
+    private static OrderEvent event(long orderId, String eventType, String note) {
+        OrderEvent e = new OrderEvent();
+        e.setOrderId(orderId);
+        e.setEventType(eventType);
+        e.setNote(note);
+        return e;
+    }
+}
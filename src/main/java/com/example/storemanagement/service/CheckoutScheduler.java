@@ -0,0 +1,158 @@
+package com.example.storemanagement.service;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.example.storemanagement.dao.DBConnection;
+
+/**
+ * CheckoutScheduler – hàng đợi chốt đơn theo cửa hàng, mỗi cửa hàng đúng một luồng ghi tại một thời điểm.
+ *
+ * - submit(...) đưa đơn vào hàng đợi của cửa hàng và trả về CompletableFuture&lt;orderId&gt; ngay.
+ * - Luồng ghi của cửa hàng lấy liên tiếp tối đa maxBatch đơn đang chờ và chốt chung bằng
+ *   OrderService.finalizeOrders(...) (group commit: một transaction / chunk, đơn lỗi được tách riêng).
+ * - Các đơn cùng cửa hàng không còn tranh khoá dòng inventory với nhau (không lock wait / deadlock);
+ *   hàng càng dồn thì lô càng lớn, chi phí commit được chia cho nhiều đơn hơn.
+ * - Luồng thực thi dùng chung một pool cố định (checkout.threads); một cửa hàng chỉ chiếm một luồng
+ *   khi có việc, nên số cửa hàng không làm tăng số luồng.
+ */
+public class CheckoutScheduler {
+
+    private static volatile CheckoutScheduler shared;
+
+    /** Scheduler dùng chung của ứng dụng (tạo khi dùng lần đầu; Main gọi shutdownShared() khi thoát). */
+    public static CheckoutScheduler getShared() {
+        CheckoutScheduler s = shared;
+        if (s == null) {
+            synchronized (CheckoutScheduler.class) {
+                if (shared == null) shared = new CheckoutScheduler(new OrderService());
+                s = shared;
+            }
+        }
+        return s;
+    }
+
+    public static void shutdownShared() {
+        CheckoutScheduler s;
+        synchronized (CheckoutScheduler.class) { s = shared; shared = null; }
+        if (s != null) s.shutdown();
+    }
+
+    private final OrderService orderService;
+    private final int maxBatch;
+    private final ExecutorService pool;
+    private final ConcurrentHashMap<Long, Lane> lanes = new ConcurrentHashMap<>();
+
+    public CheckoutScheduler(OrderService orderService) {
+        this(orderService,
+             DBConnection.getInstance().getIntProperty("checkout.threads", 4),
+             DBConnection.getInstance().getIntProperty("checkout.maxBatch", 50));
+    }
+
+    public CheckoutScheduler(OrderService orderService, int threads, int maxBatch) {
+        this.orderService = orderService;
+        this.maxBatch = Math.max(1, maxBatch);
+        AtomicInteger seq = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread t = new Thread(r, "checkout-writer-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** Đưa một đơn vào hàng đợi của cửa hàng; future hoàn tất với orderId hoặc lỗi của riêng đơn đó. */
+    public CompletableFuture<Long> submit(OrderService.OrderRequest request) {
+        Task task = new Task(request);
+        Lane lane = lanes.computeIfAbsent(request.storeId, k -> new Lane());
+        lane.queue.add(task);
+        schedule(lane);
+        return task.future;
+    }
+
+    public CompletableFuture<Long> submit(long storeId, Long customerId, List<OrderService.OrderItemInput> items,
+                                          BigDecimal discount, String note, String paymentMethod,
+                                          String requestKey) {
+        return submit(new OrderService.OrderRequest(storeId, customerId, items, discount, note, paymentMethod, requestKey));
+    }
+
+    /** Dừng nhận việc: lô đang ghi được hoàn tất (chờ tối đa 10 giây), đơn còn chờ nhận lỗi qua future. */
+    public void shutdown() {
+        pool.shutdown();
+        try { pool.awaitTermination(10, TimeUnit.SECONDS); } catch (InterruptedException ie) { Thread.currentThread().interrupt(); }
+        for (Lane lane : lanes.values()) {
+            Task t;
+            while ((t = lane.queue.poll()) != null)
+                t.future.completeExceptionally(new SQLException("Checkout scheduler đã dừng"));
+        }
+    }
+
+    /** Số đơn đang chờ trong hàng đợi của cửa hàng. */
+    public int pending(long storeId) {
+        Lane lane = lanes.get(storeId);
+        return lane == null ? 0 : lane.queue.size();
+    }
+
+    /** Giao lane cho pool nếu chưa có luồng nào đang ghi cho cửa hàng này. */
+    private void schedule(Lane lane) {
+        if (!lane.running.compareAndSet(false, true)) return;
+        try {
+            pool.execute(() -> drain(lane));
+        } catch (RejectedExecutionException ex) {
+            lane.running.set(false);
+            Task t;
+            while ((t = lane.queue.poll()) != null)
+                t.future.completeExceptionally(new SQLException("Checkout scheduler đã dừng"));
+        }
+    }
+
+    /** Chạy một lượt: lấy tối đa maxBatch đơn, chốt chung, rồi nhường luồng (tránh một cửa hàng chiếm pool). */
+    private void drain(Lane lane) {
+        List<Task> batch = new ArrayList<>(maxBatch);
+        Task t;
+        while (batch.size() < maxBatch && (t = lane.queue.poll()) != null) batch.add(t);
+        try {
+            if (!batch.isEmpty()) write(batch);
+        } finally {
+            lane.running.set(false);
+            if (!lane.queue.isEmpty()) schedule(lane); // còn việc (hoặc vừa có đơn mới) → lượt kế tiếp
+        }
+    }
+
+    private void write(List<Task> batch) {
+        List<OrderService.OrderRequest> requests = new ArrayList<>(batch.size());
+        for (Task t : batch) requests.add(t.request);
+        try {
+            List<OrderService.OrderResult> results = orderService.finalizeOrders(requests, batch.size());
+            for (OrderService.OrderResult r : results) {
+                Task task = batch.get(r.index);
+                if (r.isSuccess()) task.future.complete(r.orderId);
+                else task.future.completeExceptionally(new SQLException(r.error));
+            }
+        } catch (Exception ex) {
+            for (Task task : batch) task.future.completeExceptionally(ex);
+        }
+    }
+
+    /** Hàng đợi + cờ "đang có luồng ghi" của một cửa hàng. */
+    private static final class Lane {
+        final ConcurrentLinkedQueue<Task> queue = new ConcurrentLinkedQueue<>();
+        final AtomicBoolean running = new AtomicBoolean();
+    }
+
+    private static final class Task {
+        final OrderService.OrderRequest request;
+        final CompletableFuture<Long> future = new CompletableFuture<>();
+        Task(OrderService.OrderRequest request) { this.request = request; }
+    }
+}
@@ -22,6 +22,7 @@ import com.example.storemanagement.model.Customer;              // POJO Customer
 public class CustomerService {                                  // Lớp Service: trung gian giữa Controller/UI và DAO
 
     private final CustomerDAO customerDAO = new CustomerDAO();  // Khởi tạo DAO (có thể inject sau này)
+    private final TxTemplate tx = TxTemplate.getDefault();      // Transaction + thử lại lỗi tạm thời (deadlock/lock wait)
 
     // Regex đơn giản – có thể thay bằng validator xịn hơn sau này
     private static final Pattern EMAIL_RE = Pattern.compile("^[^@\n]+@[^@\n]+\\.[^@\n]+$"); // Email tối giản: có @ và dấu chấm sau domain
@@ -89,13 +90,9 @@ public class CustomerService {                                  // Lớp Service
 
     /** Cộng/trừ điểm tích luỹ (delta âm hoặc dương) */
     public void adjustPoints(long customerId, int delta) throws SQLException {
-        // Đơn giản: đọc hiện tại và cập nhật, đảm bảo không âm
-        Customer c = customerDAO.findById(customerId)                                      // Tìm khách theo ID
-                .orElseThrow(() -> new SQLException("Không tìm thấy khách hàng"));        // Không có → ném lỗi rõ ràng
-        int now = c.getPoints() == null ? 0 : c.getPoints();                                // Điểm hiện tại (nếu null coi như 0)
-        int next = Math.max(0, now + delta);                                               // Không cho phép âm
-        c.setPoints(next);                                                                  // Gán điểm mới
-        customerDAO.update(c);                                                              // Lưu vào DB
+        // Một câu UPDATE points = GREATEST(0, points + delta): không mất cập nhật khi nhiều nơi cùng cộng điểm
+        boolean found = tx.execute(cn -> customerDAO.addPoints(cn, customerId, delta));    // Thử lại nếu deadlock/lock wait
+        if (!found) throw new SQLException("Không tìm thấy khách hàng");                   // Không có → ném lỗi rõ ràng
     }
 
     // ===================== VALIDATION =====================
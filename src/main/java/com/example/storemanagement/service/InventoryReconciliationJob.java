@@ -0,0 +1,209 @@
+package com.example.storemanagement.service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import com.example.storemanagement.dao.DBConnection;
+import com.example.storemanagement.dao.InventoryReconcileDAO;
+import com.example.storemanagement.dao.StockMoveTailer;
+
+/**
+ * InventoryReconciliationJob – đối soát inventory với SUM(stock_moves) cho toàn bộ cửa hàng, song song.
+ *
+ * Công việc được chia thành các ô (cửa hàng × khoảng chunkProducts product_id) và chạy trên pool
+ * inventory.reconcile.threads luồng; mỗi ô là một câu SELECT consistent read (InventoryReconcileDAO.diffRange)
+ * nên không khoá bảng đang bán hàng, bộ nhớ chỉ giữ kết quả của các ô đang chạy.
+ * Ô lệch được ghi ra file báo cáo CSV; khi apply = true, ô lệch được sửa bằng dòng ADJUST (một transaction
+ * TxTemplate / ô, chỉ khoá các dòng inventory lệch). Tiến độ + thông lượng báo qua progress tối đa mỗi progressMs.
+ */
+public class InventoryReconciliationJob {
+
+    private final InventoryReconcileDAO dao = new InventoryReconcileDAO();
+    private final TxTemplate tx = TxTemplate.getDefault();
+    private final int threads;
+    private final int chunkProducts;
+    private final long progressMs;
+
+    public InventoryReconciliationJob() {
+        this(DBConnection.getInstance().getIntProperty("inventory.reconcile.threads", 4),
+             DBConnection.getInstance().getIntProperty("inventory.reconcile.chunkProducts", 2000),
+             DBConnection.getInstance().getLongProperty("inventory.reconcile.progressMs", 2000));
+    }
+
+    public InventoryReconciliationJob(int threads, int chunkProducts, long progressMs) {
+        this.threads = Math.max(1, threads);
+        this.chunkProducts = Math.max(1, chunkProducts);
+        this.progressMs = Math.max(0, progressMs);
+    }
+
+    /** Thống kê (tiến độ) một lần đối soát. */
+    public static class ReconcileStats {
+        public int stores;
+        public long rangesTotal;
+        public long rangesDone;
+        public long movesScanned;
+        public long cellsCompared;
+        public long drifted;
+        public long adjusted;
+        public long skipped; // lệch nhưng không sửa: đã đổi kể từ lúc quét hoặc inventory âm
+        public long elapsedMs;
+
+        public double movesPerSecond() { return elapsedMs == 0 ? movesScanned : movesScanned * 1000.0 / elapsedMs; }
+
+        @Override
+        public String toString() {
+            return String.format("Inventory reconcile: stores=%d ranges=%d/%d moves=%d cells=%d drifted=%d adjusted=%d"
+                    + " skipped=%d in %dms (%.0f moves/s)", stores, rangesDone, rangesTotal, movesScanned, cellsCompared,
+                    drifted, adjusted, skipped, elapsedMs, movesPerSecond());
+        }
+    }
+
+    /** Bộ đếm dùng chung giữa các luồng; snapshot() tạo ReconcileStats để báo cáo. */
+    private static final class Counters {
+        final long started = System.nanoTime();
+        int stores;
+        long rangesTotal;
+        final LongAdder rangesDone = new LongAdder();
+        final LongAdder moves = new LongAdder();
+        final LongAdder cells = new LongAdder();
+        final LongAdder drifted = new LongAdder();
+        final LongAdder adjusted = new LongAdder();
+        final LongAdder skipped = new LongAdder();
+        final AtomicLong lastReport = new AtomicLong(System.nanoTime());
+
+        ReconcileStats snapshot() {
+            ReconcileStats s = new ReconcileStats();
+            s.stores = stores;
+            s.rangesTotal = rangesTotal;
+            s.rangesDone = rangesDone.sum();
+            s.movesScanned = moves.sum();
+            s.cellsCompared = cells.sum();
+            s.drifted = drifted.sum();
+            s.adjusted = adjusted.sum();
+            s.skipped = skipped.sum();
+            s.elapsedMs = (System.nanoTime() - started) / 1_000_000;
+            return s;
+        }
+    }
+
+    /**
+     * Đối soát toàn bộ; ô lệch ghi vào reportFile (ghi đè): store_id,product_id,ledger_qty,inventory_qty,correction,action.
+     * apply = false → chỉ báo cáo (action REPORTED). progress có thể null.
+     */
+    public ReconcileStats run(Path reportFile, boolean apply, Consumer<ReconcileStats> progress)
+            throws IOException, SQLException {
+        Counters c = new Counters();
+        List<Long> stores;
+        long maxProductId;
+        try (Connection cn = DBConnection.getInstance().getConnection()) {
+            stores = dao.storeIds(cn);
+            maxProductId = dao.maxProductId(cn);
+        }
+        c.stores = stores.size();
+        c.rangesTotal = (long) stores.size() * ((maxProductId + chunkProducts - 1) / chunkProducts);
+
+        AtomicInteger seq = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "inventory-reconcile-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        String note = StockMoveTailer.RECONCILE_NOTE_PREFIX + LocalDate.now(); // tailer bỏ qua → bản sao trong bộ nhớ không đổi
+        try (BufferedWriter report = Files.newBufferedWriter(reportFile, StandardCharsets.UTF_8)) {
+            report.write("store_id,product_id,ledger_qty,inventory_qty,correction,action");
+            report.newLine();
+            List<Future<?>> tasks = new ArrayList<>();
+            // Khoảng product_id là vòng ngoài → các luồng chạy trên nhiều cửa hàng cùng lúc
+            for (long lo = 1; lo <= maxProductId; lo += chunkProducts) {
+                long from = lo, to = lo + chunkProducts;
+                for (long storeId : stores)
+                    tasks.add(pool.submit(() -> {
+                        reconcileRange(storeId, from, to, apply, note, report, c);
+                        return null;
+                    }));
+            }
+            for (Future<?> f : tasks) {
+                await(f);
+                if (progress != null && progressMs > 0) {
+                    long last = c.lastReport.get(), now = System.nanoTime();
+                    if (now - last >= progressMs * 1_000_000L && c.lastReport.compareAndSet(last, now))
+                        progress.accept(c.snapshot());
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        ReconcileStats stats = c.snapshot();
+        if (progress != null) progress.accept(stats);
+        return stats;
+    }
+
+    private void reconcileRange(long storeId, long from, long to, boolean apply, String note,
+                                BufferedWriter report, Counters c) throws SQLException {
+        InventoryReconcileDAO.RangeResult r;
+        try (Connection cn = DBConnection.getInstance().getConnection()) {
+            r = dao.diffRange(cn, storeId, from, to);
+        }
+        c.moves.add(r.movesScanned);
+        c.cells.add(r.cellsCompared);
+        c.drifted.add(r.drifts.size());
+
+        Set<Long> fixed = new HashSet<>();
+        if (apply && !r.drifts.isEmpty()) {
+            List<InventoryReconcileDAO.Drift> done = tx.execute(cn -> dao.applyCorrections(cn, storeId, r.drifts, note));
+            for (InventoryReconcileDAO.Drift d : done) fixed.add(d.productId);
+            c.adjusted.add(fixed.size());
+            c.skipped.add(r.drifts.size() - fixed.size());
+        }
+        if (!r.drifts.isEmpty()) {
+            StringBuilder sb = new StringBuilder();
+            for (InventoryReconcileDAO.Drift d : r.drifts) {
+                String action = !apply ? "REPORTED" : fixed.contains(d.productId) ? "ADJUSTED" : "SKIPPED";
+                sb.append(d.storeId).append(',').append(d.productId).append(',').append(d.ledgerQty).append(',')
+                  .append(d.inventoryQty == null ? "" : d.inventoryQty).append(',').append(d.correction()).append(',')
+                  .append(action).append(System.lineSeparator());
+            }
+            synchronized (report) {
+                try {
+                    report.write(sb.toString());
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }
+        }
+        c.rangesDone.increment();
+    }
+
+    private static void await(Future<?> f) throws IOException, SQLException {
+        try {
+            f.get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Bị ngắt khi đối soát tồn kho", ie);
+        } catch (ExecutionException ee) {
+            Throwable cause = ee.getCause();
+            if (cause instanceof SQLException sql) throw sql;
+            if (cause instanceof UncheckedIOException io) throw io.getCause();
+            throw new SQLException("Lỗi đối soát tồn kho: " + cause.getMessage(), cause);
+        }
+    }
+}
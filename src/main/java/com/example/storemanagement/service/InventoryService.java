@@ -13,16 +13,29 @@ import java.math.BigDecimal; // Dùng BigDecimal cho giá để chính xác số
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException; // Ném ngược ra cho UI/Controller hiển thị lỗi thân thiện
+import java.sql.Savepoint; // Cô lập dòng lỗi khi nhập hàng loạt
+import java.time.LocalDateTime; // Thời điểm tra tồn lịch sử
+import java.util.ArrayList; // Danh sách động
+import java.util.HashSet; // Tập sản phẩm bị ảnh hưởng
 import java.util.List; // Danh sách
+import java.util.Map; // productId → tồn
+import java.util.Set; // Tập không trùng
 import java.util.Optional; // Kết quả có/không có
 
 import com.example.storemanagement.dao.DBConnection;
+import com.example.storemanagement.dao.InventoryMatrix; // Tổng quan tồn kho trong bộ nhớ
+import com.example.storemanagement.dao.InventorySnapshotDAO; // Ảnh chụp tồn theo mốc thời gian
+import com.example.storemanagement.dao.LowStockMonitor; // Cảnh báo sắp hết hàng
 import com.example.storemanagement.dao.ProductDAO; // DAO tương tác DB (products, stock_moves, view)
+import com.example.storemanagement.dao.ReorderThresholdDAO; // Ngưỡng đặt hàng lại theo cửa hàng + sản phẩm
 import com.example.storemanagement.model.Product; // POJO Product
 
 public class InventoryService { // Lớp service trung gian giữa Controller và DAO
 
     private final ProductDAO productDAO = new ProductDAO(); // Khởi tạo DAO; sau này có thể thay bằng DI
+    private final InventorySnapshotDAO snapshotDAO = new InventorySnapshotDAO(); // Tra tồn tại thời điểm quá khứ
+    private final ReorderThresholdDAO thresholdDAO = new ReorderThresholdDAO(); // Ngưỡng cảnh báo tồn thấp
+    private final TxTemplate tx = TxTemplate.getDefault(); // Transaction + thử lại lỗi tạm thời (deadlock/lock wait)
 
     // ===================== Sản phẩm =====================
 
@@ -38,6 +51,12 @@ public class InventoryService { // Lớp service trung gian giữa Controller v
             ps.setLong(1, id);
             ps.executeUpdate();
         }
+        try {
+            InventoryMatrix.getInstance().addProduct(id); // Dòng inventory 0 không đi qua stock_moves → chèn ô tồn 0
+        } catch (SQLException ex) {
+            InventoryMatrix.getInstance().invalidate(); // Không đọc được ô mới → nạp lại toàn bộ ở lượt kế tiếp
+        }
+        syncMatrix();
 
         return id;
     }
@@ -46,11 +65,19 @@ public class InventoryService { // Lớp service trung gian giữa Controller v
         if (p.getId() == null)
             throw new IllegalArgumentException("Thiếu ID sản phẩm"); // Update phải có ID
         validateProduct(p, false); // Kiểm tra dữ liệu (không bắt buộc SKU trống nếu không đổi)
-        return productDAO.update(p); // Gọi DAO UPDATE
+        boolean updated = productDAO.update(p); // Gọi DAO UPDATE
+        syncMatrix(); // Tên/SKU/giá mới trên màn hình tồn kho (theo products.updated_at)
+        return updated;
     }
 
     public boolean deleteProduct(long id) throws SQLException { // Xóa sản phẩm theo ID
-        return productDAO.delete(id);
+        boolean deleted = productDAO.delete(id);
+        if (deleted) {
+            InventoryMatrix.getInstance().removeProduct(id); // ON DELETE CASCADE xoá inventory, không có stock_moves
+            LowStockMonitor.getInstance().invalidate(); // ... và reorder_thresholds của sản phẩm
+            syncMatrix();
+        }
+        return deleted;
     }
 
     public Optional<Product> findProductById(long id) throws SQLException { // Tìm sản phẩm theo ID
@@ -69,7 +96,12 @@ public class InventoryService { // Lớp service trung gian giữa Controller v
             throw new IllegalArgumentException("storeId/productId không hợp lệ"); // Kiểm tra id hợp lệ
         if (quantity <= 0)
             throw new IllegalArgumentException("Số lượng phải > 0"); // Kiểm tra số lượng dương
-        productDAO.importStock(storeId, productId, quantity, note); // Ghi stock_moves với move_type=IMPORT
+        tx.execute(cn -> { // Transaction + tự thử lại khi deadlock / lock wait timeout trên dòng inventory
+            productDAO.insertStockMove(cn, storeId, productId, "IMPORT", quantity, note); // Ghi stock_moves IMPORT
+            return null;
+        });
+        StockReservations.getInstance().invalidate(storeId, productId); // Tồn đổi ngoài luồng chốt đơn → đọc lại
+        syncMatrix();
     }
 
     public void exportStock(long storeId, long productId, int quantity, String note) throws SQLException { // Xuất kho
@@ -77,15 +109,146 @@ public class InventoryService { // Lớp service trung gian giữa Controller v
             throw new IllegalArgumentException("storeId/productId không hợp lệ"); // Kiểm tra id hợp lệ
         if (quantity <= 0)
             throw new IllegalArgumentException("Số lượng phải > 0"); // Kiểm tra số lượng dương
-        productDAO.exportStock(storeId, productId, quantity, note); // Ghi stock_moves với move_type=EXPORT; trigger DB
-                                                                    // sẽ trừ tồn
+        tx.execute(cn -> { // Transaction + tự thử lại khi deadlock / lock wait timeout trên dòng inventory
+            productDAO.insertStockMove(cn, storeId, productId, "EXPORT", quantity, note); // EXPORT; trigger DB trừ tồn,
+            return null;                                                                 // âm kho → lỗi (không thử lại)
+        });
+        StockReservations.getInstance().invalidate(storeId, productId); // Tồn đổi ngoài luồng chốt đơn → đọc lại
+        syncMatrix();
+    }
+
+    /**
+     * Nhận hàng loạt (phiếu nhập từ nhà cung cấp): mọi dòng hợp lệ được ghi trong MỘT transaction bằng JDBC batch.
+     * Nếu batch lỗi (vd: sản phẩm không tồn tại) → quay về savepoint rồi ghi từng dòng với savepoint riêng,
+     * dòng lỗi bị bỏ qua, dòng tốt vẫn được nhập. Kết quả cùng thứ tự với lines.
+     */
+    public List<ReceiveResult> receiveStock(long storeId, List<ProductDAO.StockMoveLine> lines) throws SQLException {
+        if (storeId <= 0)
+            throw new IllegalArgumentException("storeId không hợp lệ");
+        if (lines == null || lines.isEmpty())
+            return List.of();
+        ReceiveResult[] results = new ReceiveResult[lines.size()];
+        List<Integer> validIdx = new ArrayList<>(lines.size()); // Vị trí các dòng hợp lệ
+        for (int i = 0; i < lines.size(); i++) { // Kiểm tra dữ liệu từng dòng, không chạm DB
+            ProductDAO.StockMoveLine l = lines.get(i);
+            if (l == null || l.productId <= 0)
+                results[i] = new ReceiveResult(i, false, "productId không hợp lệ");
+            else if (l.quantity <= 0)
+                results[i] = new ReceiveResult(i, false, "Số lượng phải > 0");
+            else
+                validIdx.add(i);
+        }
+
+        if (!validIdx.isEmpty()) {
+            List<ProductDAO.StockMoveLine> valid = new ArrayList<>(validIdx.size());
+            for (int i : validIdx)
+                valid.add(lines.get(i));
+            tx.execute(cn -> {
+                for (int i : validIdx)
+                    results[i] = new ReceiveResult(i, true, null); // Mặc định thành công (ghi đè lại mỗi lần thử)
+                Savepoint all = cn.setSavepoint();
+                try {
+                    productDAO.insertStockMoves(cn, storeId, "IMPORT", valid); // Đường nhanh: cả phiếu một batch
+                } catch (SQLException batchEx) {
+                    if (TxTemplate.isRetryable(batchEx))
+                        throw batchEx; // Deadlock/lock wait → để TxTemplate chạy lại cả phiếu
+                    cn.rollback(all);
+                    for (int i : validIdx) { // Cô lập dòng lỗi
+                        Savepoint one = cn.setSavepoint();
+                        try {
+                            productDAO.insertStockMoves(cn, storeId, "IMPORT", List.of(lines.get(i)));
+                            cn.releaseSavepoint(one);
+                        } catch (SQLException lineEx) {
+                            if (TxTemplate.isRetryable(lineEx))
+                                throw lineEx;
+                            cn.rollback(one);
+                            results[i] = new ReceiveResult(i, false, lineEx.getMessage());
+                        }
+                    }
+                }
+                return null;
+            });
+            Set<Long> touched = new HashSet<>();
+            for (ProductDAO.StockMoveLine l : valid)
+                touched.add(l.productId);
+            StockReservations.getInstance().invalidate(storeId, touched); // Tồn tăng → đọc lại khi giữ chỗ
+            syncMatrix();
+        }
+        return List.of(results);
+    }
+
+    // Kết quả từng dòng của receiveStock(...)
+    public static class ReceiveResult {
+        public final int index;
+        public final boolean success;
+        public final String error;
+
+        ReceiveResult(int index, boolean success, String error) {
+            this.index = index;
+            this.success = success;
+            this.error = error;
+        }
     }
 
     public List<ProductDAO.InventoryOverview> getInventoryOverview(Long storeId, Long supplierId, String keyword,
             int page, int pageSize) throws SQLException {
+        InventoryMatrix matrix = InventoryMatrix.getInstance();
+        if (matrix.isEnabled()) // Ma trận tồn trong bộ nhớ (bám đuôi stock_moves), không JOIN mỗi lần lọc/đổi trang
+            return matrix.query(storeId, supplierId, keyword, page, pageSize);
         return productDAO.getInventoryOverview(storeId, supplierId, keyword, page, pageSize);
     }
 
+    /**
+     * Tồn của một sản phẩm tại cửa hàng ngay trước thời điểm at (stock_moves có created_at < at), tính từ ảnh chụp
+     * tồn gần nhất + delta sau đó. Vd: tồn cuối ngày 31/03 = stockAt(store, product, 01/04 00:00).
+     */
+    public int stockAt(long storeId, long productId, LocalDateTime at) throws SQLException {
+        if (at == null)
+            throw new IllegalArgumentException("Thiếu thời điểm cần tra tồn");
+        try (Connection cn = DBConnection.getInstance().getConnection()) {
+            return snapshotDAO.stockAt(cn, storeId, productId, at);
+        }
+    }
+
+    /** Tồn mọi sản phẩm của cửa hàng ngay trước at: productId → quantity (tồn 0 không có trong map). */
+    public Map<Long, Integer> stockAt(long storeId, LocalDateTime at) throws SQLException {
+        if (at == null)
+            throw new IllegalArgumentException("Thiếu thời điểm cần tra tồn");
+        try (Connection cn = DBConnection.getInstance().getConnection()) {
+            return snapshotDAO.stockAt(cn, storeId, at);
+        }
+    }
+
+    // ===================== Ngưỡng tồn thấp =====================
+
+    /** Đặt ngưỡng đặt hàng lại: tồn ≤ minQty → LowStockMonitor phát sự kiện LOW. */
+    public void setReorderThreshold(long storeId, long productId, int minQty) throws SQLException {
+        if (minQty < 0)
+            throw new IllegalArgumentException("Ngưỡng tồn tối thiểu không hợp lệ");
+        tx.execute(cn -> {
+            thresholdDAO.upsert(cn, storeId, productId, minQty);
+            return null;
+        });
+        LowStockMonitor.getInstance().invalidate(); // Bảng theo dõi dựng lại ở lượt kế tiếp
+    }
+
+    /** Bỏ theo dõi tồn thấp của sản phẩm tại cửa hàng. */
+    public boolean removeReorderThreshold(long storeId, long productId) throws SQLException {
+        boolean removed = tx.execute(cn -> thresholdDAO.delete(cn, storeId, productId));
+        if (removed)
+            LowStockMonitor.getInstance().invalidate();
+        return removed;
+    }
+
+    // Ghi kho đã commit → áp dụng ngay vào ma trận tồn để màn hình thấy kết quả; lỗi chỉ làm chậm tới lượt bám đuôi kế
+    private void syncMatrix() {
+        try {
+            InventoryMatrix.getInstance().catchUp();
+        } catch (SQLException ex) {
+            System.err.println("[InventoryService] Không cập nhật được ma trận tồn: " + ex.getMessage());
+        }
+    }
+
     // ===================== VALIDATION =====================
 
     private void validateProduct(Product p, boolean creating) { // Kiểm tra dữ liệu sản phẩm trước khi ghi DB
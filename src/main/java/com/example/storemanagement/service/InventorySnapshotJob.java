@@ -0,0 +1,100 @@
+package com.example.storemanagement.service;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.example.storemanagement.dao.DBConnection;
+import com.example.storemanagement.dao.InventorySnapshotDAO;
+
+/**
+ * InventorySnapshotJob – luồng nền tạo ảnh chụp tồn kho hằng ngày (mốc 00:00 giờ máy) vào inventory_snapshots.
+ *
+ * Mỗi lượt (inventory.snapshotCheckMs): mốc đích = nửa đêm gần nhất đã qua ít nhất inventory.snapshotGraceMs
+ * (chờ transaction ghi stock_moves commit muộn); tạo lần lượt các mốc còn thiếu từ ảnh chụp mới nhất, mỗi mốc một
+ * transaction và chỉ cộng delta của một ngày. Chưa có ảnh chụp nào → chỉ tạo mốc đích (cộng toàn bộ lịch sử một lần).
+ * Nhiều instance cùng chạy: UNIQUE(cutoff_at) chặn trùng, instance thua bỏ qua.
+ * Ảnh chụp ngày cũ hơn inventory.snapshotKeepDailyDays bị xoá, mốc đầu tháng (tồn cuối tháng trước) được giữ.
+ */
+public class InventorySnapshotJob {
+
+    private final InventorySnapshotDAO snapshotDAO = new InventorySnapshotDAO();
+    private final TxTemplate tx = TxTemplate.getDefault();
+    private final long checkIntervalMs;
+    private final long graceMs;
+    private final int keepDailyDays;
+    private ScheduledExecutorService scheduler;
+
+    public InventorySnapshotJob() {
+        this(DBConnection.getInstance().getLongProperty("inventory.snapshotCheckMs", 3600000),
+             DBConnection.getInstance().getLongProperty("inventory.snapshotGraceMs", 600000),
+             DBConnection.getInstance().getIntProperty("inventory.snapshotKeepDailyDays", 62));
+    }
+
+    public InventorySnapshotJob(long checkIntervalMs, long graceMs, int keepDailyDays) {
+        this.checkIntervalMs = Math.max(60_000, checkIntervalMs);
+        this.graceMs = Math.max(0, graceMs);
+        this.keepDailyDays = keepDailyDays;
+    }
+
+    /** true nếu bật job ảnh chụp tồn (Main dựa vào đây để khởi động). */
+    public static boolean isEnabled() {
+        return Boolean.parseBoolean(DBConnection.getInstance().getProperty("inventory.snapshots", "true"));
+    }
+
+    public synchronized void start() {
+        if (scheduler != null) return;
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "inventory-snapshot");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                runOnce();
+            } catch (SQLException | RuntimeException ex) {
+                System.err.println("[InventorySnapshotJob] Lỗi tạo ảnh chụp tồn kho: " + ex.getMessage());
+            }
+        }, 0, checkIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (scheduler == null) return;
+        scheduler.shutdownNow();
+        scheduler = null;
+    }
+
+    /** Tạo các ảnh chụp còn thiếu tới mốc đích; trả về số ảnh chụp đã tạo. */
+    public int runOnce() throws SQLException {
+        LocalDateTime target = LocalDateTime.now().minusNanos(graceMs * 1_000_000L).toLocalDate().atStartOfDay();
+        Optional<InventorySnapshotDAO.Snapshot> latest = tx.execute(snapshotDAO::findLatest);
+        LocalDateTime next = latest.map(s -> s.cutoffAt.toLocalDate().plusDays(1).atStartOfDay()).orElse(target);
+        int created = 0;
+        while (!next.isAfter(target)) {
+            LocalDateTime cutoff = next;
+            try {
+                // READ COMMITTED: INSERT ... SELECT không giữ shared lock trên stock_moves đang nhận bán hàng
+                int lines = tx.execute(Connection.TRANSACTION_READ_COMMITTED, cn -> {
+                    // Đọc lại ảnh chụp trước trong cùng transaction: có thể instance khác vừa tạo mốc mới hơn
+                    Optional<InventorySnapshotDAO.Snapshot> prev = snapshotDAO.findLatestAtOrBefore(cn, cutoff);
+                    if (prev.isPresent() && prev.get().cutoffAt.equals(cutoff)) return -1;
+                    return snapshotDAO.createSnapshot(cn, cutoff, prev.orElse(null));
+                });
+                if (lines >= 0) created++;
+            } catch (SQLException ex) {
+                if (ex.getErrorCode() != 1062) throw ex; // trùng mốc: instance khác đã tạo
+            }
+            next = next.plusDays(1);
+        }
+        if (keepDailyDays > 0) {
+            LocalDateTime before = LocalDate.now().minusDays(keepDailyDays).atStartOfDay();
+            tx.execute(cn -> snapshotDAO.pruneDaily(cn, before));
+        }
+        return created;
+    }
+}
@@ -0,0 +1,14 @@
+package com.example.storemanagement.service;
+
+import java.sql.SQLException;
+
+/**
+ * Cấp mã đơn hàng (orders.order_code). OrderService nhận một allocator qua constructor
+ * nên có thể thay chiến lược (theo khối, theo máy POS, ...) mà không đụng tới luồng chốt đơn.
+ * Cài đặt phải an toàn đa luồng và không bao giờ trả về mã trùng.
+ * OrderService gọi nextCode trước khi mở transaction chốt đơn, nên cài đặt được phép tự lấy kết nối pool.
+ */
+public interface OrderCodeAllocator {
+
+    String nextCode(long storeId) throws SQLException;
+}
@@ -2,13 +2,26 @@ package com.example.storemanagement.service;
 
 import java.math.BigDecimal;
 import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLTransientConnectionException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import com.example.storemanagement.dao.DBConnection;
 import com.example.storemanagement.dao.OrderDAO;
+import com.example.storemanagement.dao.OutboxDAO;
+import com.example.storemanagement.dao.PriceCache;
+import com.example.storemanagement.dao.ProductDAO;
+import com.example.storemanagement.model.CheckoutOutbox;
+import com.example.storemanagement.model.Order;
+import com.example.storemanagement.model.OrderItem;
+import com.example.storemanagement.model.OrderPage;
+import com.example.storemanagement.util.LruCache;
 import com.example.storemanagement.util.PointPolicy;
 
 /**
@@ -18,154 +31,443 @@ import com.example.storemanagement.util.PointPolicy;
  *  3) Ghi finance_reports (INCOME: Sales)
  *  4) Cộng điểm customers + ghi points_ledger
  *  5) Ghi order_events (CREATED/CONFIRMED/PAID tuỳ bạn)
+ *
+ * Số câu lệnh không phụ thuộc số dòng hàng: giá lấy từ PriceCache (chỉ sản phẩm chưa cache mới đọc bằng 1 truy vấn IN (...)),
+ * order_items / order_events / points_ledger ghi bằng JDBC batch.
+ *
+ * Chế độ tính tổng tiền (khoá orders.totals trong db.properties):
+ *  - trigger (mặc định): trg_items_after_insert cộng lại SUM(line_total) sau mỗi dòng, service đọc lại subtotal.
+ *  - app: service tự tính subtotal từ giá đã đọc và ghi orders.total_amount một lần khi tạo order.
+ *    Dùng kèm database/schema_app_totals.sql (bỏ phần re-sum trong trigger) để tránh chi phí O(n²).
+ *
+ * finalizeOrders(...) nhận nhiều đơn (vd: POS đồng bộ hàng đợi offline), gộp mỗi chunk vào một transaction
+ * và ghi chung batch; nếu chunk lỗi thì chạy lại từng đơn riêng để đơn lỗi không kéo đơn khác rollback theo.
+ *
+ * Tác động phụ (bước 3–5, khoá orders.sideEffects):
+ *  - inline (mặc định): ghi ngay trong transaction chốt đơn.
+ *  - outbox: chỉ ghi 1 dòng checkout_outbox / đơn trong cùng commit; OutboxWorker áp dụng sau.
+ *    Transaction chốt đơn khi đó chỉ gồm order, items và xuất kho → giữ khoá inventory/customers ngắn hơn.
+ *
+ * Ghi tồn kho (khoá inventory.posting): trigger (mặc định) hoặc app – service gộp xuất kho của cả nhóm đơn
+ * và ProductDAO.postStockMoves trừ tồn bằng câu nhiều dòng (kèm database/schema_app_inventory.sql).
+ *
+ * Giữ chỗ tồn kho (StockReservations, khoá inventory.reservations): trước khi mở transaction, cả giỏ được
+ * kiểm tra + giữ trong bộ nhớ; giỏ thiếu hàng bị từ chối ngay thay vì đợi trigger báo âm kho rồi rollback.
+ *
+ * Idempotency (requestKey): POS gửi kèm khoá duy nhất cho mỗi lần bấm "chốt"; gửi lại sau timeout trả về
+ * orderId cũ, không ghi lại gì. Tra cache LRU trong bộ nhớ (orders.requestKeyCacheSize) trước; khoá mới thì
+ * ghi thẳng (không thêm round trip) và để UNIQUE uq_orders_request_key chặn trùng – khi trùng mới đọc lại DB.
  */
 public class OrderService {
 
+    /** Nơi tính orders.total_amount khi chốt đơn. */
+    public enum TotalsMode { TRIGGER, APP }
+
+    // Một allocator cho cả ứng dụng: khối mã giữ trước được dùng chung giữa các màn hình/luồng
+    private static final OrderCodeAllocator SHARED_CODE_ALLOCATOR = new BlockOrderCodeAllocator();
+
+    // Khoá idempotency → orderId của các đơn đã commit gần đây (dùng chung mọi instance OrderService)
+    private static final LruCache<String, Long> RECENT_REQUEST_KEYS = new LruCache<>(
+            DBConnection.getInstance().getIntProperty("orders.requestKeyCacheSize", 10000));
+
     private final OrderDAO orderDAO = new OrderDAO();
+    private final ProductDAO productDAO = new ProductDAO();
+    private final PriceCache priceCache = PriceCache.getInstance();
+    private final StockReservations reservations = StockReservations.getInstance();
+    private final OutboxDAO outboxDAO = new OutboxDAO();
+    private final CheckoutEffects effects = new CheckoutEffects();
+    private final TxTemplate tx = TxTemplate.getDefault();
+    private final TotalsMode totalsMode;
+    private final OrderCodeAllocator codeAllocator;
+    private final boolean useOutbox;
+    private final int bulkChunkSize;
+
+    public OrderService() {
+        this(DBConnection.getInstance().getEnumProperty("orders.totals", TotalsMode.TRIGGER));
+    }
+
+    public OrderService(TotalsMode totalsMode) {
+        this(totalsMode, SHARED_CODE_ALLOCATOR);
+    }
+
+    public OrderService(TotalsMode totalsMode, OrderCodeAllocator codeAllocator) {
+        this.totalsMode = totalsMode;
+        this.codeAllocator = codeAllocator;
+        this.useOutbox = OutboxWorker.isEnabled();
+        this.bulkChunkSize = DBConnection.getInstance().getIntProperty("orders.bulkChunkSize", 50);
+    }
 
     // DTO input tối giản cho 1 dòng hàng
     public static class OrderItemInput {
         public long productId; public int quantity; public OrderItemInput(long p, int q){this.productId=p;this.quantity=q;}
     }
 
+    // DTO input cho 1 đơn trong finalizeOrders(...)
+    public static class OrderRequest {
+        public long storeId; public Long customerId; public List<OrderItemInput> items;
+        public BigDecimal discount; public String note; public String paymentMethod;
+        public String requestKey; // khoá idempotency (null = không chống gửi lặp)
+        public OrderRequest(long storeId, Long customerId, List<OrderItemInput> items,
+                            BigDecimal discount, String note, String paymentMethod) {
+            this(storeId, customerId, items, discount, note, paymentMethod, null);
+        }
+        public OrderRequest(long storeId, Long customerId, List<OrderItemInput> items,
+                            BigDecimal discount, String note, String paymentMethod, String requestKey) {
+            this.storeId = storeId; this.customerId = customerId; this.items = items;
+            this.discount = discount; this.note = note; this.paymentMethod = paymentMethod;
+            this.requestKey = requestKey;
+        }
+    }
+
+    // Kết quả cho từng đơn trong finalizeOrders(...) – cùng thứ tự với danh sách đầu vào
+    public static class OrderResult {
+        public final int index; public final Long orderId; public final String error;
+        OrderResult(int index, Long orderId, String error) { this.index = index; this.orderId = orderId; this.error = error; }
+        public boolean isSuccess() { return orderId != null; }
+    }
+
     /**
      * Finalize order và trả về orderId.
      */
     public long finalizeOrder(long storeId, Long customerId, List<OrderItemInput> items,
                               BigDecimal discount, String note, String paymentMethod) throws SQLException {
-        if (items == null || items.isEmpty()) throw new IllegalArgumentException("Danh sách hàng trống");
-        if (discount == null) discount = BigDecimal.ZERO;
-        if (discount.signum() < 0) throw new IllegalArgumentException("Discount không hợp lệ");
+        return finalizeOrder(storeId, customerId, items, discount, note, paymentMethod, null);
+    }
+
+    /**
+     * Finalize order kèm khoá idempotency: gọi lại với cùng requestKey trả về orderId của lần chốt trước
+     * mà không ghi lại đơn, xuất kho hay cộng điểm.
+     */
+    public long finalizeOrder(long storeId, Long customerId, List<OrderItemInput> items,
+                              BigDecimal discount, String note, String paymentMethod,
+                              String requestKey) throws SQLException {
+        PendingOrder p = prepare(new OrderRequest(storeId, customerId, items, discount, note, paymentMethod, requestKey));
+        if (requestKey != null) {
+            Long cached = RECENT_REQUEST_KEYS.get(requestKey);
+            if (cached != null) return cached;
+        }
+        assignCode(p);
+        reserve(p); // thiếu hàng → từ chối tại đây, chưa chạm transaction
 
-        Connection cn = DBConnection.getInstance().getConnection();
-        boolean oldAuto = cn.getAutoCommit();
-        cn.setAutoCommit(false); // bắt đầu TRANSACTION
         try {
-            // 1) Insert ORDER (subtotal tạm 0, discount lưu riêng)
-            com.example.storemanagement.model.Order o = new com.example.storemanagement.model.Order();
-            o.setOrderCode(genOrderCode());
-            o.setStoreId(storeId);
-            o.setCustomerId(customerId);
-            o.setTotalAmount(BigDecimal.ZERO); // sẽ được trigger cập nhật sau khi có items
-            o.setDiscount(discount);
-            o.setStatus(com.example.storemanagement.model.Order.Status.CONFIRMED);
-            o.setNote(note);
-            long orderId = orderDAO.insertOrder(cn, o);
-
-            // 2) Insert ITEMS (đọc unit_price từ products tại thời điểm chốt)
-            for (OrderItemInput in : items) {
-                BigDecimal unitPrice = readProductPrice(cn, in.productId);
-                insertOrderItem(cn, orderId, in.productId, in.quantity, unitPrice);
+            // Deadlock / lock wait timeout → TxTemplate rollback rồi chạy lại cả đơn (reset trạng thái mỗi lần)
+            long orderId = tx.execute(cn -> {
+                p.reset();
+                writeOrders(cn, List.of(p));
+                return p.order.getId();
+            });
+            p.hold.commit();
+            remember(p);
+            return orderId;
+        } catch (SQLException ex) {
+            releaseFailed(p);
+            if (OrderDAO.isDuplicateRequestKey(ex)) {
+                try (Connection cn = DBConnection.getInstance().getConnection()) {
+                    Long existing = existingOrderId(cn, requestKey); // đã chốt trước đó (cache bị đẩy ra / instance khác)
+                    if (existing != null) return existing;
+                }
             }
+            throw ex;
+        } catch (RuntimeException ex) {
+            releaseFailed(p);
+            throw new SQLException("Finalize order thất bại: " + ex.getMessage(), ex);
+        }
+    }
 
-            // Lấy SUBTOTAL do trigger đã tính xong
-            BigDecimal subtotal = orderDAO.getSubtotal(cn, orderId);
-            if (subtotal == null) subtotal = BigDecimal.ZERO;
-            BigDecimal grandTotal = subtotal.subtract(discount);
-            if (grandTotal.signum() < 0) grandTotal = BigDecimal.ZERO;
-
-            // 3) Ghi FINANCE (INCOME: Sales)
-            insertFinanceIncome(cn, storeId, grandTotal, "Sales", "Order #" + o.getOrderCode());
-
-            // 4) Cộng điểm (nếu có khách hàng)
-            if (customerId != null) {
-                int points = PointPolicy.calcPoints(grandTotal);
-                if (points > 0) {
-                    addCustomerPoints(cn, customerId, points);
-                    insertPointsLedger(cn, customerId, orderId, points, "PURCHASE", "Order #" + o.getOrderCode());
+    /** Chốt nhiều đơn, chunk mặc định theo orders.bulkChunkSize trong db.properties. */
+    public List<OrderResult> finalizeOrders(List<OrderRequest> requests) throws SQLException {
+        return finalizeOrders(requests, bulkChunkSize);
+    }
+
+    /**
+     * Chốt nhiều đơn: mỗi chunk (tối đa chunkSize đơn) là một transaction, mọi INSERT/UPDATE của cả chunk
+     * được gộp batch. Nếu chunk thất bại (vd: một đơn làm âm kho) → rollback chunk rồi chốt lại từng đơn
+     * trong transaction riêng, nên chỉ đơn lỗi bị từ chối.
+     * Lỗi dữ liệu đầu vào (giỏ trống, số lượng ≤ 0, ...) được ghi vào kết quả mà không cần chạm DB.
+     * Mỗi lần ghi (chunk hoặc từng đơn) chạy qua TxTemplate nên deadlock / lock wait timeout được thử lại có backoff.
+     * SQLException chỉ ném ra khi không lấy được kết nối.
+     */
+    public List<OrderResult> finalizeOrders(List<OrderRequest> requests, int chunkSize) throws SQLException {
+        if (requests == null || requests.isEmpty()) return List.of();
+        if (chunkSize <= 0) chunkSize = 1;
+        OrderResult[] results = new OrderResult[requests.size()];
+
+        List<PendingOrder> valid = new ArrayList<>(requests.size());
+        Map<String, Integer> firstByKey = new HashMap<>(); // cùng khoá lặp trong 1 lô → chỉ ghi lần đầu
+        List<int[]> repeats = new ArrayList<>();           // {index lặp, index gốc}
+        try {
+            for (int i = 0; i < requests.size(); i++) {
+                try {
+                    PendingOrder p = prepare(requests.get(i));
+                    p.index = i;
+                    String key = p.req.requestKey;
+                    if (key != null) {
+                        Long cached = RECENT_REQUEST_KEYS.get(key);
+                        if (cached != null) { results[i] = new OrderResult(i, cached, null); continue; }
+                        Integer first = firstByKey.putIfAbsent(key, i);
+                        if (first != null) { repeats.add(new int[] { i, first }); continue; }
+                    }
+                    assignCode(p);
+                    reserve(p);
+                    valid.add(p);
+                } catch (IllegalArgumentException | SQLException ex) {
+                    results[i] = new OrderResult(i, null, ex.getMessage());
                 }
             }
 
-            // 5) Log events
-            insertOrderEvent(cn, orderId, "CREATED", null, note);
-            insertOrderEvent(cn, orderId, "CONFIRMED", null, paymentMethod);
-
-            cn.commit();
-            return orderId;
-        } catch (Exception ex) {
-            cn.rollback();
-            if (ex instanceof SQLException) throw (SQLException) ex;
-            throw new SQLException("Finalize order thất bại: " + ex.getMessage(), ex);
+            for (int from = 0; from < valid.size(); from += chunkSize) {
+                List<PendingOrder> chunk = valid.subList(from, Math.min(valid.size(), from + chunkSize));
+                String chunkErr = tryWrite(chunk);
+                if (chunkErr == null) {
+                    for (PendingOrder p : chunk) {
+                        p.hold.commit();
+                        remember(p);
+                        results[p.index] = new OrderResult(p.index, p.order.getId(), null);
+                    }
+                } else if (chunk.size() == 1) {
+                    PendingOrder p = chunk.get(0);
+                    releaseFailed(p);
+                    results[p.index] = failedOrExisting(p, chunkErr);
+                } else {
+                    // Tách lỗi: chạy lại từng đơn trong transaction riêng
+                    for (PendingOrder p : chunk) {
+                        String err = tryWrite(List.of(p));
+                        if (err == null) {
+                            p.hold.commit();
+                            remember(p);
+                            results[p.index] = new OrderResult(p.index, p.order.getId(), null);
+                        } else {
+                            releaseFailed(p);
+                            results[p.index] = failedOrExisting(p, err);
+                        }
+                    }
+                }
+            }
         } finally {
-            cn.setAutoCommit(oldAuto);
+            // Hold chưa chốt (lỗi lấy kết nối, ngoại lệ giữa chừng) → trả lại; Hold đã commit/release bỏ qua lời gọi lặp
+            for (PendingOrder p : valid) p.hold.release();
         }
+        for (int[] r : repeats) results[r[0]] = new OrderResult(r[0], results[r[1]].orderId, results[r[1]].error);
+        return List.of(results);
     }
 
-    public List<com.example.storemanagement.model.Order> listOrdersByCustomer(long customerId, int page, int pageSize) throws SQLException {
+    public List<Order> listOrdersByCustomer(long customerId, int page, int pageSize) throws SQLException {
         try (Connection cn = DBConnection.getInstance().getConnection()) {
             return orderDAO.listByCustomer(cn, customerId, page, pageSize);
         }
     }
 
-    // ==================== Low-level helpers (trong chung 1 transaction) ====================
-    private String genOrderCode() { // ví dụ: ORD-2025-xxxxx
-        String ts = java.time.LocalDate.now().toString().replace("-", "");
-        String rnd = String.format("%05d", new java.util.Random().nextInt(100000));
-        return "ORD-" + ts + "-" + rnd;
+    /**
+     * Dòng hàng (kèm SKU, tên sản phẩm) của nhiều đơn cùng lúc – dùng cho danh sách đơn, in lại hoá đơn:
+     * số truy vấn không phụ thuộc số đơn trên trang.
+     */
+    public Map<Long, List<OrderItem>> getItemsForOrders(Collection<Long> orderIds) throws SQLException {
+        if (orderIds == null || orderIds.isEmpty()) return Map.of();
+        try (Connection cn = DBConnection.getInstance().getConnection()) {
+            return orderDAO.listItemsByOrders(cn, orderIds);
+        }
     }
 
-    private BigDecimal readProductPrice(Connection cn, long productId) throws SQLException {
-        String sql = "SELECT unit_price FROM products WHERE id=?";
-        try (PreparedStatement ps = cn.prepareStatement(sql)) {
-            ps.setLong(1, productId);
-            try (ResultSet rs = ps.executeQuery()) { if (rs.next()) return rs.getBigDecimal(1); }
+    /** Lịch sử đơn theo con trỏ: pageToken = null cho trang đầu, sau đó dùng OrderPage.getNextPageToken(). */
+    public OrderPage listOrdersByCustomer(long customerId, String pageToken, int pageSize) throws SQLException {
+        try (Connection cn = DBConnection.getInstance().getConnection()) {
+            return orderDAO.listByCustomerPage(cn, customerId, pageToken, pageSize);
         }
-        throw new SQLException("Không tìm thấy sản phẩm #" + productId);
     }
 
-    private void insertOrderItem(Connection cn, long orderId, long productId, int qty, BigDecimal unitPrice) throws SQLException {
-        if (qty <= 0) throw new IllegalArgumentException("Số lượng phải > 0");
-        String sql = "INSERT INTO order_items(order_id, product_id, quantity, unit_price) VALUES (?,?,?,?)";
-        try (PreparedStatement ps = cn.prepareStatement(sql)) {
-            ps.setLong(1, orderId);
-            ps.setLong(2, productId);
-            ps.setInt(3, qty);
-            ps.setBigDecimal(4, unitPrice);
-            ps.executeUpdate();
-        }
+    // ==================== Set-based writer (trong chung 1 transaction) ====================
+
+    /** Một đơn đã validate, đang chờ ghi; các trường tính toán được điền dần trong writeOrders(). */
+    private static class PendingOrder {
+        final OrderRequest req;
+        int index;
+        Order order;
+        BigDecimal subtotal;
+        BigDecimal grandTotal;
+        int points;
+        StockReservations.Hold hold; // phần tồn kho đang giữ cho đơn (commit/release sau transaction)
+        String orderCode;            // cấp trước transaction, giữ nguyên qua các lần TxTemplate chạy lại
+        PendingOrder(OrderRequest req) { this.req = req; }
+        void reset() { order = null; subtotal = null; grandTotal = null; points = 0; }
+    }
+
+    /**
+     * Cấp mã đơn trước khi mở transaction: allocator có thể cần kết nối riêng để giữ khối mã mới,
+     * không được lấy thêm kết nối pool khi luồng đang giữ kết nối chốt đơn (pool cạn → tự chặn nhau).
+     * Transaction rollback thì mã bị bỏ (nhảy cóc), không trùng.
+     */
+    private void assignCode(PendingOrder p) throws SQLException {
+        p.orderCode = codeAllocator.nextCode(p.req.storeId);
+    }
+
+    /** Validate đầu vào (không chạm DB). */
+    private PendingOrder prepare(OrderRequest r) {
+        if (r.items == null || r.items.isEmpty()) throw new IllegalArgumentException("Danh sách hàng trống");
+        if (r.discount == null) r.discount = BigDecimal.ZERO;
+        if (r.discount.signum() < 0) throw new IllegalArgumentException("Discount không hợp lệ");
+        for (OrderItemInput in : r.items)
+            if (in.quantity <= 0) throw new IllegalArgumentException("Số lượng phải > 0");
+        return new PendingOrder(r);
+    }
+
+    /** Giữ tồn kho cho cả giỏ của đơn (gộp các dòng cùng sản phẩm). */
+    private void reserve(PendingOrder p) throws SQLException {
+        Map<Long, Integer> qty = new HashMap<>();
+        for (OrderItemInput in : p.req.items) qty.merge(in.productId, in.quantity, Integer::sum);
+        p.hold = reservations.reserve(p.req.storeId, qty);
+    }
+
+    /** Đơn ghi thất bại: trả phần giữ và buộc đọc lại tồn từ DB (có thể DB vừa báo âm kho). */
+    private void releaseFailed(PendingOrder p) {
+        p.hold.release();
+        reservations.invalidate(p.req.storeId, p.hold.productIds());
+    }
+
+    /** Ghi nhớ khoá idempotency của đơn vừa commit. */
+    private void remember(PendingOrder p) {
+        if (p.req.requestKey != null) RECENT_REQUEST_KEYS.put(p.req.requestKey, p.order.getId());
     }
 
-    private void insertFinanceIncome(Connection cn, long storeId, BigDecimal amount, String category, String note) throws SQLException {
-        String sql = "INSERT INTO finance_reports(store_id, report_date, type, category, amount, note)" +
-                     " VALUES (?, CURRENT_DATE(), 'INCOME', ?, ?, ?)";
-        try (PreparedStatement ps = cn.prepareStatement(sql)) {
-            ps.setLong(1, storeId);
-            ps.setString(2, category);
-            ps.setBigDecimal(3, amount);
-            ps.setString(4, note);
-            ps.executeUpdate();
+    /** Đơn có khoá đã chốt trước đó → orderId cũ (và nạp lại cache); ngược lại null. */
+    private Long existingOrderId(Connection cn, String requestKey) throws SQLException {
+        if (requestKey == null) return null;
+        Long id = orderDAO.findIdByRequestKey(cn, requestKey).orElse(null);
+        if (id != null) RECENT_REQUEST_KEYS.put(requestKey, id);
+        return id;
+    }
+
+    /** Kết quả cho đơn ghi lỗi: nếu lỗi do khoá đã được chốt trước đó thì coi như thành công với orderId cũ. */
+    private OrderResult failedOrExisting(PendingOrder p, String err) {
+        if (p.req.requestKey != null) {
+            try (Connection cn = DBConnection.getInstance().getConnection()) {
+                Long existing = existingOrderId(cn, p.req.requestKey);
+                if (existing != null) return new OrderResult(p.index, existing, null);
+            } catch (SQLException ignored) {}
         }
+        return new OrderResult(p.index, null, err);
     }
 
-    private void addCustomerPoints(Connection cn, long customerId, int delta) throws SQLException {
-        String sql = "UPDATE customers SET points = GREATEST(0, points + ?), created_at = created_at WHERE id=?";
-        try (PreparedStatement ps = cn.prepareStatement(sql)) {
-            ps.setInt(1, delta);
-            ps.setLong(2, customerId);
-            ps.executeUpdate();
+    /**
+     * Ghi + commit một nhóm đơn qua TxTemplate (deadlock / lock wait timeout → rollback, chờ rồi ghi lại cả nhóm);
+     * lỗi khác → trả về thông báo lỗi (null nếu thành công). Không lấy được kết nối → ném SQLException cho người gọi,
+     * không tách lô rồi chờ pool lại cho từng đơn.
+     */
+    private String tryWrite(List<PendingOrder> batch) throws SQLException {
+        try {
+            tx.execute(cn -> {
+                for (PendingOrder p : batch) p.reset();
+                writeOrders(cn, batch);
+                return null;
+            });
+            return null;
+        } catch (SQLTransientConnectionException | SQLNonTransientConnectionException ex) {
+            throw ex;
+        } catch (SQLException | RuntimeException ex) {
+            return ex.getMessage() == null ? ex.toString() : ex.getMessage();
         }
     }
 
-    private void insertPointsLedger(Connection cn, long customerId, long orderId, int delta, String reason, String note) throws SQLException {
-        String sql = "INSERT INTO points_ledger(customer_id, order_id, delta, reason, note) VALUES (?,?,?,?,?)";
-        try (PreparedStatement ps = cn.prepareStatement(sql)) {
-            ps.setLong(1, customerId);
-            ps.setLong(2, orderId);
-            ps.setInt(3, delta);
-            ps.setString(4, reason);
-            ps.setString(5, note);
-            ps.executeUpdate();
+    /**
+     * Ghi toàn bộ một nhóm đơn bằng số câu lệnh cố định (không phụ thuộc số đơn / số dòng):
+     * giá (cache hoặc 1 IN), orders (1 batch), order_items (1 batch), subtotal (1 GROUP BY nếu dùng trigger),
+     * rồi tác động phụ: checkout_outbox (1 batch) hoặc inline qua CheckoutEffects
+     * (finance_reports, customers.points, points_ledger, order_events – mỗi loại 1 batch).
+     */
+    private void writeOrders(Connection cn, List<PendingOrder> batch) throws SQLException {
+        // 0) Giá mọi sản phẩm của cả nhóm: từ PriceCache, chỉ phần chưa cache mới đọc DB (1 truy vấn IN)
+        List<Long> productIds = new ArrayList<>();
+        for (PendingOrder p : batch)
+            for (OrderItemInput in : p.req.items) productIds.add(in.productId);
+        Map<Long, BigDecimal> prices = priceCache.getPrices(cn, productIds);
+        for (Long id : productIds)
+            if (!prices.containsKey(id)) throw new SQLException("Không tìm thấy sản phẩm #" + id);
+
+        // 1) Insert ORDERS (discount lưu riêng; total_amount = subtotal nếu app tự tính, ngược lại trigger cập nhật)
+        List<Order> orders = new ArrayList<>(batch.size());
+        for (PendingOrder p : batch) {
+            p.subtotal = computeSubtotal(p.req.items, prices);
+            Order o = new Order();
+            o.setOrderCode(p.orderCode);
+            o.setRequestKey(p.req.requestKey);
+            o.setStoreId(p.req.storeId);
+            o.setCustomerId(p.req.customerId);
+            o.setTotalAmount(totalsMode == TotalsMode.APP ? p.subtotal : BigDecimal.ZERO);
+            o.setDiscount(p.req.discount);
+            o.setStatus(Order.Status.CONFIRMED);
+            o.setNote(p.req.note);
+            p.order = o;
+            orders.add(o);
         }
+        orderDAO.insertOrders(cn, orders);
+
+        // 2) Insert ITEMS (1 batch; trigger ghi stock_moves EXPORT cho từng dòng, trừ khi inventory.posting=app)
+        List<OrderItem> items = new ArrayList<>(productIds.size());
+        for (PendingOrder p : batch) items.addAll(buildItems(p.order.getId(), p.req.items, prices));
+        orderDAO.insertItems(cn, items);
+
+        // Chế độ inventory.posting=app: không có trigger xuất kho → gộp EXPORT cả nhóm, trừ tồn bằng câu nhiều dòng
+        if (ProductDAO.postingMode() == ProductDAO.PostingMode.APP) {
+            List<ProductDAO.StockMove> moves = new ArrayList<>(productIds.size());
+            for (PendingOrder p : batch)
+                for (OrderItemInput in : p.req.items)
+                    moves.add(new ProductDAO.StockMove(p.req.storeId, in.productId, "EXPORT", in.quantity,
+                            "Order #" + p.order.getId()));
+            productDAO.postStockMoves(cn, moves);
+        }
+
+        // SUBTOTAL: app tự tính, hoặc đọc lại giá trị trigger đã cập nhật (1 truy vấn cho cả nhóm)
+        if (totalsMode == TotalsMode.TRIGGER) {
+            List<Long> orderIds = new ArrayList<>(batch.size());
+            for (PendingOrder p : batch) orderIds.add(p.order.getId());
+            Map<Long, BigDecimal> totals = orderDAO.getSubtotals(cn, orderIds);
+            for (PendingOrder p : batch) p.subtotal = totals.getOrDefault(p.order.getId(), BigDecimal.ZERO);
+        }
+        for (PendingOrder p : batch) {
+            BigDecimal grandTotal = p.subtotal.subtract(p.req.discount);
+            p.grandTotal = grandTotal.signum() < 0 ? BigDecimal.ZERO : grandTotal;
+            p.points = p.req.customerId == null ? 0 : PointPolicy.calcPoints(p.grandTotal);
+        }
+
+        // 3–5) FINANCE, điểm + ledger, events: mô tả bằng CheckoutOutbox rồi ghi outbox hoặc áp dụng ngay
+        LocalDate today = LocalDate.now();
+        List<CheckoutOutbox> sideEffects = new ArrayList<>(batch.size());
+        for (PendingOrder p : batch) {
+            CheckoutOutbox e = new CheckoutOutbox();
+            e.setIdemKey("order:" + p.order.getId());
+            e.setOrderId(p.order.getId());
+            e.setOrderCode(p.order.getOrderCode());
+            e.setStoreId(p.req.storeId);
+            e.setCustomerId(p.req.customerId);
+            e.setAmount(p.grandTotal);
+            e.setPoints(p.points);
+            e.setNote(p.req.note);
+            e.setPaymentMethod(p.req.paymentMethod);
+            e.setReportDate(today);
+            sideEffects.add(e);
+        }
+        if (useOutbox) outboxDAO.insert(cn, sideEffects);
+        else effects.apply(cn, sideEffects);
+    }
+
+    // ==================== Low-level helpers (trong chung 1 transaction) ====================
+    /** SUM(quantity * unit_price) – cùng công thức với cột sinh line_total trong order_items. */
+    private BigDecimal computeSubtotal(List<OrderItemInput> items, Map<Long, BigDecimal> prices) {
+        BigDecimal subtotal = BigDecimal.ZERO;
+        for (OrderItemInput in : items)
+            subtotal = subtotal.add(prices.get(in.productId).multiply(BigDecimal.valueOf(in.quantity)));
+        return subtotal;
     }
 
-    private void insertOrderEvent(Connection cn, long orderId, String eventType, String dataJson, String note) throws SQLException {
-        String sql = "INSERT INTO order_events(order_id, event_type, data_json, note) VALUES (?,?,?,?)";
-        try (PreparedStatement ps = cn.prepareStatement(sql)) {
-            ps.setLong(1, orderId);
-            ps.setString(2, eventType);
-            ps.setString(3, dataJson);
-            ps.setString(4, note);
-            ps.executeUpdate();
+    private List<OrderItem> buildItems(long orderId, List<OrderItemInput> items, Map<Long, BigDecimal> prices) {
+        List<OrderItem> rows = new ArrayList<>(items.size());
+        for (OrderItemInput in : items) {
+            OrderItem it = new OrderItem();
+            it.setOrderId(orderId);
+            it.setProductId(in.productId);
+            it.setQuantity(in.quantity);
+            it.setUnitPrice(prices.get(in.productId));
+            rows.add(it);
         }
+        return rows;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,131 @@
+package com.example.storemanagement.service;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.example.storemanagement.dao.DBConnection;
+import com.example.storemanagement.dao.OutboxDAO;
+import com.example.storemanagement.model.CheckoutOutbox;
+
+/**
+ * OutboxWorker – pool luồng nền áp dụng checkout_outbox vào finance_reports, customers.points,
+ * points_ledger và order_events (bật bằng orders.sideEffects=outbox trong db.properties).
+ *
+ * Mỗi lượt: trong MỘT transaction, claim tối đa batchSize dòng PENDING (FOR UPDATE SKIP LOCKED),
+ * áp dụng cả lô bằng batch, đánh dấu DONE rồi commit. Tác động và trạng thái DONE commit cùng nhau
+ * nên crash giữa chừng chỉ khiến lô được xử lý lại (at-least-once), không bao giờ áp dụng hai lần;
+ * idem_key (UNIQUE) chặn việc tạo hai dòng outbox cho cùng một đơn.
+ * Lô lỗi → quay về savepoint và áp dụng từng dòng để cô lập dòng hỏng (ghi attempts/last_error).
+ */
+public class OutboxWorker {
+
+    private final OutboxDAO outboxDAO = new OutboxDAO();
+    private final CheckoutEffects effects = new CheckoutEffects();
+    private final int workers;
+    private final int batchSize;
+    private final long pollIntervalMs;
+    private final int maxAttempts;
+    private final LongAdder applied = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private ScheduledExecutorService pool;
+
+    public OutboxWorker() {
+        this(intProp("outbox.workers", 2), intProp("outbox.batchSize", 200),
+             intProp("outbox.pollIntervalMs", 500), intProp("outbox.maxAttempts", 5));
+    }
+
+    public OutboxWorker(int workers, int batchSize, long pollIntervalMs, int maxAttempts) {
+        this.workers = Math.max(1, workers);
+        this.batchSize = Math.max(1, batchSize);
+        this.pollIntervalMs = Math.max(50, pollIntervalMs);
+        this.maxAttempts = Math.max(1, maxAttempts);
+    }
+
+    /** true nếu cấu hình đang dùng chế độ outbox (Main dựa vào đây để khởi động worker). */
+    public static boolean isEnabled() {
+        return "outbox".equalsIgnoreCase(DBConnection.getInstance().getProperty("orders.sideEffects", "inline"));
+    }
+
+    public synchronized void start() {
+        if (pool != null) return;
+        AtomicInteger seq = new AtomicInteger();
+        pool = Executors.newScheduledThreadPool(workers, r -> {
+            Thread t = new Thread(r, "outbox-worker-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        for (int i = 0; i < workers; i++)
+            pool.scheduleWithFixedDelay(this::drain, i * pollIntervalMs / workers, pollIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (pool == null) return;
+        pool.shutdown();
+        try { pool.awaitTermination(5, TimeUnit.SECONDS); } catch (InterruptedException ie) { Thread.currentThread().interrupt(); }
+        pool = null;
+    }
+
+    public long getAppliedCount() { return applied.sum(); }
+    public long getFailureCount() { return failures.sum(); }
+
+    /** Xử lý liên tục khi còn lô đầy; hết việc thì chờ lượt poll kế tiếp. */
+    private void drain() {
+        try {
+            while (processBatch() >= batchSize) { /* còn tồn → xử lý tiếp ngay */ }
+        } catch (Exception ex) {
+            System.err.println("[Outbox] Lỗi xử lý outbox: " + ex.getMessage());
+        }
+    }
+
+    /** Claim + áp dụng một lô; trả về số dòng đã claim. Public để chạy tay / kiểm thử. */
+    public int processBatch() throws SQLException {
+        try (Connection cn = DBConnection.getInstance().getConnection()) {
+            cn.setAutoCommit(false);
+            try {
+                List<CheckoutOutbox> batch = outboxDAO.claimPending(cn, batchSize);
+                if (batch.isEmpty()) { cn.commit(); return 0; }
+
+                List<Long> done = new ArrayList<>(batch.size());
+                Savepoint whole = cn.setSavepoint();
+                try {
+                    effects.apply(cn, batch);
+                    for (CheckoutOutbox e : batch) done.add(e.getId());
+                } catch (SQLException batchEx) {
+                    cn.rollback(whole); // khoá FOR UPDATE vẫn giữ → không worker nào khác lấy được các dòng này
+                    for (CheckoutOutbox e : batch) {
+                        Savepoint one = cn.setSavepoint();
+                        try {
+                            effects.apply(cn, List.of(e));
+                            done.add(e.getId());
+                        } catch (SQLException rowEx) {
+                            cn.rollback(one);
+                            outboxDAO.recordFailure(cn, e.getId(), rowEx.getMessage(), maxAttempts);
+                            failures.increment();
+                        }
+                    }
+                }
+                outboxDAO.markDone(cn, done);
+                cn.commit();
+                applied.add(done.size());
+                return batch.size();
+            } catch (SQLException ex) {
+                cn.rollback();
+                throw ex;
+            } finally {
+                cn.setAutoCommit(true);
+            }
+        }
+    }
+
+    private static int intProp(String key, int def) {
+        return DBConnection.getInstance().getIntProperty(key, def);
+    }
+}
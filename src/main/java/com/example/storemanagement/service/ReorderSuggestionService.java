@@ -0,0 +1,171 @@
+package com.example.storemanagement.service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.example.storemanagement.dao.DBConnection;
+import com.example.storemanagement.dao.ReorderSuggestionDAO;
+import com.example.storemanagement.util.CsvUtils;
+
+/**
+ * ReorderSuggestionService – đề xuất đặt hàng lại theo tốc độ bán, gom theo nhà cung cấp.
+ *
+ * Mỗi cửa hàng là một câu SQL (ReorderSuggestionDAO: tốc độ bán + tồn + lead time tính trong DB, chỉ trả dòng cần đặt);
+ * các cửa hàng chạy song song trên pool reorder.threads luồng (mỗi luồng giữ một kết nối pool), kết quả được gom
+ * theo supplier_id. Cửa sổ tốc độ bán reorder.windowDays, số ngày hàng cần phủ thêm ngoài lead time
+ * reorder.coverageDays, lead time mặc định reorder.defaultLeadDays cho nhà cung cấp chưa khai báo / sản phẩm không có NCC.
+ */
+public class ReorderSuggestionService {
+
+    private final ReorderSuggestionDAO dao = new ReorderSuggestionDAO();
+    private final int threads;
+    private final int windowDays;
+    private final int coverageDays;
+    private final int defaultLeadDays;
+
+    public ReorderSuggestionService() {
+        this(intProp("reorder.threads", 4), intProp("reorder.windowDays", 28),
+             intProp("reorder.coverageDays", 14), intProp("reorder.defaultLeadDays", 7));
+    }
+
+    public ReorderSuggestionService(int threads, int windowDays, int coverageDays, int defaultLeadDays) {
+        if (windowDays <= 0)
+            throw new IllegalArgumentException("Cửa sổ tính tốc độ bán phải > 0 ngày");
+        this.threads = Math.max(1, threads);
+        this.windowDays = windowDays;
+        this.coverageDays = Math.max(0, coverageDays);
+        this.defaultLeadDays = Math.max(0, defaultLeadDays);
+    }
+
+    /** Đơn đặt đề xuất cho một nhà cung cấp (supplierId = null: sản phẩm chưa gán NCC). */
+    public static class SupplierOrder {
+        public final Long supplierId;
+        public final String supplierName;
+        public final List<ReorderSuggestionDAO.Suggestion> lines = new ArrayList<>();
+        public long totalQty;
+        public BigDecimal totalCost = BigDecimal.ZERO;
+
+        SupplierOrder(Long supplierId, String supplierName) {
+            this.supplierId = supplierId;
+            this.supplierName = supplierName;
+        }
+    }
+
+    /** Đề xuất cho mọi cửa hàng, gom theo nhà cung cấp (thứ tự supplier_id, NCC trống ở cuối). */
+    public List<SupplierOrder> suggest() throws SQLException {
+        return suggest(null);
+    }
+
+    /** Đề xuất cho các cửa hàng chỉ định (null = mọi cửa hàng). */
+    public List<SupplierOrder> suggest(List<Long> storeIds) throws SQLException {
+        List<Long> stores = storeIds != null ? storeIds : loadStoreIds();
+        LocalDateTime since = LocalDateTime.now().minusDays(windowDays); // cửa sổ trượt đúng windowDays ngày
+
+        AtomicInteger seq = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, stores.size())), r -> {
+            Thread t = new Thread(r, "reorder-suggest-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        Map<Long, SupplierOrder> bySupplier = new TreeMap<>(Comparator.nullsLast(Comparator.naturalOrder()));
+        try {
+            List<Future<List<ReorderSuggestionDAO.Suggestion>>> tasks = new ArrayList<>(stores.size());
+            for (long storeId : stores)
+                tasks.add(pool.submit(() -> {
+                    try (Connection cn = DBConnection.getInstance().getConnection()) {
+                        return dao.suggestForStore(cn, storeId, since, windowDays, coverageDays, defaultLeadDays);
+                    }
+                }));
+            for (Future<List<ReorderSuggestionDAO.Suggestion>> f : tasks) {
+                for (ReorderSuggestionDAO.Suggestion s : await(f)) {
+                    SupplierOrder o = bySupplier.computeIfAbsent(s.supplierId, id -> new SupplierOrder(id, s.supplierName));
+                    o.lines.add(s);
+                    o.totalQty += s.suggestedQty;
+                    if (s.unitCost != null)
+                        o.totalCost = o.totalCost.add(s.unitCost.multiply(BigDecimal.valueOf(s.suggestedQty)));
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        List<SupplierOrder> out = new ArrayList<>(bySupplier.values());
+        for (SupplierOrder o : out)
+            o.lines.sort(Comparator.comparingLong((ReorderSuggestionDAO.Suggestion s) -> s.storeId)
+                    .thenComparing(s -> s.sku));
+        return out;
+    }
+
+    /** Ghi đề xuất ra CSV (thay cho bảng tính xuất từ màn hình tồn kho). */
+    public void writeCsv(List<SupplierOrder> orders, Path file) throws IOException {
+        try (BufferedWriter w = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            w.write("supplier_id,supplier,lead_days,store_id,product_id,sku,name,sold_window,daily_velocity,on_hand,target,suggested_qty,unit_cost");
+            w.newLine();
+            for (SupplierOrder o : orders) {
+                for (ReorderSuggestionDAO.Suggestion s : o.lines) {
+                    w.write(String.join(",",
+                            o.supplierId == null ? "" : String.valueOf(o.supplierId),
+                            CsvUtils.escape(o.supplierName),
+                            String.valueOf(s.leadTimeDays),
+                            String.valueOf(s.storeId),
+                            String.valueOf(s.productId),
+                            CsvUtils.escape(s.sku),
+                            CsvUtils.escape(s.productName),
+                            String.valueOf(s.soldInWindow),
+                            String.format(Locale.ROOT, "%.3f", s.dailyVelocity),
+                            String.valueOf(s.onHand),
+                            String.valueOf(s.targetQty),
+                            String.valueOf(s.suggestedQty),
+                            s.unitCost == null ? "" : s.unitCost.toPlainString()));
+                    w.newLine();
+                }
+            }
+        }
+    }
+
+    private List<Long> loadStoreIds() throws SQLException {
+        List<Long> ids = new ArrayList<>();
+        try (Connection cn = DBConnection.getInstance().getConnection();
+             PreparedStatement ps = cn.prepareStatement("SELECT id FROM stores ORDER BY id");
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) ids.add(rs.getLong(1));
+        }
+        return ids;
+    }
+
+    private static <T> T await(Future<T> f) throws SQLException {
+        try {
+            return f.get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Bị ngắt khi tính đề xuất đặt hàng", ie);
+        } catch (ExecutionException ee) {
+            Throwable cause = ee.getCause();
+            if (cause instanceof SQLException sql) throw sql;
+            throw new SQLException("Lỗi tính đề xuất đặt hàng: " + cause.getMessage(), cause);
+        }
+    }
+
+    private static int intProp(String key, int def) {
+        return DBConnection.getInstance().getIntProperty(key, def);
+    }
+}
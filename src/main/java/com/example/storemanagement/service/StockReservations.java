@@ -0,0 +1,223 @@
+package com.example.storemanagement.service;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.example.storemanagement.dao.DBConnection;
+import com.example.storemanagement.dao.ProductDAO;
+
+/**
+ * StockReservations – giữ chỗ tồn kho trong bộ nhớ theo (store_id, product_id), trước khi mở transaction chốt đơn.
+ *
+ * - Mỗi ô (slot) nhớ tồn đã biết (onHand, nạp từ bảng inventory) và số đang giữ cho các đơn chưa commit (held).
+ *   Còn bán được = onHand - held.
+ * - reserve(...) kiểm tra + giữ cả giỏ một cách nguyên tử dưới khoá phân dải (striped lock, khoá theo thứ tự
+ *   chỉ số dải → không deadlock); giỏ thiếu hàng bị từ chối ngay, không chạm DB nếu các ô còn "tươi".
+ * - Sau transaction: Hold.commit() trừ onHand, Hold.release() trả lại phần giữ.
+ * - Ô quá inventory.reservationTtlMs hoặc bị invalidate (nhập/xuất kho ngoài luồng chốt đơn, trigger báo âm kho)
+ *   sẽ được đọc lại từ DB trước khi kiểm tra.
+ *
+ * Đây là lớp chặn sớm; trigger trg_moves_after_insert vẫn là kiểm tra cuối cùng trong DB.
+ */
+public class StockReservations {
+
+    private static final StockReservations INSTANCE = new StockReservations(
+            Boolean.parseBoolean(DBConnection.getInstance().getProperty("inventory.reservations", "true")),
+            DBConnection.getInstance().getIntProperty("inventory.reservationStripes", 64),
+            DBConnection.getInstance().getLongProperty("inventory.reservationTtlMs", 5000));
+
+    public static StockReservations getInstance() { return INSTANCE; }
+
+    private static final int REFRESH_ATTEMPTS = 3;
+
+    private final ProductDAO productDAO;
+    private final boolean enabled;
+    private final ReentrantLock[] stripes;
+    private final long ttlNanos;
+    private final ConcurrentHashMap<Key, Slot> slots = new ConcurrentHashMap<>();
+
+    StockReservations(boolean enabled, int stripeCount, long ttlMs) {
+        this(enabled, stripeCount, ttlMs, new ProductDAO());
+    }
+
+    StockReservations(boolean enabled, int stripeCount, long ttlMs, ProductDAO productDAO) {
+        this.productDAO = productDAO; // nguồn tồn kho (test thay bằng DAO giả)
+        if (stripeCount <= 0) throw new IllegalArgumentException("inventory.reservationStripes phải > 0");
+        this.enabled = enabled;
+        this.stripes = new ReentrantLock[stripeCount];
+        for (int i = 0; i < stripeCount; i++) stripes[i] = new ReentrantLock();
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMs);
+    }
+
+    public boolean isEnabled() { return enabled; }
+
+    /**
+     * Giữ số lượng cho cả giỏ (productId → quantity) tại cửa hàng.
+     * Thiếu hàng → SQLException SQLState 45000 (cùng mã với trigger âm kho), không giữ gì.
+     */
+    public Hold reserve(long storeId, Map<Long, Integer> quantities) throws SQLException {
+        if (!enabled || quantities.isEmpty()) return Hold.NONE;
+
+        List<Slot> basket = new ArrayList<>(quantities.size());
+        List<Long> stale = new ArrayList<>();
+        long now = System.nanoTime();
+        for (Long productId : quantities.keySet()) {
+            Slot s = slots.computeIfAbsent(new Key(storeId, productId), Slot::new);
+            basket.add(s);
+            if (s.isStale(now, ttlNanos)) stale.add(productId);
+        }
+        if (!stale.isEmpty()) refresh(storeId, stale); // đọc DB ngoài khoá dải
+
+        TreeSet<Integer> order = new TreeSet<>();
+        for (Slot s : basket) order.add(stripeOf(s.key));
+        for (int i : order) stripes[i].lock();
+        try {
+            for (Slot s : basket) {
+                int need = quantities.get(s.key.productId);
+                int available = s.onHand - s.held;
+                if (available < need)
+                    throw new SQLException("Không đủ tồn kho sản phẩm #" + s.key.productId
+                            + " tại cửa hàng #" + storeId + " (còn " + Math.max(available, 0) + ", cần " + need + ")", "45000");
+            }
+            Map<Slot, Integer> held = new LinkedHashMap<>();
+            for (Slot s : basket) {
+                int q = quantities.get(s.key.productId);
+                s.held += q;
+                held.put(s, q);
+            }
+            return new Hold(this, held);
+        } finally {
+            for (int i : order.descendingSet()) stripes[i].unlock();
+        }
+    }
+
+    /** Đánh dấu các ô cần đọc lại từ DB (tồn thay đổi ngoài luồng chốt đơn, hoặc trigger vừa báo âm kho). */
+    public void invalidate(long storeId, Collection<Long> productIds) {
+        for (Long productId : productIds) {
+            Slot s = slots.get(new Key(storeId, productId));
+            if (s != null) s.loadedAt = 0;
+        }
+    }
+
+    public void invalidate(long storeId, long productId) {
+        invalidate(storeId, List.of(productId));
+    }
+
+    /**
+     * Đọc lại onHand từ DB. Chốt đơn commit giữa lúc đọc DB và lúc ghi vào ô (settle đổi version) làm giá trị vừa đọc
+     * không còn khớp với onHand trong bộ nhớ (có thể đã/chưa gồm đơn đó) → bỏ qua ô đó và đọc lại (tối đa vài lần).
+     */
+    private void refresh(long storeId, List<Long> productIds) throws SQLException {
+        List<Long> pending = productIds;
+        for (int attempt = 0; attempt < REFRESH_ATTEMPTS && !pending.isEmpty(); attempt++) {
+            Map<Long, Long> versions = new HashMap<>();
+            for (Long productId : pending) {
+                Slot s = slots.get(new Key(storeId, productId));
+                if (s != null) versions.put(productId, s.version);
+            }
+            Map<Long, Integer> levels = productDAO.getStockLevels(storeId, pending);
+            long now = System.nanoTime();
+            List<Long> raced = new ArrayList<>();
+            for (Long productId : pending) {
+                Slot s = slots.get(new Key(storeId, productId));
+                if (s == null) continue;
+                ReentrantLock lock = stripes[stripeOf(s.key)];
+                lock.lock();
+                try {
+                    if (s.version != versions.getOrDefault(productId, -1L)) {
+                        raced.add(productId); // settle xen giữa: giữ onHand hiện tại, ô vẫn "cũ"
+                        continue;
+                    }
+                    s.onHand = levels.getOrDefault(productId, 0);
+                    s.loadedAt = now;
+                } finally {
+                    lock.unlock();
+                }
+            }
+            pending = raced;
+        }
+    }
+
+    private int stripeOf(Key k) {
+        return Math.floorMod(k.hashCode(), stripes.length);
+    }
+
+    private void settle(Map<Slot, Integer> held, boolean committed) {
+        TreeSet<Integer> order = new TreeSet<>();
+        for (Slot s : held.keySet()) order.add(stripeOf(s.key));
+        for (int i : order) stripes[i].lock();
+        try {
+            held.forEach((s, q) -> {
+                s.held -= q;
+                if (committed) {
+                    s.onHand -= q;
+                    s.version++; // refresh đang đọc DB song song sẽ bỏ giá trị của mình
+                }
+            });
+        } finally {
+            for (int i : order.descendingSet()) stripes[i].unlock();
+        }
+    }
+
+    /** Phần đã giữ cho một đơn; gọi đúng một trong commit()/release() (gọi lặp bị bỏ qua). */
+    public static final class Hold {
+        static final Hold NONE = new Hold(null, Map.of());
+
+        private final StockReservations owner;
+        private final Map<Slot, Integer> held;
+        private final AtomicBoolean done = new AtomicBoolean();
+
+        private Hold(StockReservations owner, Map<Slot, Integer> held) {
+            this.owner = owner;
+            this.held = held;
+        }
+
+        /** Transaction đã commit: số giữ trở thành đã xuất. */
+        public void commit() {
+            if (owner != null && done.compareAndSet(false, true)) owner.settle(held, true);
+        }
+
+        /** Transaction rollback / đơn bị từ chối: trả lại phần giữ. */
+        public void release() {
+            if (owner != null && done.compareAndSet(false, true)) owner.settle(held, false);
+        }
+
+        /** Sản phẩm trong phần giữ (dùng để invalidate khi DB báo âm kho). */
+        public Set<Long> productIds() {
+            Set<Long> ids = new HashSet<>();
+            for (Slot s : held.keySet()) ids.add(s.key.productId);
+            return ids;
+        }
+    }
+
+    /** Khoá (store_id, product_id). */
+    private record Key(long storeId, long productId) {}
+
+    /** Trạng thái một ô; onHand/held chỉ đọc-ghi khi giữ khoá dải tương ứng. */
+    private static final class Slot {
+        final Key key;
+        int onHand;
+        int held;
+        volatile long version;  // tăng mỗi lần settle trừ onHand (chỉ ghi khi giữ khoá dải)
+        volatile long loadedAt; // System.nanoTime() lúc nạp từ DB; 0 = cần nạp lại
+
+        Slot(Key key) { this.key = key; }
+
+        boolean isStale(long now, long ttlNanos) {
+            long at = loadedAt;
+            return at == 0 || now - at >= ttlNanos;
+        }
+    }
+}
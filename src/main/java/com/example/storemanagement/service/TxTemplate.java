@@ -0,0 +1,170 @@
+package com.example.storemanagement.service;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransactionRollbackException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.example.storemanagement.dao.DBConnection;
+
+/**
+ * TxTemplate – chạy một đơn vị công việc trong transaction, tự thử lại khi lỗi tạm thời của InnoDB:
+ *  - 1213 (deadlock) / 1205 (lock wait timeout) / SQLState 40001 → rollback, chờ rồi chạy lại toàn bộ work.
+ *  - Lỗi khác → rollback và ném ra ngay (giữ nguyên SQLException gốc).
+ *
+ * Backoff: "full jitter" – chờ ngẫu nhiên trong [0, min(maxDelay, baseDelay * 2^lần)] để các transaction
+ * vừa deadlock với nhau không cùng lúc quay lại.
+ * Retry budget: mỗi lần chạy đầu tiên nạp budgetRatio token (tối đa 10 + ratio * 100), mỗi lần thử lại tiêu 1 token;
+ * hết token thì không thử lại nữa → khi DB quá tải, số lần thử lại tối đa ~ budgetRatio * số yêu cầu.
+ *
+ * work có thể chạy nhiều lần: không được giữ trạng thái nửa chừng giữa các lần (reset ở đầu work).
+ */
+public class TxTemplate {
+
+    /** Đơn vị công việc chạy trên kết nối đã ở chế độ transaction (autoCommit=false). */
+    @FunctionalInterface
+    public interface TxWork<T> {
+        T run(Connection cn) throws SQLException;
+    }
+
+    /** Nguồn kết nối (mặc định DBConnection; test thay bằng kết nối giả). */
+    @FunctionalInterface
+    interface ConnectionSource {
+        Connection get() throws SQLException;
+    }
+
+    private static final TxTemplate DEFAULT = new TxTemplate(
+            intProp("tx.retry.maxAttempts", 4), intProp("tx.retry.baseDelayMs", 20),
+            intProp("tx.retry.maxDelayMs", 500),
+            DBConnection.getInstance().getDoubleProperty("tx.retry.budgetRatio", 0.1));
+
+    public static TxTemplate getDefault() { return DEFAULT; }
+
+    private final ConnectionSource connections;
+    private final int maxAttempts;
+    private final long baseDelayMs;
+    private final long maxDelayMs;
+    private final long tokenPerCallMilli; // token tính theo phần nghìn để dùng số nguyên
+    private final long maxTokensMilli;
+    private final AtomicLong tokensMilli;
+
+    private final LongAdder executions = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder exhausted = new LongAdder();
+    private final LongAdder budgetDenied = new LongAdder();
+
+    public TxTemplate(int maxAttempts, long baseDelayMs, long maxDelayMs, double budgetRatio) {
+        this(maxAttempts, baseDelayMs, maxDelayMs, budgetRatio, () -> DBConnection.getInstance().getConnection());
+    }
+
+    TxTemplate(int maxAttempts, long baseDelayMs, long maxDelayMs, double budgetRatio, ConnectionSource connections) {
+        this.connections = connections;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.baseDelayMs = Math.max(1, baseDelayMs);
+        this.maxDelayMs = Math.max(this.baseDelayMs, maxDelayMs);
+        this.tokenPerCallMilli = Math.max(0, Math.round(budgetRatio * 1000));
+        this.maxTokensMilli = 10_000 + tokenPerCallMilli * 100;
+        this.tokensMilli = new AtomicLong(maxTokensMilli);
+    }
+
+    /** Chạy work trong transaction (commit nếu thành công), thử lại khi deadlock / lock wait timeout. */
+    public <T> T execute(TxWork<T> work) throws SQLException {
+        return execute(-1, work);
+    }
+
+    /**
+     * Như trên với mức cô lập riêng (Connection.TRANSACTION_*), đặt trước khi transaction bắt đầu và trả lại
+     * mức cũ khi kết nối về pool; isolation &lt; 0 = giữ mặc định của kết nối.
+     */
+    public <T> T execute(int isolation, TxWork<T> work) throws SQLException {
+        executions.increment();
+        deposit();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return runOnce(isolation, work);
+            } catch (SQLException ex) {
+                if (!isRetryable(ex)) throw ex;
+                if (attempt >= maxAttempts) { exhausted.increment(); throw ex; }
+                if (!withdraw()) { budgetDenied.increment(); throw ex; }
+                retries.increment();
+                sleep(backoffMillis(attempt));
+            }
+        }
+    }
+
+    private <T> T runOnce(int isolation, TxWork<T> work) throws SQLException {
+        try (Connection cn = connections.get()) {
+            boolean oldAuto = cn.getAutoCommit();
+            int oldIso = cn.getTransactionIsolation();
+            if (isolation >= 0 && isolation != oldIso) cn.setTransactionIsolation(isolation);
+            cn.setAutoCommit(false);
+            try {
+                T result = work.run(cn);
+                cn.commit();
+                return result;
+            } catch (SQLException | RuntimeException ex) {
+                try { cn.rollback(); } catch (SQLException rb) { ex.addSuppressed(rb); }
+                throw ex;
+            } finally {
+                cn.setAutoCommit(oldAuto);
+                if (isolation >= 0 && isolation != oldIso) cn.setTransactionIsolation(oldIso); // kết nối quay về pool với cấu hình cũ
+            }
+        }
+    }
+
+    /** Deadlock (1213), lock wait timeout (1205) hoặc SQLState 40001 ở bất kỳ mắt xích nào của chuỗi lỗi. */
+    public static boolean isRetryable(SQLException ex) {
+        for (Throwable t = ex; t != null; t = t.getCause()) {
+            if (t instanceof SQLTransactionRollbackException) return true;
+            if (t instanceof SQLException se) {
+                if (se.getErrorCode() == 1213 || se.getErrorCode() == 1205) return true;
+                if ("40001".equals(se.getSQLState())) return true;
+            }
+        }
+        return false;
+    }
+
+    private long backoffMillis(int attempt) {
+        long cap = Math.min(maxDelayMs, baseDelayMs << Math.min(attempt - 1, 20));
+        return ThreadLocalRandom.current().nextLong(cap + 1);
+    }
+
+    private void deposit() {
+        if (tokenPerCallMilli == 0) return;
+        tokensMilli.getAndUpdate(v -> Math.min(maxTokensMilli, v + tokenPerCallMilli));
+    }
+
+    private boolean withdraw() {
+        while (true) {
+            long v = tokensMilli.get();
+            if (v < 1000) return false;
+            if (tokensMilli.compareAndSet(v, v - 1000)) return true;
+        }
+    }
+
+    private static void sleep(long ms) throws SQLException {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Bị ngắt khi chờ thử lại transaction", ie);
+        }
+    }
+
+    public long getExecutions() { return executions.sum(); }
+    public long getRetries() { return retries.sum(); }
+    public long getExhausted() { return exhausted.sum(); }
+    public long getBudgetDenied() { return budgetDenied.sum(); }
+
+    @Override
+    public String toString() {
+        return "Tx[executions=" + getExecutions() + ", retries=" + getRetries() + ", exhausted=" + getExhausted()
+                + ", budgetDenied=" + getBudgetDenied() + ", budget=" + tokensMilli.get() / 1000 + "]";
+    }
+
+    private static int intProp(String key, int def) {
+        return DBConnection.getInstance().getIntProperty(key, def);
+    }
+}
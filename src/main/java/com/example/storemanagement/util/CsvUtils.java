@@ -0,0 +1,49 @@
+package com.example.storemanagement.util;
+
+// ─────────────────────────────────────────────────────────────────────────────
+// File: CsvUtils.java
+// Mục đích: Tách/ghép một dòng CSV (RFC 4180 rút gọn, mỗi bản ghi nằm trên một dòng)
+// - Hỗ trợ trường trong dấu nháy kép, "" là dấu nháy kép thật, dấu phẩy trong nháy
+// - Không hỗ trợ xuống dòng bên trong trường (đủ cho file danh mục sản phẩm)
+// ─────────────────────────────────────────────────────────────────────────────
+
+import java.util.ArrayList;
+import java.util.List;
+
+public final class CsvUtils {
+    private CsvUtils() {}
+
+    /** Tách một dòng CSV thành các trường (đã bỏ nháy bao ngoài). */
+    public static List<String> parseLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder cur = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') { cur.append('"'); i++; }
+                    else quoted = false;
+                } else {
+                    cur.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(cur.toString());
+                cur.setLength(0);
+            } else {
+                cur.append(c);
+            }
+        }
+        fields.add(cur.toString());
+        return fields;
+    }
+
+    /** Đưa một giá trị vào CSV: thêm nháy kép khi có dấu phẩy, nháy hoặc xuống dòng. */
+    public static String escape(String v) {
+        if (v == null) return "";
+        if (v.indexOf(',') < 0 && v.indexOf('"') < 0 && v.indexOf('\n') < 0 && v.indexOf('\r') < 0) return v;
+        return '"' + v.replace("\"", "\"\"") + '"';
+    }
+}
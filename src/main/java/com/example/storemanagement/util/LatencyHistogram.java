@@ -0,0 +1,90 @@
+package com.example.storemanagement.util;
+
+// ─────────────────────────────────────────────────────────────────────────────
+// File: LatencyHistogram.java
+// Mục đích: Histogram độ trễ đơn giản, an toàn đa luồng, chi phí ghi ~ vài LongAdder
+// - Bucket cố định theo mili-giây (≤1, ≤2, ≤5, ... ≤5000, >5000)
+// - snapshot() trả về bản chụp bất biến để hiển thị/ghi log
+// ─────────────────────────────────────────────────────────────────────────────
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+public final class LatencyHistogram {
+
+    /** Cận trên (ms, bao gồm) của từng bucket; bucket cuối cùng là "lớn hơn giá trị cuối". */
+    public static final long[] BOUNDS_MS = { 1, 2, 5, 10, 25, 50, 100, 250, 500, 1000, 5000 };
+
+    private final LongAdder[] buckets = new LongAdder[BOUNDS_MS.length + 1];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    public LatencyHistogram() {
+        for (int i = 0; i < buckets.length; i++) buckets[i] = new LongAdder();
+    }
+
+    /** Ghi nhận một mẫu (đơn vị nano giây, ví dụ hiệu System.nanoTime()). */
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        long ms = TimeUnit.NANOSECONDS.toMillis(nanos);
+        int i = 0;
+        while (i < BOUNDS_MS.length && ms > BOUNDS_MS[i]) i++;
+        buckets[i].increment();
+        count.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+    }
+
+    public Snapshot snapshot() {
+        long[] b = new long[buckets.length];
+        for (int i = 0; i < b.length; i++) b[i] = buckets[i].sum();
+        return new Snapshot(b, count.sum(), totalNanos.sum(), maxNanos.get());
+    }
+
+    /** Bản chụp bất biến của histogram. */
+    public static final class Snapshot {
+        private final long[] buckets;
+        private final long count;
+        private final long totalNanos;
+        private final long maxNanos;
+
+        Snapshot(long[] buckets, long count, long totalNanos, long maxNanos) {
+            this.buckets = buckets;
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+        }
+
+        public long getCount() { return count; }
+        public long[] getBuckets() { return buckets.clone(); }
+        public double getMeanMillis() { return count == 0 ? 0 : totalNanos / 1_000_000.0 / count; }
+        public double getMaxMillis() { return maxNanos / 1_000_000.0; }
+
+        /** Phân vị xấp xỉ (trả về cận trên của bucket chứa phân vị, ms); q trong [0,1]. */
+        public long percentileMillis(double q) {
+            if (count == 0) return 0;
+            long target = (long) Math.ceil(q * count);
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= target) return i < BOUNDS_MS.length ? BOUNDS_MS[i] : (long) Math.ceil(getMaxMillis());
+            }
+            return (long) Math.ceil(getMaxMillis());
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("n=%d mean=%.2fms p50<=%dms p99<=%dms max=%.2fms [",
+                    count, getMeanMillis(), percentileMillis(0.5), percentileMillis(0.99), getMaxMillis()));
+            for (int i = 0; i < buckets.length; i++) {
+                if (i > 0) sb.append(' ');
+                sb.append(i < BOUNDS_MS.length ? "<=" + BOUNDS_MS[i] : ">" + BOUNDS_MS[BOUNDS_MS.length - 1])
+                  .append(':').append(buckets[i]);
+            }
+            return sb.append(']').toString();
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.storemanagement.util;
+
+// ─────────────────────────────────────────────────────────────────────────────
+// File: LruCache.java
+// Mục đích: Cache LRU giới hạn kích thước, an toàn đa luồng (khoá thô trên cả map)
+// - Dựa trên LinkedHashMap(accessOrder=true) + removeEldestEntry
+// - Phù hợp cho tra cứu nhanh, ít phần tử nóng (khoá idempotency, ...)
+// ─────────────────────────────────────────────────────────────────────────────
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public final class LruCache<K, V> {
+
+    private final int maxSize;
+    private final LinkedHashMap<K, V> map;
+
+    public LruCache(int maxSize) {
+        if (maxSize <= 0) throw new IllegalArgumentException("maxSize phải > 0");
+        this.maxSize = maxSize;
+        this.map = new LinkedHashMap<>(Math.min(maxSize, 1024), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > LruCache.this.maxSize;
+            }
+        };
+    }
+
+    public synchronized V get(K key) { return map.get(key); }
+
+    public synchronized void put(K key, V value) { map.put(key, value); }
+
+    public synchronized V remove(K key) { return map.remove(key); }
+
+    public synchronized void clear() { map.clear(); }
+
+    public synchronized int size() { return map.size(); }
+
+    public int getMaxSize() { return maxSize; }
+}
@@ -16,6 +16,14 @@ SET NAMES utf8mb4;
 SET FOREIGN_KEY_CHECKS = 0;
 
 -- 2) Xóa bảng cũ (nếu cần – để chạy lại init.sql nhiều lần)
+--    Bảng phụ (mục 3.x) xoá trước bảng cha: không giữ lại ảnh chụp / outbox / ngưỡng trỏ tới dòng đã xoá
+DROP TABLE IF EXISTS reorder_thresholds;
+DROP TABLE IF EXISTS inventory_snapshot_lines;
+DROP TABLE IF EXISTS inventory_snapshots;
+DROP TABLE IF EXISTS order_code_blocks;
+DROP TABLE IF EXISTS checkout_outbox;
+DROP TABLE IF EXISTS order_events;
+DROP TABLE IF EXISTS points_ledger;
 DROP TABLE IF EXISTS order_items;
 DROP TABLE IF EXISTS orders;
 DROP TABLE IF EXISTS stock_moves;
@@ -124,7 +132,8 @@ CREATE TABLE orders (
     ON UPDATE CASCADE ON DELETE RESTRICT,
   CONSTRAINT fk_orders_customer FOREIGN KEY (customer_id) REFERENCES customers(id)
     ON UPDATE CASCADE ON DELETE SET NULL,
-  INDEX idx_orders_store_created (store_id, created_at)
+  INDEX idx_orders_store_created (store_id, created_at),
+  INDEX idx_orders_customer_created (customer_id, created_at, id) -- lịch sử đơn theo khách (keyset)
 ) ENGINE=InnoDB;
 
 -- Gợi ý: dùng cột sinh tự động cho line_total để luôn = quantity * unit_price
@@ -377,6 +386,94 @@ CREATE TABLE IF NOT EXISTS order_events (
 ALTER TABLE orders
   ADD COLUMN discount DECIMAL(12,2) NOT NULL DEFAULT 0.00 AFTER total_amount;
 
+-- 3.5) Outbox tác động phụ khi chốt đơn (orders.sideEffects=outbox)
+--      OrderService ghi 1 dòng / đơn trong cùng commit; OutboxWorker áp dụng vào
+--      finance_reports, customers.points, points_ledger, order_events rồi đánh dấu DONE.
+CREATE TABLE IF NOT EXISTS checkout_outbox (
+  id             BIGINT PRIMARY KEY AUTO_INCREMENT,
+  idem_key       VARCHAR(64)  NOT NULL UNIQUE,   -- 'order:<id>' – chặn ghi trùng cho cùng một đơn
+  order_id       BIGINT       NOT NULL,
+  order_code     VARCHAR(32),
+  store_id       BIGINT       NOT NULL,
+  customer_id    BIGINT       NULL,
+  amount         DECIMAL(14,2) NOT NULL,         -- grand total → finance_reports
+  points         INT          NOT NULL DEFAULT 0,
+  note           VARCHAR(255),
+  payment_method VARCHAR(32),
+  report_date    DATE         NOT NULL,          -- ngày chốt đơn (ghi nhận doanh thu)
+  status         ENUM('PENDING','DONE','FAILED') NOT NULL DEFAULT 'PENDING',
+  attempts       INT          NOT NULL DEFAULT 0,
+  last_error     VARCHAR(255),
+  created_at     TIMESTAMP    NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  processed_at   TIMESTAMP    NULL,
+  INDEX idx_outbox_status_id (status, id)
+) ENGINE=InnoDB;
+
+-- 3.6) Cấp phát mã đơn theo khối (BlockOrderCodeAllocator)
+--      Mỗi cửa hàng có một bộ đếm; app giữ trước cả khối [next_value, next_value + N) bằng 1 câu UPDATE
+--      rồi phát mã trong bộ nhớ → mã đơn không trùng kể cả khi restart hay nhiều instance dùng chung DB.
+CREATE TABLE IF NOT EXISTS order_code_blocks (
+  store_id   BIGINT PRIMARY KEY,
+  next_value BIGINT NOT NULL DEFAULT 1,        -- giá trị đầu tiên CHƯA được cấp
+  updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+  CONSTRAINT fk_ocb_store FOREIGN KEY (store_id) REFERENCES stores(id) ON UPDATE CASCADE ON DELETE CASCADE
+) ENGINE=InnoDB;
+
+-- 3.7) Khoá idempotency khi chốt đơn: POS gửi lại cùng request_key (timeout/retry) → trả về đơn cũ,
+--      không ghi lại đơn, xuất kho hay điểm. UNIQUE cho phép nhiều NULL (đơn không kèm khoá).
+ALTER TABLE orders
+  ADD COLUMN request_key VARCHAR(64) NULL AFTER order_code,
+  ADD UNIQUE KEY uq_orders_request_key (request_key);
+
+-- 3.8) Watermark thay đổi danh mục: app lưu ảnh chụp sản phẩm trên đĩa (CatalogSnapshotFile) và chỉ đọc lại
+--      các dòng có updated_at >= watermark khi làm mới (SkuLookup). TIMESTAMP(3) để phân biệt thay đổi cùng giây.
+ALTER TABLE products
+  ADD COLUMN updated_at TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3) ON UPDATE CURRENT_TIMESTAMP(3) AFTER created_at,
+  ADD INDEX idx_products_updated (updated_at);
+
+-- 3.9) Ảnh chụp tồn kho theo mốc (InventorySnapshotJob, mốc 00:00 hằng ngày): tồn tại thời điểm t
+--      = ảnh chụp gần nhất ≤ t + delta stock_moves trong [mốc, t) → không phát lại toàn bộ sổ cái.
+--      Dòng chi tiết chỉ lưu quantity <> 0; giữ ảnh chụp ngày trong inventory.snapshotKeepDailyDays, mốc đầu tháng giữ lâu dài.
+CREATE TABLE IF NOT EXISTS inventory_snapshots (
+  id         BIGINT PRIMARY KEY AUTO_INCREMENT,
+  cutoff_at  DATETIME NOT NULL,
+  created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+  UNIQUE KEY uq_snapshots_cutoff (cutoff_at)
+) ENGINE=InnoDB;
+
+CREATE TABLE IF NOT EXISTS inventory_snapshot_lines (
+  snapshot_id BIGINT NOT NULL,
+  store_id    BIGINT NOT NULL,
+  product_id  BIGINT NOT NULL,
+  quantity    INT    NOT NULL,
+  PRIMARY KEY (snapshot_id, store_id, product_id),
+  CONSTRAINT fk_snaplines_snapshot FOREIGN KEY (snapshot_id) REFERENCES inventory_snapshots(id) ON DELETE CASCADE
+) ENGINE=InnoDB;
+
+-- Quét khoảng thời gian trên sổ cái: theo cửa hàng (stockAt cả cửa hàng) và toàn bộ (job tạo ảnh chụp)
+ALTER TABLE stock_moves
+  ADD INDEX idx_moves_store_created (store_id, created_at),
+  ADD INDEX idx_moves_created (created_at);
+
+-- 3.10) Ngưỡng đặt hàng lại theo cửa hàng + sản phẩm (LowStockMonitor): tồn ≤ min_qty → cảnh báo sắp hết hàng.
+--       Chỉ các cặp có dòng ở đây mới được theo dõi.
+CREATE TABLE IF NOT EXISTS reorder_thresholds (
+  store_id   BIGINT NOT NULL,
+  product_id BIGINT NOT NULL,
+  min_qty    INT    NOT NULL,
+  updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+  PRIMARY KEY (store_id, product_id),
+  CONSTRAINT fk_thresholds_store   FOREIGN KEY (store_id)   REFERENCES stores(id)
+    ON UPDATE CASCADE ON DELETE CASCADE,
+  CONSTRAINT fk_thresholds_product FOREIGN KEY (product_id) REFERENCES products(id)
+    ON UPDATE CASCADE ON DELETE CASCADE
+) ENGINE=InnoDB;
+
+-- 3.11) Lead time (ngày) của nhà cung cấp cho đề xuất đặt hàng lại (ReorderSuggestionService).
+--       Mức cần có = tốc độ bán × (lead_time_days + reorder.coverageDays); NULL → reorder.defaultLeadDays.
+ALTER TABLE suppliers
+  ADD COLUMN lead_time_days INT NULL AFTER address;
+
 
 
 
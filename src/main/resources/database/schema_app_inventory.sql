@@ -0,0 +1,96 @@
+-- =============================================================
+--  Store Management System – Biến thể schema "app-managed inventory"
+--  File: schema_app_inventory.sql
+--  Chạy SAU init.sql (và sau schema_app_totals.sql nếu dùng), kèm inventory.posting=app trong db.properties.
+--
+--  Mục tiêu: bỏ trg_moves_after_insert. Bản gốc chạy trigger cho TỪNG dòng stock_moves
+--  (upsert inventory + SELECT ... FOR UPDATE kiểm tra âm kho) → đơn 50 dòng tốn 50 lần trigger
+--  và 100 câu lệnh inventory. Ở chế độ app, ProductDAO.postStockMoves gộp delta theo (store, product),
+--  cập nhật inventory bằng một câu nhiều dòng / chunk (UPDATE ... WHERE quantity >= số trừ → chặn âm kho)
+--  rồi ghi stock_moves bằng JDBC batch, tất cả trong cùng transaction.
+--
+--  order_items: trg_items_after_insert không còn ghi stock_moves (OrderService tự ghi EXPORT);
+--  sửa/xoá dòng hàng bằng tay (4.3, 4.4) vẫn qua trigger nhưng tự cập nhật inventory trực tiếp.
+-- =============================================================
+USE store_management;
+
+DROP TRIGGER IF EXISTS trg_moves_after_insert;
+DROP TRIGGER IF EXISTS trg_items_after_insert;
+DROP TRIGGER IF EXISTS trg_items_after_update;
+DROP TRIGGER IF EXISTS trg_items_after_delete;
+
+DELIMITER $$
+
+-- Sau khi thêm 1 dòng chi tiết đơn hàng → chỉ cập nhật tổng tiền đơn (SUM line_total).
+-- Nếu đồng thời dùng orders.totals=app thì trigger này không cần nữa: DROP TRIGGER trg_items_after_insert;
+CREATE TRIGGER trg_items_after_insert
+AFTER INSERT ON order_items
+FOR EACH ROW
+BEGIN
+  UPDATE orders o
+    SET o.total_amount = (
+      SELECT IFNULL(SUM(line_total),0) FROM order_items WHERE order_id = NEW.order_id
+    )
+  WHERE o.id = NEW.order_id;
+END $$
+
+-- Khi cập nhật chi tiết đơn → tổng tiền + điều chỉnh tồn kho theo chênh lệch (không còn trigger trên stock_moves)
+CREATE TRIGGER trg_items_after_update
+AFTER UPDATE ON order_items
+FOR EACH ROW
+BEGIN
+  DECLARE v_store_id BIGINT;
+  DECLARE v_delta INT;
+  DECLARE new_qty INT;
+
+  UPDATE orders o
+    SET o.total_amount = (
+      SELECT IFNULL(SUM(line_total),0) FROM order_items WHERE order_id = NEW.order_id
+    )
+  WHERE o.id = NEW.order_id;
+
+  SET v_delta = NEW.quantity - OLD.quantity;
+  IF v_delta <> 0 THEN
+    SELECT store_id INTO v_store_id FROM orders WHERE id = NEW.order_id;
+    INSERT INTO stock_moves(store_id, product_id, move_type, quantity, note)
+    VALUES (v_store_id, NEW.product_id, 'ADJUST', -v_delta, CONCAT('Adjust item order #', NEW.order_id));
+
+    INSERT INTO inventory (store_id, product_id, quantity, updated_at)
+    VALUES (v_store_id, NEW.product_id, -v_delta, NOW())
+    ON DUPLICATE KEY UPDATE quantity = quantity + VALUES(quantity), updated_at = NOW();
+
+    SELECT quantity INTO new_qty FROM inventory
+    WHERE store_id = v_store_id AND product_id = NEW.product_id;
+    IF new_qty < 0 THEN
+      SIGNAL SQLSTATE '45000'
+        SET MESSAGE_TEXT = 'Stock would become negative – operation canceled';
+    END IF;
+  END IF;
+END $$
+
+-- Khi xoá chi tiết đơn → tổng tiền + hoàn kho lượng đã xuất
+CREATE TRIGGER trg_items_after_delete
+AFTER DELETE ON order_items
+FOR EACH ROW
+BEGIN
+  DECLARE v_store_id BIGINT;
+
+  UPDATE orders o
+    SET o.total_amount = (
+      SELECT IFNULL(SUM(line_total),0) FROM order_items WHERE order_id = OLD.order_id
+    )
+  WHERE o.id = OLD.order_id;
+
+  SELECT store_id INTO v_store_id FROM orders WHERE id = OLD.order_id;
+  INSERT INTO stock_moves(store_id, product_id, move_type, quantity, note)
+  VALUES (v_store_id, OLD.product_id, 'IMPORT', OLD.quantity, CONCAT('Remove item order #', OLD.order_id));
+
+  INSERT INTO inventory (store_id, product_id, quantity, updated_at)
+  VALUES (v_store_id, OLD.product_id, OLD.quantity, NOW())
+  ON DUPLICATE KEY UPDATE quantity = quantity + VALUES(quantity), updated_at = NOW();
+END $$
+
+DELIMITER ;
+
+-- Quay lại chế độ trigger: chạy lại phần 4.1–4.4 trong init.sql (và schema_app_totals.sql nếu dùng),
+-- đặt inventory.posting=trigger.
@@ -0,0 +1,37 @@
+-- =============================================================
+--  Store Management System – Biến thể schema "app-managed totals"
+--  File: schema_app_totals.sql
+--  Chạy SAU init.sql, kèm cấu hình orders.totals=app trong db.properties.
+--
+--  Mục tiêu: bỏ phần re-sum tổng tiền trong trg_items_after_insert.
+--  Bản gốc chạy lại SELECT SUM(line_total) ... và UPDATE orders cho TỪNG dòng item
+--  → chốt đơn n dòng tốn O(n²) và giữ khoá dòng orders suốt quá trình.
+--  Ở chế độ app, OrderService tự tính subtotal và ghi orders.total_amount một lần.
+--
+--  Giữ nguyên: ghi stock_moves EXPORT cho từng dòng (trừ kho).
+--  trg_items_after_update / trg_items_after_delete vẫn re-sum vì ứng dụng không sửa/xoá
+--  dòng hàng trên đường chốt đơn (chỉ xảy ra khi chỉnh tay), nên không ảnh hưởng hiệu năng.
+-- =============================================================
+USE store_management;
+
+DROP TRIGGER IF EXISTS trg_items_after_insert;
+
+DELIMITER $$
+
+-- Sau khi thêm 1 dòng chi tiết đơn hàng → chỉ ghi xuất kho (EXPORT) qua stock_moves
+CREATE TRIGGER trg_items_after_insert
+AFTER INSERT ON order_items
+FOR EACH ROW
+BEGIN
+  DECLARE v_store_id BIGINT;
+
+  -- Lấy store_id của đơn để ghi xuất kho
+  SELECT store_id INTO v_store_id FROM orders WHERE id = NEW.order_id;
+
+  INSERT INTO stock_moves(store_id, product_id, move_type, quantity, note)
+  VALUES (v_store_id, NEW.product_id, 'EXPORT', NEW.quantity, CONCAT('Order #', NEW.order_id));
+END $$
+
+DELIMITER ;
+
+-- Quay lại chế độ trigger: chạy lại phần 4.2 trong init.sql và đặt orders.totals=trigger.
@@ -0,0 +1,161 @@
+package com.example.storemanagement.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTransientConnectionException;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Logger;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * ConnectionPool trên driver JDBC giả (jdbc:fake:...): hết hạn chờ khi pool cạn, trả kết nối về pool
+ * (rollback transaction dở, dùng lại kết nối vật lý) và phát hiện kết nối bị giữ quá ngưỡng.
+ */
+public class ConnectionPoolTest {
+
+    private static final String URL = "jdbc:fake:pool";
+
+    /** Trạng thái của một kết nối vật lý giả. */
+    private static final class Raw {
+        boolean autoCommit = true;
+        boolean closed;
+        int rollbacks;
+    }
+
+    private static final List<Raw> OPENED = new CopyOnWriteArrayList<>();
+
+    /** Driver giả: mỗi connect() mở một kết nối proxy ghi lại autoCommit / rollback / close. */
+    private static final class FakeDriver implements Driver {
+        @Override
+        public Connection connect(String url, Properties info) {
+            if (!acceptsURL(url)) return null;
+            Raw raw = new Raw();
+            OPENED.add(raw);
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { Connection.class },
+                    (proxy, m, args) -> switch (m.getName()) {
+                        case "getAutoCommit" -> raw.autoCommit;
+                        case "setAutoCommit" -> { raw.autoCommit = (Boolean) args[0]; yield null; }
+                        case "rollback" -> { raw.rollbacks++; yield null; }
+                        case "close" -> { raw.closed = true; yield null; }
+                        case "isClosed" -> raw.closed;
+                        case "isValid" -> !raw.closed;
+                        case "isReadOnly" -> false;
+                        case "hashCode" -> System.identityHashCode(proxy);
+                        case "equals" -> proxy == args[0];
+                        default -> null;
+                    });
+        }
+
+        @Override public boolean acceptsURL(String url) { return url.startsWith("jdbc:fake:"); }
+        @Override public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) { return new DriverPropertyInfo[0]; }
+        @Override public int getMajorVersion() { return 1; }
+        @Override public int getMinorVersion() { return 0; }
+        @Override public boolean jdbcCompliant() { return false; }
+        @Override public Logger getParentLogger() throws SQLFeatureNotSupportedException { throw new SQLFeatureNotSupportedException(); }
+    }
+
+    static {
+        try {
+            DriverManager.registerDriver(new FakeDriver());
+        } catch (SQLException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static ConnectionPool pool(int maxSize, long borrowTimeoutMs, long leakThresholdMs) {
+        OPENED.clear();
+        return new ConnectionPool(URL, "", "", 0, maxSize, borrowTimeoutMs, true, 1, 0, 0, 60_000, leakThresholdMs);
+    }
+
+    @Test
+    public void borrowTimesOutWhenPoolIsExhausted() throws SQLException {
+        ConnectionPool p = pool(1, 100, 0);
+        try {
+            Connection held = p.borrow();
+            long start = System.nanoTime();
+            assertThrows(SQLTransientConnectionException.class, p::borrow);
+            assertTrue(System.nanoTime() - start >= 90_000_000L); // đã chờ đủ borrowTimeoutMs
+            assertEquals(2, p.stats().getBorrowLatency().getCount()); // lượt hết hạn cũng được ghi
+            assertTrue(p.stats().getBorrowLatency().getMaxMillis() >= 90);
+
+            held.close();
+            p.borrow().close(); // suất đã được trả → mượn lại được
+            assertEquals(0, p.stats().getActive());
+        } finally {
+            p.shutdown();
+        }
+    }
+
+    @Test
+    public void closeReturnsConnectionForReuse() throws SQLException {
+        ConnectionPool p = pool(2, 100, 0);
+        try {
+            Connection c = p.borrow();
+            assertEquals(1, p.stats().getActive());
+            c.close();
+            assertTrue(c.isClosed());
+            assertThrows(SQLException.class, c::getAutoCommit); // proxy đã trả không dùng được nữa
+            assertEquals(0, p.stats().getActive());
+            assertEquals(1, p.getIdleCount());
+
+            p.borrow().close();
+            assertEquals(1, OPENED.size()); // dùng lại cùng kết nối vật lý
+            assertFalse(OPENED.get(0).closed);
+        } finally {
+            p.shutdown();
+        }
+        assertTrue(OPENED.get(0).closed); // shutdown đóng kết nối rảnh
+    }
+
+    @Test
+    public void giveBackRollsBackOpenTransaction() throws SQLException {
+        ConnectionPool p = pool(1, 100, 0);
+        try {
+            Connection c = p.borrow();
+            c.setAutoCommit(false);
+            c.close();
+            c.close(); // đóng lặp không trả suất hai lần
+
+            Raw raw = OPENED.get(0);
+            assertEquals(1, raw.rollbacks);
+            assertTrue(raw.autoCommit);
+
+            Connection again = p.borrow();
+            assertTrue(again.getAutoCommit());
+            assertThrows(SQLTransientConnectionException.class, p::borrow); // maxSize=1 vẫn giữ nguyên
+            again.close();
+        } finally {
+            p.shutdown();
+        }
+    }
+
+    @Test
+    public void heldConnectionIsReportedAsLeakOnce() throws Exception {
+        ConnectionPool p = pool(1, 100, 100); // quét mỗi 500 ms
+        try {
+            Connection c = p.borrow();
+            Thread.sleep(1_300); // hai lượt quét
+            assertEquals(1, p.stats().getLeaksDetected());
+            c.close();
+
+            p.borrow().close(); // trả nhanh → không tính là rò rỉ
+            Thread.sleep(600);
+            assertEquals(1, p.stats().getLeaksDetected());
+        } finally {
+            p.shutdown();
+        }
+    }
+}
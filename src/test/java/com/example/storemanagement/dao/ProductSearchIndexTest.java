@@ -0,0 +1,77 @@
+package com.example.storemanagement.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.sql.SQLException;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Chỉ mục tìm kiếm phải cho cùng kết quả với LIKE '%kw%' trên collation utf8mb4_unicode_ci
+ * (không phân biệt hoa thường, không phân biệt dấu), kể cả từ khoá ngắn hơn 3 ký tự.
+ */
+public class ProductSearchIndexTest {
+
+    private static ProductSearchIndex index() {
+        ProductSearchIndex idx = new ProductSearchIndex(3_600_000);
+        idx.loadEmpty();
+        idx.put(1, "CF-001", "Cà phê đen", 1_000);
+        idx.put(2, "CF-002", "Cà phê sữa đá", 2_000);
+        idx.put(3, "TEA-01", "Trà đào", 3_000);
+        idx.put(4, "XY-9", "Bánh mì", 4_000);
+        return idx;
+    }
+
+    @Test
+    public void normalizeFoldsCaseAndVietnameseMarks() {
+        assertEquals("ca phe den sua", ProductSearchIndex.normalize("  Cà Phê ĐEN Sữa "));
+        assertEquals("cf-001", ProductSearchIndex.normalize("CF-001"));
+        assertEquals("", ProductSearchIndex.normalize(null));
+    }
+
+    @Test
+    public void keywordMatchesWithOrWithoutAccents() throws SQLException {
+        ProductSearchIndex idx = index();
+        assertEquals(List.of(2L, 1L), idx.search("ca phe", 0));
+        assertEquals(List.of(2L, 1L), idx.search("CÀ PHÊ", 0));
+        assertEquals(List.of(3L), idx.search("dao", 0));
+        assertEquals(List.of(2L), idx.search("sua da", 0));
+    }
+
+    @Test
+    public void shortKeywordsMatchNamesAndSkus() throws SQLException {
+        ProductSearchIndex idx = index();
+        assertEquals(List.of(3L, 2L, 1L), idx.search("đ", 0)); // "den", "da", "dao"
+        assertEquals(List.of(4L), idx.search("mì", 0));
+        assertEquals(List.of(4L), idx.search("xy", 0));
+        assertEquals(List.of(2L, 1L), idx.search("cf", 0));
+        assertEquals(List.of(4L), idx.search("-9", 0)); // cuối nội dung: chỉ nằm ở đuôi trigram "y-9"
+        assertEquals(List.of(4L), idx.search("9", 0));
+        assertEquals(List.of(), idx.search("zq", 0));
+    }
+
+    @Test
+    public void limitKeepsNewestMatches() throws SQLException {
+        ProductSearchIndex idx = index();
+        assertEquals(List.of(2L), idx.search("phe", 1));
+        assertEquals(List.of(4L, 3L), idx.search("a", 2));
+        assertEquals(List.of(4L, 3L, 2L, 1L), idx.search("-", 0));
+    }
+
+    @Test
+    public void keywordDoesNotMatchAcrossNameAndSku() throws SQLException {
+        assertEquals(List.of(), index().search("mixy", 0)); // tên "bánh mì" + SKU "xy-9"
+    }
+
+    @Test
+    public void putReplacesAndRemoveDrops() throws SQLException {
+        ProductSearchIndex idx = index();
+        idx.put(1, "CF-001", "Espresso", 0);
+        idx.remove(3);
+        assertEquals(List.of(2L), idx.search("phe", 0));
+        assertEquals(List.of(1L), idx.search("espresso", 0));
+        assertEquals(List.of(), idx.search("tra", 0));
+        assertEquals(List.of(4L, 2L), idx.search("a", 2));
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.storemanagement.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Bảng băm linear probing của SkuLookup: tra không phân biệt hoa thường, bỏ khoảng trắng quanh mã quét,
+ * va chạm và bảng lớn (tải ≤ 50%).
+ */
+public class SkuLookupTest {
+
+    private static SkuLookup.Entry entry(long id, String sku) {
+        return new SkuLookup.Entry(id, sku, "SP " + id, BigDecimal.valueOf(id));
+    }
+
+    private static SkuLookup seeded(List<SkuLookup.Entry> rows) {
+        SkuLookup lookup = new SkuLookup(3_600_000, 0);
+        lookup.seed(rows, 1);
+        return lookup;
+    }
+
+    @Test
+    public void findIgnoresCaseAndSurroundingWhitespace() {
+        SkuLookup.Entry e = entry(1, "Ab-100");
+        SkuLookup lookup = seeded(List.of(e, entry(2, "AB-101")));
+        assertSame(e, lookup.find("ab-100"));
+        assertSame(e, lookup.find(" \tAB-100\n"));
+        assertSame(e, lookup.find(new StringBuilder("aB-100")));
+        assertNull(lookup.find("AB-10"));
+        assertNull(lookup.find("   "));
+        assertNull(lookup.find(null));
+    }
+
+    @Test
+    public void collidingHashesAreProbed() {
+        // bốn SKU cùng hash (sau khi hạ chữ thường) → cùng ô khởi đầu, phải dò tuyến tính
+        SkuLookup.Entry a = entry(1, "ALK"), b = entry(2, "an-"), c = entry(3, "C0-"), d = entry(4, "c.k");
+        SkuLookup lookup = seeded(List.of(a, b, c, d));
+        assertSame(a, lookup.find("alk"));
+        assertSame(b, lookup.find("AN-"));
+        assertSame(c, lookup.find("c0-"));
+        assertSame(d, lookup.find("C.K"));
+        assertNull(lookup.find("a1k"));
+    }
+
+    @Test
+    public void duplicateSkuKeepsFirstRow() {
+        SkuLookup.Entry first = entry(1, "DUP-1");
+        SkuLookup lookup = seeded(List.of(first, entry(2, "dup-1")));
+        assertEquals(1, lookup.size());
+        assertSame(first, lookup.find("DUP-1"));
+    }
+
+    @Test
+    public void largeTableFindsEveryEntry() {
+        List<SkuLookup.Entry> rows = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) rows.add(entry(i, "SKU-" + i));
+        SkuLookup lookup = seeded(rows);
+        assertEquals(rows.size(), lookup.size());
+        for (SkuLookup.Entry e : rows) assertSame(e, lookup.find(e.sku.toLowerCase()));
+        assertNull(lookup.find("SKU-20000"));
+    }
+
+    @Test
+    public void seedOnlyAppliesBeforeFirstLoad() {
+        SkuLookup lookup = seeded(List.of(entry(1, "A-1")));
+        assertFalse(lookup.seed(List.of(entry(2, "B-2")), 2));
+        assertNotNull(lookup.find("A-1"));
+        assertNull(lookup.find("B-2"));
+        assertEquals(1, lookup.watermark());
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.storemanagement.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Giao dòng stock_moves cho từng subscriber theo mốc ảnh chụp riêng: dòng đã nằm trong ảnh chụp bị bỏ,
+ * id chưa commit lúc chụp (gap) được giao đúng một lần khi xuất hiện.
+ */
+public class StockMoveTailerTest {
+
+    /** Subscriber ghi lại id đã nhận. */
+    private static final class Recorder implements StockMoveTailer.Subscriber {
+        final List<Long> applied = new ArrayList<>();
+
+        @Override public boolean needsReload() { return false; }
+        @Override public void reload(Connection cn) {}
+        @Override public void apply(List<StockMoveTailer.Move> moves) { for (StockMoveTailer.Move m : moves) applied.add(m.id); }
+    }
+
+    private static StockMoveTailer.Move move(long id) {
+        return new StockMoveTailer.Move(id, 1, 10, "EXPORT", 2, 0);
+    }
+
+    /** id 1..hw đã commit, trừ các id trong uncommitted. */
+    private static Set<Long> committed(long hw, long... uncommitted) {
+        Set<Long> ids = new HashSet<>();
+        for (long id = 1; id <= hw; id++) ids.add(id);
+        for (long id : uncommitted) ids.remove(id);
+        return ids;
+    }
+
+    @Test
+    public void movesInsideSnapshotAreSkipped() {
+        StockMoveTailer tailer = new StockMoveTailer(1000, 100, 60_000);
+        Recorder r = new Recorder();
+        assertTrue(tailer.register(r));
+        assertFalse(tailer.register(r));
+        tailer.loaded(r, 100, committed(100));
+
+        tailer.deliver(List.of(move(99), move(100), move(101), move(102)));
+        assertEquals(List.of(101L, 102L), r.applied);
+    }
+
+    @Test
+    public void lateCommittedGapIsDeliveredOnce() {
+        StockMoveTailer tailer = new StockMoveTailer(1000, 100, 60_000);
+        Recorder r = new Recorder();
+        tailer.register(r);
+        tailer.loaded(r, 100, committed(100, 95)); // id 95 chưa commit lúc chụp
+
+        tailer.deliver(List.of(move(50), move(95), move(101)));
+        tailer.deliver(List.of(move(95)));
+        assertEquals(List.of(95L, 101L), r.applied);
+    }
+
+    @Test
+    public void eachSubscriberUsesItsOwnSnapshot() {
+        StockMoveTailer tailer = new StockMoveTailer(1000, 100, 60_000);
+        Recorder early = new Recorder(), late = new Recorder(), unloaded = new Recorder();
+        tailer.register(early);
+        tailer.register(late);
+        tailer.register(unloaded);
+        tailer.loaded(early, 100, committed(100));
+        tailer.loaded(late, 120, committed(120));
+
+        tailer.deliver(List.of(move(110), move(121)));
+        assertEquals(List.of(110L, 121L), early.applied);
+        assertEquals(List.of(121L), late.applied);
+        assertEquals(List.of(), unloaded.applied); // chưa có ảnh chụp → đợi lượt nạp
+    }
+
+    @Test
+    public void reconcileAdjustmentsAreRecognised() {
+        assertTrue(StockMoveTailer.isReconcile("ADJUST", StockMoveTailer.RECONCILE_NOTE_PREFIX + "#42"));
+        assertFalse(StockMoveTailer.isReconcile("ADJUST", "Kiểm kê tay"));
+        assertFalse(StockMoveTailer.isReconcile("ADJUST", null));
+        assertFalse(StockMoveTailer.isReconcile("IMPORT", StockMoveTailer.RECONCILE_NOTE_PREFIX + "#42"));
+    }
+
+    @Test
+    public void deltaFollowsMoveType() {
+        assertEquals(-2, move(1).delta());
+        assertEquals(3, new StockMoveTailer.Move(2, 1, 10, "IMPORT", 3, 0).delta());
+        assertEquals(-4, new StockMoveTailer.Move(3, 1, 10, "ADJUST", -4, 0).delta());
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.storemanagement.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.example.storemanagement.model.Product;
+
+/**
+ * Đọc header và một dòng CSV của CatalogImportService (không cần DB).
+ */
+public class CatalogImportServiceTest {
+
+    @Test
+    public void headerIsCaseInsensitiveAndIgnoresBom() {
+        Map<String, Integer> cols = CatalogImportService.columns("\uFEFF SKU ,Name,Unit_Price,active");
+        assertEquals(Map.of("sku", 0, "name", 1, "unit_price", 2, "active", 3), cols);
+    }
+
+    @Test
+    public void missingRequiredColumnIsRejected() {
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+                () -> CatalogImportService.columns("sku,name,unit_cost"));
+        assertTrue(ex.getMessage().contains("unit_price"));
+    }
+
+    @Test
+    public void columnsMayComeInAnyOrder() {
+        Map<String, Integer> cols = CatalogImportService.columns("unit_price,supplier_id,name,sku,unit");
+        Product p = CatalogImportService.parse(List.of("15000.50", "7", "Trà đào", " TEA-01 ", "ly"), cols);
+        assertEquals("TEA-01", p.getSku());
+        assertEquals("Trà đào", p.getName());
+        assertEquals("ly", p.getUnit());
+        assertEquals(new BigDecimal("15000.50"), p.getUnitPrice());
+        assertEquals(Long.valueOf(7), p.getSupplierId());
+    }
+
+    @Test
+    public void omittedOptionalColumnsGetDefaults() {
+        Map<String, Integer> cols = CatalogImportService.columns("sku,name,unit_price");
+        Product p = CatalogImportService.parse(List.of("CF-001", "Cà phê", "20000"), cols);
+        assertEquals("pcs", p.getUnit());
+        assertEquals(BigDecimal.ZERO, p.getUnitCost());
+        assertNull(p.getSupplierId());
+        assertTrue(p.isActive());
+    }
+
+    @Test
+    public void activeAcceptsOneOrTrueOnly() {
+        Map<String, Integer> cols = CatalogImportService.columns("sku,name,unit_price,active");
+        assertTrue(CatalogImportService.parse(List.of("CF-001", "A", "1", "TRUE"), cols).isActive());
+        assertFalse(CatalogImportService.parse(List.of("CF-001", "A", "1", "0"), cols).isActive());
+        assertFalse(CatalogImportService.parse(List.of("CF-001", "A", "1", "no"), cols).isActive());
+    }
+
+    @Test
+    public void invalidRowsAreRejected() {
+        Map<String, Integer> cols = CatalogImportService.columns("sku,name,unit_price,supplier_id");
+        assertThrows(IllegalArgumentException.class, () -> CatalogImportService.parse(List.of("x", "A", "1"), cols));
+        assertThrows(IllegalArgumentException.class, () -> CatalogImportService.parse(List.of("CF-001", " ", "1"), cols));
+        assertThrows(IllegalArgumentException.class, () -> CatalogImportService.parse(List.of("CF-001", "A", ""), cols));
+        assertThrows(IllegalArgumentException.class, () -> CatalogImportService.parse(List.of("CF-001", "A", "-1"), cols));
+        assertThrows(IllegalArgumentException.class, () -> CatalogImportService.parse(List.of("CF-001", "A", "1.005"), cols));
+        assertThrows(IllegalArgumentException.class, () -> CatalogImportService.parse(List.of("CF-001", "A", "1", "abc"), cols));
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.storemanagement.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import com.example.storemanagement.dao.ProductDAO;
+
+/**
+ * Giữ chỗ tồn kho trong bộ nhớ: giữ / commit / release và đọc lại từ DB (DAO giả, không cần MySQL).
+ */
+public class StockReservationsTest {
+
+    private static final long STORE = 1;
+
+    /** DAO giả: tồn kho lấy từ map, đếm số lần đọc. */
+    private static final class FakeDAO extends ProductDAO {
+        final Map<Long, Integer> stock = new HashMap<>();
+        int reads;
+
+        @Override
+        public Map<Long, Integer> getStockLevels(long storeId, Collection<Long> productIds) {
+            reads++;
+            Map<Long, Integer> out = new HashMap<>();
+            for (Long id : productIds) if (stock.containsKey(id)) out.put(id, stock.get(id));
+            return out;
+        }
+    }
+
+    private static StockReservations reservations(FakeDAO dao) {
+        return new StockReservations(true, 4, 60_000, dao);
+    }
+
+    @Test
+    public void holdBlocksOversellUntilReleased() throws SQLException {
+        FakeDAO dao = new FakeDAO();
+        dao.stock.put(10L, 5);
+        StockReservations r = reservations(dao);
+
+        StockReservations.Hold first = r.reserve(STORE, Map.of(10L, 3));
+        SQLException ex = assertThrows(SQLException.class, () -> r.reserve(STORE, Map.of(10L, 3)));
+        assertEquals("45000", ex.getSQLState());
+
+        first.release();
+        r.reserve(STORE, Map.of(10L, 5)).release();
+        assertEquals(1, dao.reads); // ô còn tươi → không đọc lại DB
+    }
+
+    @Test
+    public void commitConsumesStockWithoutReadingDb() throws SQLException {
+        FakeDAO dao = new FakeDAO();
+        dao.stock.put(10L, 5);
+        StockReservations r = reservations(dao);
+
+        StockReservations.Hold h = r.reserve(STORE, Map.of(10L, 4));
+        h.commit();
+        h.release(); // gọi lặp bị bỏ qua
+
+        assertThrows(SQLException.class, () -> r.reserve(STORE, Map.of(10L, 2)));
+        r.reserve(STORE, Map.of(10L, 1)).commit();
+        assertEquals(1, dao.reads);
+    }
+
+    @Test
+    public void shortBasketHoldsNothing() throws SQLException {
+        FakeDAO dao = new FakeDAO();
+        dao.stock.put(10L, 5);
+        dao.stock.put(20L, 1);
+        StockReservations r = reservations(dao);
+
+        assertThrows(SQLException.class, () -> r.reserve(STORE, Map.of(10L, 2, 20L, 2)));
+        StockReservations.Hold h = r.reserve(STORE, Map.of(10L, 5, 20L, 1)); // lần trước không giữ gì
+        assertEquals(Set.of(10L, 20L), h.productIds());
+        h.release();
+    }
+
+    @Test
+    public void missingInventoryRowMeansZeroStock() {
+        StockReservations r = reservations(new FakeDAO());
+        assertThrows(SQLException.class, () -> r.reserve(STORE, Map.of(99L, 1)));
+    }
+
+    @Test
+    public void invalidateRereadsStockFromDb() throws SQLException {
+        FakeDAO dao = new FakeDAO();
+        dao.stock.put(10L, 1);
+        StockReservations r = reservations(dao);
+        r.reserve(STORE, Map.of(10L, 1)).commit();
+
+        dao.stock.put(10L, 8); // nhập kho ngoài luồng chốt đơn
+        assertThrows(SQLException.class, () -> r.reserve(STORE, Map.of(10L, 1)));
+        r.invalidate(STORE, 10L);
+        r.reserve(STORE, Map.of(10L, 8)).release();
+        assertEquals(2, dao.reads);
+    }
+
+    @Test
+    public void heldQuantitySurvivesRefresh() throws SQLException {
+        FakeDAO dao = new FakeDAO();
+        dao.stock.put(10L, 5);
+        StockReservations r = reservations(dao);
+
+        StockReservations.Hold h = r.reserve(STORE, Map.of(10L, 4));
+        r.invalidate(STORE, 10L);
+        assertThrows(SQLException.class, () -> r.reserve(STORE, Map.of(10L, 2))); // onHand mới vẫn trừ phần đang giữ
+        h.release();
+    }
+
+    @Test
+    public void disabledReservationsNeverReadDb() throws SQLException {
+        FakeDAO dao = new FakeDAO();
+        StockReservations r = new StockReservations(false, 4, 60_000, dao);
+        r.reserve(STORE, Map.of(10L, 100)).commit();
+        assertEquals(0, dao.reads);
+    }
+}
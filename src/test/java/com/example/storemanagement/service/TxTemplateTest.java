@@ -0,0 +1,169 @@
+package com.example.storemanagement.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.SQLTransactionRollbackException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * TxTemplate: phân loại lỗi retry (chỉ deadlock / lock wait timeout / serialization failure được chạy lại),
+ * giới hạn số lần thử, retry budget và khôi phục cấu hình kết nối – chạy trên kết nối giả, không cần MySQL.
+ */
+public class TxTemplateTest {
+
+    /** Kết nối giả: ghi lại autoCommit, mức cô lập, số lần commit / rollback / close. */
+    private static final class FakeConnection {
+        boolean autoCommit = true;
+        int isolation = Connection.TRANSACTION_REPEATABLE_READ;
+        int isolationInWork = -1;
+        int commits, rollbacks, closes;
+
+        Connection proxy() {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { Connection.class },
+                    (proxy, m, args) -> switch (m.getName()) {
+                        case "getAutoCommit" -> autoCommit;
+                        case "setAutoCommit" -> { autoCommit = (Boolean) args[0]; yield null; }
+                        case "getTransactionIsolation" -> isolation;
+                        case "setTransactionIsolation" -> { isolation = (Integer) args[0]; yield null; }
+                        case "commit" -> { commits++; yield null; }
+                        case "rollback" -> { rollbacks++; yield null; }
+                        case "close" -> { closes++; yield null; }
+                        default -> null;
+                    });
+        }
+    }
+
+    private static SQLException deadlock() {
+        return new SQLException("Deadlock found when trying to get lock", "40001", 1213);
+    }
+
+    private static TxTemplate template(int maxAttempts, double budgetRatio, FakeConnection cn) {
+        return new TxTemplate(maxAttempts, 1, 1, budgetRatio, cn::proxy);
+    }
+
+    @Test
+    public void retryableErrorIsRetriedUpToMaxAttempts() {
+        FakeConnection cn = new FakeConnection();
+        TxTemplate tx = template(3, 0.1, cn);
+        AtomicInteger runs = new AtomicInteger();
+
+        SQLException ex = assertThrows(SQLException.class, () -> tx.execute(c -> {
+            runs.incrementAndGet();
+            throw deadlock();
+        }));
+        assertEquals(1213, ex.getErrorCode());
+        assertEquals(3, runs.get());
+        assertEquals(3, cn.rollbacks);
+        assertEquals(0, cn.commits);
+        assertEquals(2, tx.getRetries());
+        assertEquals(1, tx.getExhausted());
+    }
+
+    @Test
+    public void retrySucceedsAfterTransientDeadlock() throws SQLException {
+        FakeConnection cn = new FakeConnection();
+        TxTemplate tx = template(4, 0.1, cn);
+        AtomicInteger runs = new AtomicInteger();
+
+        String result = tx.execute(c -> {
+            if (runs.incrementAndGet() < 3) throw deadlock();
+            return "ok";
+        });
+        assertEquals("ok", result);
+        assertEquals(1, cn.commits);
+        assertEquals(2, cn.rollbacks);
+        assertEquals(3, cn.closes); // mỗi lần chạy mượn rồi trả một kết nối
+    }
+
+    @Test
+    public void exhaustedBudgetStopsRetrying() {
+        FakeConnection cn = new FakeConnection();
+        TxTemplate tx = template(100, 0, cn); // không nạp thêm token: chỉ còn 10 lần thử lại ban đầu
+        AtomicInteger runs = new AtomicInteger();
+
+        assertThrows(SQLException.class, () -> tx.execute(c -> {
+            runs.incrementAndGet();
+            throw deadlock();
+        }));
+        assertEquals(11, runs.get());
+        assertEquals(10, tx.getRetries());
+        assertEquals(1, tx.getBudgetDenied());
+        assertEquals(0, tx.getExhausted());
+
+        runs.set(0);
+        assertThrows(SQLException.class, () -> tx.execute(c -> {
+            runs.incrementAndGet();
+            throw deadlock();
+        }));
+        assertEquals(1, runs.get()); // budget đã cạn → không thử lại nữa
+    }
+
+    @Test
+    public void nonRetryableErrorIsThrownOnFirstAttempt() {
+        FakeConnection cn = new FakeConnection();
+        TxTemplate tx = template(4, 0.1, cn);
+        AtomicInteger runs = new AtomicInteger();
+        SQLException duplicate = new SQLIntegrityConstraintViolationException("Duplicate entry", "23000", 1062);
+
+        SQLException ex = assertThrows(SQLException.class, () -> tx.execute(c -> {
+            runs.incrementAndGet();
+            throw duplicate;
+        }));
+        assertSame(duplicate, ex);
+        assertEquals(1, runs.get());
+        assertEquals(1, cn.rollbacks);
+        assertEquals(0, tx.getRetries());
+    }
+
+    @Test
+    public void isolationOverloadRestoresConnectionSettings() throws SQLException {
+        FakeConnection cn = new FakeConnection();
+        TxTemplate tx = template(4, 0.1, cn);
+
+        tx.execute(Connection.TRANSACTION_READ_COMMITTED, c -> {
+            cn.isolationInWork = c.getTransactionIsolation();
+            assertFalse(c.getAutoCommit());
+            return null;
+        });
+        assertEquals(Connection.TRANSACTION_READ_COMMITTED, cn.isolationInWork);
+        assertEquals(Connection.TRANSACTION_REPEATABLE_READ, cn.isolation);
+        assertTrue(cn.autoCommit);
+
+        assertThrows(SQLException.class, () -> tx.execute(Connection.TRANSACTION_READ_COMMITTED, c -> {
+            throw new SQLException("Không đủ tồn kho", "45000", 1644);
+        }));
+        assertEquals(Connection.TRANSACTION_REPEATABLE_READ, cn.isolation); // cả khi work lỗi
+        assertTrue(cn.autoCommit);
+    }
+
+    @Test
+    public void deadlockAndLockWaitAreRetryable() {
+        assertTrue(TxTemplate.isRetryable(new SQLException("Deadlock found", "40001", 1213)));
+        assertTrue(TxTemplate.isRetryable(new SQLException("Lock wait timeout exceeded", "HY000", 1205)));
+        assertTrue(TxTemplate.isRetryable(new SQLException("serialization failure", "40001", 0)));
+        assertTrue(TxTemplate.isRetryable(new SQLTransactionRollbackException("rollback")));
+    }
+
+    @Test
+    public void retryableCauseIsFoundThroughWrapper() {
+        SQLException wrapped = new SQLException("Lỗi ghi đơn", "HY000", 0, new SQLException("Deadlock", "40001", 1213));
+        assertTrue(TxTemplate.isRetryable(wrapped));
+    }
+
+    @Test
+    public void dataAndTriggerErrorsAreNotRetryable() {
+        assertFalse(TxTemplate.isRetryable(new SQLIntegrityConstraintViolationException("Duplicate entry", "23000", 1062)));
+        assertFalse(TxTemplate.isRetryable(new SQLException("Không đủ tồn kho", "45000", 1644)));
+        assertFalse(TxTemplate.isRetryable(new SQLException("Communications link failure", "08S01", 0)));
+    }
+}